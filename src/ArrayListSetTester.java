@@ -1,6 +1,8 @@
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * SetTesterADT implementation using an ArrayList as the data structure.
@@ -9,7 +11,8 @@ import java.util.List;
  *
  * @author CS367
  */
-public class ArrayListSetTester<K extends Comparable<K>> implements SetTesterADT<K> {
+public class ArrayListSetTester<K extends Comparable<K>> implements SetTesterADT<K>,
+        RangeSearchADT<K>, OrderStatisticADT<K> {
     
     List<K> listSet;
     
@@ -27,17 +30,78 @@ public class ArrayListSetTester<K extends Comparable<K>> implements SetTesterADT
         return listSet.contains(item);
     }
 
+    /**
+     * Returns the keys in [minValue, maxValue) in the order they were
+     * added, with the same bounds as forEachInRange and countInRange.
+     */
     @Override
     public List<K> subSet(K minValue, K maxValue) {
-        List<K> result = new ArrayList<K>();
-        for(K elem : listSet){
-            if(elem.compareTo(minValue) > 0 && elem.compareTo(maxValue) < 0){
-                result.add(elem);
+        return subSetInto(minValue, maxValue, new ArrayList<K>());
+    }
+
+    /**
+     * Scans the whole list, passing keys in the range to action in the
+     * order they were added.
+     */
+    @Override
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (minValue == null || maxValue == null || action == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < listSet.size(); i++) {
+            K elem = listSet.get(i);
+            if (elem.compareTo(minValue) >= 0 && elem.compareTo(maxValue) < 0) {
+                action.accept(elem);
             }
         }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        result.clear();
+        forEachInRange(minValue, maxValue, result::add);
         return result;
     }
 
+    /**
+     * Counts the smaller keys in one pass over the unsorted list.
+     */
+    @Override
+    public int rank(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        int rank = 0;
+        for (int i = 0; i < listSet.size(); i++) {
+            if (listSet.get(i).compareTo(key) < 0) rank++;
+        }
+        return rank;
+    }
+
+    /**
+     * Sorts a copy of the list and indexes it, in O(n log n).
+     */
+    @Override
+    public K select(int rank) {
+        if (rank < 0 || rank >= listSet.size()) {
+            throw new IllegalArgumentException();
+        }
+        List<K> sorted = new ArrayList<K>(listSet);
+        Collections.sort(sorted);
+        return sorted.get(rank);
+    }
+
+    /**
+     * Counts the keys in the range in one pass over the list.
+     */
+    @Override
+    public int countInRange(K minValue, K maxValue) {
+        int[] count = new int[1];
+        forEachInRange(minValue, maxValue, elem -> count[0]++);
+        return count[0];
+    }
+
     @Override
     public void clear() {
         listSet.clear();
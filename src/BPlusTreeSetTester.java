@@ -0,0 +1,411 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             BPlusTreeSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * SetTesterADT implementation using a B+-tree. Every key is stored in a
+ * leaf; inner nodes hold only separator keys to steer searches. Each node
+ * keeps up to fanout - 1 keys in a contiguous array, so a search looks at
+ * one short array per level, and a tree of n keys is only about log base
+ * fanout/2 of n levels deep instead of log base 2.
+ *
+ * <p>The leaves are linked left to right, so subSet and the iterator make a
+ * single descent to the first key and then scan the leaves in order.</p>
+ *
+ * <p>Inserts never rebalance: a node that fills up is split in two and the
+ * split moves one separator into the parent, which can split in turn. A
+ * root split adds a level, so every leaf is always at the same depth.</p>
+ */
+public class BPlusTreeSetTester<K extends Comparable<K>>
+        implements SetTesterADT<K>, RangeSearchADT<K> {
+
+    /** Smallest fanout that can split a node into two non-empty halves */
+    public static final int MIN_FANOUT = 3;
+
+    /**
+     * A leaf or inner node. keys[0..size) are in ascending order.
+     */
+    private static class Node {
+        /** Keys, with room for one extra key before a split */
+        final Object[] keys;
+
+        /** Number of keys in use */
+        int size;
+
+        Node(int fanout) {
+            keys = new Object[fanout];
+        }
+    }
+
+    /**
+     * A leaf holds keys of the set and a link to the next leaf.
+     */
+    private static final class Leaf extends Node {
+        /** The leaf to the right, null for the last leaf */
+        Leaf next;
+
+        Leaf(int fanout) {
+            super(fanout);
+        }
+    }
+
+    /**
+     * An inner node with size separator keys and size + 1 children. Every
+     * key under children[i] is less than keys[i], and every key under
+     * children[i + 1] is at least keys[i].
+     */
+    private static final class Inner extends Node {
+        /** Children, with room for one extra child before a split */
+        final Node[] children;
+
+        Inner(int fanout) {
+            super(fanout);
+            children = new Node[fanout + 1];
+        }
+    }
+
+    /** Most children of an inner node, and one more than the most keys */
+    private final int fanout;
+
+    /** Root of this tree, a leaf while the tree has fewer than fanout keys */
+    private Node root;
+
+    /** The leftmost leaf, where iteration starts */
+    private Leaf firstLeaf;
+
+    /** Number of keys in this tree */
+    private int numKeys;
+
+    /** Number of levels, 1 while the root is a leaf */
+    private int height;
+
+    /**
+     * Inner nodes on the path to the leaf being changed, root first, and
+     * the child taken at each. Reused between adds.
+     */
+    private Inner[] path;
+    private int[] pathIndex;
+
+    /**
+     * Constructs an empty B+-tree.
+     *
+     * @param fanout the most children an inner node may have; each node
+     * holds at most fanout - 1 keys
+     * @throws IllegalArgumentException if fanout is less than MIN_FANOUT
+     */
+    public BPlusTreeSetTester(int fanout) {
+        if (fanout < MIN_FANOUT) throw new IllegalArgumentException();
+        this.fanout = fanout;
+        path = new Inner[8];
+        pathIndex = new int[8];
+        clear();
+    }
+
+    /**
+     * Returns the fanout this tree was built with.
+     *
+     * @return the fanout
+     */
+    public int getFanout() {
+        return fanout;
+    }
+
+    /**
+     * Returns the number of levels in the tree.
+     *
+     * @return the height, 1 if the root is a leaf
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void add(K key) {
+        if (key == null) throw new IllegalArgumentException();
+
+        // Walks down to the leaf for key, remembering the path
+        Node n = root;
+        int depth = 0;
+        while (n instanceof Inner) {
+            Inner inner = (Inner) n;
+            int i = childIndex(inner, key);
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                pathIndex = Arrays.copyOf(pathIndex, depth * 2);
+            }
+            path[depth] = inner;
+            pathIndex[depth++] = i;
+            n = inner.children[i];
+        }
+        Leaf leaf = (Leaf) n;
+        int pos = search(leaf, key);
+        if (pos >= 0) {
+            Arrays.fill(path, 0, depth, null);
+            throw new DuplicateKeyException();
+        }
+        insertAt(leaf, -pos - 1, key);
+        numKeys++;
+        if (leaf.size < fanout) {
+            Arrays.fill(path, 0, depth, null);
+            return;
+        }
+
+        // The leaf is full: split it and carry separators up the path
+        Leaf right = splitLeaf(leaf);
+        Object separator = right.keys[0];
+        Node newChild = right;
+        while (depth > 0) {
+            Inner parent = path[--depth];
+            int i = pathIndex[depth];
+            insertAt(parent, i, separator);
+            System.arraycopy(parent.children, i + 1, parent.children, i + 2,
+                    parent.size - i - 1);
+            parent.children[i + 1] = newChild;
+            if (parent.size < fanout) {
+                newChild = null;
+                break;
+            }
+            // Too many children: the middle key moves up
+            Inner rightInner = new Inner(fanout);
+            int mid = parent.size / 2;
+            separator = parent.keys[mid];
+            rightInner.size = parent.size - mid - 1;
+            System.arraycopy(parent.keys, mid + 1, rightInner.keys, 0,
+                    rightInner.size);
+            System.arraycopy(parent.children, mid + 1, rightInner.children, 0,
+                    rightInner.size + 1);
+            Arrays.fill(parent.keys, mid, parent.size, null);
+            Arrays.fill(parent.children, mid + 1, parent.size + 1, null);
+            parent.size = mid;
+            newChild = rightInner;
+        }
+        if (newChild != null) {
+            // The root split, so the tree grows a level
+            Inner newRoot = new Inner(fanout);
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = newChild;
+            newRoot.size = 1;
+            root = newRoot;
+            height++;
+        }
+        Arrays.fill(path, 0, depth, null);
+    }
+
+    /**
+     * Moves the upper half of a full leaf into a new leaf linked after it.
+     *
+     * @param leaf the full leaf
+     * @return the new right leaf
+     */
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(fanout);
+        int mid = leaf.size / 2;
+        right.size = leaf.size - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.size);
+        Arrays.fill(leaf.keys, mid, leaf.size, null);
+        leaf.size = mid;
+        right.next = leaf.next;
+        leaf.next = right;
+        return right;
+    }
+
+    /**
+     * Inserts key at index i of n's keys, shifting the keys after it.
+     *
+     * @param n the node, with room for one more key
+     * @param i the index
+     * @param key the key
+     */
+    private static void insertAt(Node n, int i, Object key) {
+        System.arraycopy(n.keys, i, n.keys, i + 1, n.size - i);
+        n.keys[i] = key;
+        n.size++;
+    }
+
+    /**
+     * Binary searches n's keys.
+     *
+     * @param n the node
+     * @param key the key
+     * @return the index of key, or -(insertion point) - 1 if absent
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int search(Node n, K key) {
+        Object[] keys = n.keys;
+        int lo = 0;
+        int hi = n.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ((K) keys[mid]).compareTo(key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Returns the index of the child of inner whose keys key falls among.
+     *
+     * @param inner the inner node
+     * @param key the key
+     * @return the child index, from 0 to inner.size
+     */
+    private static <K extends Comparable<K>> int childIndex(Inner inner,
+            K key) {
+        int pos = search(inner, key);
+        // A key equal to a separator is in the right-hand child
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    /**
+     * Returns the leaf whose key range covers key.
+     *
+     * @param key the key
+     * @return the leaf
+     */
+    private Leaf findLeaf(K key) {
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner inner = (Inner) n;
+            n = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) n;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        return search(findLeaf(key), key) >= 0;
+    }
+
+    @Override
+    public List<K> subSet(K minValue, K maxValue) {
+        return subSetInto(minValue, maxValue, new ArrayList<K>());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (minValue == null || maxValue == null || action == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        Leaf leaf = findLeaf(minValue);
+        int pos = search(leaf, minValue);
+        int i = pos >= 0 ? pos : -pos - 1;
+        while (leaf != null) {
+            for (; i < leaf.size; i++) {
+                K key = (K) leaf.keys[i];
+                if (key.compareTo(maxValue) >= 0) return;
+                action.accept(key);
+            }
+            leaf = leaf.next;
+            i = 0;
+        }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        result.clear();
+        forEachInRange(minValue, maxValue, result::add);
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        firstLeaf = new Leaf(fanout);
+        root = firstLeaf;
+        numKeys = 0;
+        height = 1;
+    }
+
+    @Override
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * Displays the top levels of the tree, one node per line with its keys,
+     * indented by depth in pre-order like the binary trees.
+     */
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        System.out.println("---------------------------" +
+                "BPlusTreeSet Display-----------------------------");
+        displayTreeHelper(root, 0, maxDisplayLevels);
+    }
+
+    private void displayTreeHelper(Node n, int curDepth,
+            int maxDisplayLevels) {
+        if (maxDisplayLevels <= curDepth) return;
+        for (int i = 0; i < curDepth; i++) {
+            System.out.print("|--");
+        }
+        System.out.println(Arrays.toString(Arrays.copyOf(n.keys, n.size)));
+        if (n instanceof Inner) {
+            Inner inner = (Inner) n;
+            for (int i = 0; i <= inner.size; i++) {
+                displayTreeHelper(inner.children[i], curDepth + 1,
+                        maxDisplayLevels);
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator that scans the leaves from left to right.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<K> iterator() {
+        return new Iterator<K>() {
+            private Leaf leaf = firstLeaf;
+            private int i = 0;
+
+            public boolean hasNext() {
+                while (leaf != null && i >= leaf.size) {
+                    leaf = leaf.next;
+                    i = 0;
+                }
+                return leaf != null;
+            }
+
+            @SuppressWarnings("unchecked")
+            public K next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return (K) leaf.keys[i++];
+            }
+        };
+    }
+}
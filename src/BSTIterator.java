@@ -1,5 +1,5 @@
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.NoSuchElementException;
 
 ///////////////////////////////////////////////////////////////////////////////
@@ -23,44 +23,71 @@ import java.util.NoSuchElementException;
 ////////////////////////////80 columns wide //////////////////////////////////
 
 /**
- * The Iterator for Binary Search Tree (BST) that is built using Java's Stack
- * class. This iterator steps through the items BST using an INORDER traversal.
+ * The Iterator for Binary Search Tree (BST) that is built using an explicit
+ * stack. This iterator steps through the items BST using an INORDER traversal.
+ *
+ * <p>The iterator is lazy: the constructor only remembers the root, and the
+ * stack never holds more than one node per level of the tree, so creating an
+ * iterator is O(1) and an early-exit scan only pays for what it visits.</p>
  *
  * @author CS367
  */
 public class BSTIterator<K> implements Iterator<K> {
 
-    /** LinkedList to track where the iterator is in the BST*/
-    LinkedList<BSTNode<K>> list;
+    /** Stack of nodes whose left subtrees have been visited but not them */
+    ArrayDeque<BSTNode<K>> stack;
+
+    /** Subtree whose left spine has not been pushed yet, or null */
+    BSTNode<K> pending;
 
     /**
      * Constructs the iterator so that it is initially at the smallest
-     * value in the set. Hint: Go to farthest left node and push each node
-     * onto the stack while stepping down the BST to get there.
+     * value in the set. No nodes are visited until the first call to
+     * hasNext() or next(), which pushes the left spine of the tree.
      *
      * @param n the root node of the BST
      */
     public BSTIterator(BSTNode<K> n) {
-    	list = new LinkedList<BSTNode<K>>();
-    	// Adds n to the stack with a companion method
-       	addToQueue(n, list);
+        stack = new ArrayDeque<BSTNode<K>>();
+        pending = n;
+    }
+
+    /**
+     * Returns an iterator positioned at the smallest key that is greater
+     * than or equal to from. Only the O(height) search path is visited.
+     *
+     * @param n the root node of the BST
+     * @param from the smallest key the iterator may return
+     * @return the positioned iterator
+     * @throws IllegalArgumentException if from is null
+     */
+    static <K extends Comparable<K>> BSTIterator<K> from(BSTNode<K> n,
+            K from) {
+        if (from == null) throw new IllegalArgumentException();
+        BSTIterator<K> itr = new BSTIterator<K>(null);
+        // Every node on the search path whose key is >= from is still ahead
+        // of the iterator, and its left child is where the search continues
+        while (n != null) {
+            if (n.getKey().compareTo(from) >= 0) {
+                itr.stack.push(n);
+                n = n.getLeftChild();
+            } else {
+                n = n.getRightChild();
+            }
+        }
+        return itr;
     }
+
     /**
-     * Companion method to add nodes to the queue.
-     * 
-     * @param parent The node being added to the queue.
-     * @param subSetList The subtree of nodes under the parent node.
+     * Pushes n and its chain of left children onto the stack.
+     *
+     * @param n the subtree to descend into, may be null
      */
-    private void addToQueue(BSTNode<K> parent, LinkedList<BSTNode<K>> subSetList) {
-    	// Adds nodes to the subSetList by in-order traversal. First checks
-    	// left child, then adds, then checks right child (Left-Visit-Right)
-    	if (parent.getLeftChild() != null) {
-    		addToQueue(parent.getLeftChild(), subSetList);
-    	}
-    	subSetList.push(parent);
-    	if (parent.getRightChild() != null) {
-    		addToQueue(parent.getRightChild(), subSetList);
-    	}
+    private void pushLeftSpine(BSTNode<K> n) {
+        while (n != null) {
+            stack.push(n);
+            n = n.getLeftChild();
+        }
     }
 
     /**
@@ -69,8 +96,7 @@ public class BSTIterator<K> implements Iterator<K> {
      * @return true iff the iterator has more items
      */
     public boolean hasNext() {
-    	// Returns false if the list is empty, true otherwise
-    	return !list.isEmpty();
+        return pending != null || !stack.isEmpty();
     }
 
     /**
@@ -80,9 +106,16 @@ public class BSTIterator<K> implements Iterator<K> {
      * @throws NoSuchElementException if the iterator has no more items
      */
     public K next() {
-    	if (!hasNext()) throw new NoSuchElementException();
-    	// Returns the last element in the list's key
-    	return list.removeLast().getKey();
+        if (pending != null) {
+            pushLeftSpine(pending);
+            pending = null;
+        }
+        if (stack.isEmpty()) throw new NoSuchElementException();
+        // The top of the stack is the smallest unvisited key; its successors
+        // are the left spine of its right subtree
+        BSTNode<K> n = stack.pop();
+        pushLeftSpine(n.getRightChild());
+        return n.getKey();
     }
     
     /**
@@ -1,6 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 ///////////////////////////////////////////////////////////////////////////////
 //
@@ -34,11 +37,21 @@ import java.util.List;
  *
  * <p>Rebalancing is triggered if the absolute value of the balancedFfactor in
  * any BSTNode is &gt;= to the rebalanceThreshold in its BSTreeSetTester.
- * Rebalancing requires the BST to be completely rebuilt.</p>
+ * Rebalancing requires the BST to be completely rebuilt, unless the tree
+ * uses {@link RebalanceMode#PARTIAL_REBUILD}, in which only the smallest
+ * subtree that went out of balance is rebuilt, or
+ * {@link RebalanceMode#AVL_ROTATION}, in which rotations on the insert path
+ * keep every balance factor within the threshold and nothing is rebuilt.</p>
+ *
+ * <p>A tree constructed with trackSizes also keeps the number of keys under
+ * every node, in SizedBSTNodes, through adds, rotations and rebuilds, and
+ * answers the OrderStatisticADT queries in O(height). Without sizes the
+ * same queries are answered by counting keys, in O(n).</p>
  *
  * @author CS367
  */
-public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K>{
+public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K>,
+        RangeSearchADT<K>, OrderStatisticADT<K>, BatchSearchADT<K> {
 
     /** Root of this tree */
     BSTNode<K> root;
@@ -59,6 +72,67 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
      */
     boolean isBalanced;
 
+    /** How the tree restores balance once rebalanceThreshold is exceeded */
+    RebalanceMode rebalanceMode;
+
+    /** True iff every node is a SizedBSTNode with an exact subtree size */
+    final boolean trackSizes;
+
+    /** Trees with at least this many keys are rebuilt by ParallelRebuilder */
+    static final int PARALLEL_REBUILD_THRESHOLD = 1 << 16;
+
+    /**
+     * Number of keys from which rebalance() and bulkLoad build the tree with
+     * fork-join tasks, PARALLEL_REBUILD_THRESHOLD unless changed for testing.
+     */
+    int parallelRebuildThreshold = PARALLEL_REBUILD_THRESHOLD;
+
+    /**
+     * Ancestors of the node being added, root first. Reused between adds so
+     * that the insert path can be walked back up without recursion.
+     */
+    private BSTNode<K>[] path;
+
+    /**
+     * Traversal stack kept by each thread between range searches, or null
+     * while one of its searches holds it
+     */
+    private static final ThreadLocal<BSTNode<?>[]> STACKS =
+            new ThreadLocal<BSTNode<?>[]>();
+
+    /**
+     * Strategies for restoring balance once the rebalanceThreshold is
+     * exceeded.
+     */
+    public enum RebalanceMode {
+        /**
+         * Copy every key out of the tree and rebuild the whole tree. Heights
+         * and balance factors are only recomputed on a rebuild.
+         */
+        FULL_REBUILD,
+
+        /**
+         * Keep exact heights and balance factors on the insert path and,
+         * when an insert lands too deep, rebuild only the lowest ancestor
+         * that is out of weight balance (a scapegoat tree), for amortized
+         * O(log n) inserts. The threshold sets how much imbalance is
+         * tolerated; see scapegoatAlpha().
+         */
+        PARTIAL_REBUILD,
+
+        /**
+         * Keep exact heights and balance factors on the insert path and,
+         * when a balance factor exceeds the threshold, restore it with a
+         * single or double rotation at that node, as an AVL tree does
+         * (threshold 1 is exactly AVL). A rotation returns the subtree to
+         * its height before the insert, so at most one is needed per add,
+         * and the walk up stops at the first ancestor whose height did not
+         * change. A non-positive threshold keeps exact heights but never
+         * rotates.
+         */
+        AVL_ROTATION
+    }
+
 
     /**
      * Constructs an empty BSTreeSetTester with a given rebalanceThreshold.
@@ -66,10 +140,43 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
      * @param rbt the rebalance threshold
      */
     public BSTreeSetTester(int rbt) {
+        this(rbt, RebalanceMode.FULL_REBUILD);
+    }
+
+    /**
+     * Constructs an empty BSTreeSetTester with a given rebalanceThreshold
+     * and rebalance strategy.
+     *
+     * @param rbt the rebalance threshold
+     * @param mode how the tree is rebalanced once rbt is exceeded
+     * @throws IllegalArgumentException if mode is null
+     */
+    public BSTreeSetTester(int rbt, RebalanceMode mode) {
+        this(rbt, mode, false);
+    }
+
+    /**
+     * Constructs an empty BSTreeSetTester with a given rebalanceThreshold
+     * and rebalance strategy that, if trackSizes is true, answers rank,
+     * select and countInRange in O(height) rather than O(n). Tracking sizes
+     * costs one int per node and an increment per ancestor on each add.
+     *
+     * @param rbt the rebalance threshold
+     * @param mode how the tree is rebalanced once rbt is exceeded
+     * @param trackSizes whether to keep subtree sizes
+     * @throws IllegalArgumentException if mode is null
+     */
+    public BSTreeSetTester(int rbt, RebalanceMode mode, boolean trackSizes) {
+        if (mode == null) throw new IllegalArgumentException();
+        this.trackSizes = trackSizes;
         root = null;
         numKeys = 0;
         isBalanced = true;
         rebalanceThreshold = rbt;
+        rebalanceMode = mode;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BSTNode<K>[] newPath = (BSTNode<K>[]) new BSTNode[16];
+        path = newPath;
     }
 
     /**
@@ -84,81 +191,459 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
 	public void add(K key) {
     	if (key == null) throw new IllegalArgumentException();
     	
-    	// If root is null, tree was empty, so creates a new root node
-    	if (root == null) {
-    		root = new BSTNode<K>(key);
-    		root.setHeight(1);
-    		root.setBalanceFactor(0);
-    		numKeys++;
-    	// If root exists, adds a new node with key on to the tree
+    	// Walks down to the empty spot for key, remembering every ancestor
+    	// so the heights can be updated afterwards without recursion
+    	BSTNode<K> n = root;
+    	int depth = 0;
+    	int cmp = 0;
+    	while (n != null) {
+    		cmp = key.compareTo(n.getKey());
+    		if (cmp == 0) {
+    			clearPath(depth);
+    			throw new DuplicateKeyException();
+    		}
+    		pushPath(depth++, n);
+    		n = cmp < 0 ? n.getLeftChild() : n.getRightChild();
+    	}
+    	
+    	BSTNode<K> node = newNode(key);
+    	// If root is null, tree was empty, so the new node is the root
+    	if (depth == 0) {
+    		root = node;
+    	} else if (cmp < 0) {
+    		path[depth - 1].setLeftChild(node);
     	} else {
-        	add(key, root);
+    		path[depth - 1].setRightChild(node);
     	}
+    	numKeys++;
+    	// Every ancestor gains a key, whether or not its height changes
+    	if (trackSizes) {
+    		for (int i = 0; i < depth; i++) {
+    			SizedBSTNode<K> p = (SizedBSTNode<K>) path[i];
+    			p.setSize(p.getSize() + 1);
+    		}
+    	}
+    	
+    	if (rebalanceMode == RebalanceMode.PARTIAL_REBUILD) {
+    		updatePathPartial(node, depth);
+    	} else if (rebalanceMode == RebalanceMode.AVL_ROTATION) {
+    		updatePathRotate(depth);
+    	} else {
+    		updatePathFull(node, depth);
+    	}
+    	clearPath(depth);
     	// Re-balances the tree if necessary
     	if (!isBalanced && rebalanceThreshold > 0) {
     		rebalance();
     	}
     }
-    
-	/**
-	 * Private companion add method.
-	 * 
-	 * @param key The key to add into the BST
-	 * @param parent The root initially, the parent being looked at.
-	 */
-    private void add(K key, BSTNode<K> parent) { 	
-    	if (parent.getKey().equals(key)) {
-    		throw new DuplicateKeyException();
-    	// If parent's key is greater than key, look in left child's subtree,
-    	// increasing parent's balance factor by 1
-    	} else if (parent.getKey().compareTo(key) > 0) {
-    		parent.setBalanceFactor(parent.getBalanceFactor()+1);
-    		parent.setHeight(parent.getHeight()+1);
-    		
-    		if (Math.abs(parent.getBalanceFactor()) > rebalanceThreshold){
-    			isBalanced = false;
-    		}
-    		// If parent's left child is null, creates a new node and adds it
-    		if (parent.getLeftChild() == null) {
-    			BSTNode<K> n = new BSTNode<K>(key);
-    			n.setHeight(1);
-    			parent.setLeftChild(n);
-    			numKeys++;
-    		// If parent's left child isn't null,
-    		// recursively calls add with the key to the parent's left child 
+
+    /**
+     * Updates the ancestors of a new node in FULL_REBUILD mode. Each
+     * ancestor's height grows by one and its balance factor moves by one
+     * toward the side the node was added on.
+     *
+     * @param node The node that was just added
+     * @param depth The number of ancestors of node stored in path
+     */
+    private void updatePathFull(BSTNode<K> node, int depth) {
+    	for (int i = 0; i < depth; i++) {
+    		BSTNode<K> parent = path[i];
+    		BSTNode<K> child = i + 1 < depth ? path[i + 1] : node;
+    		// Going left increases the balance factor, going right decreases it
+    		if (parent.getLeftChild() == child) {
+    			parent.setBalanceFactor(parent.getBalanceFactor()+1);
     		} else {
-    			add(key, parent.getLeftChild());
+    			parent.setBalanceFactor(parent.getBalanceFactor()-1);
     		}
-    	// If parent's key is smaller than key, look in right child's subtree,
-    	// decreasing parent's balance factor by 1 along the way
-    	} else if (parent.getKey().compareTo(key) < 0) {
-    		parent.setBalanceFactor(parent.getBalanceFactor()-1);
     		parent.setHeight(parent.getHeight()+1);
     		
     		if (Math.abs(parent.getBalanceFactor()) > rebalanceThreshold){
     			isBalanced = false;
     		}
-    		// If parent's right child is null, creates a new node and adds it
-    		if (parent.getRightChild() == null) {
-    			BSTNode<K> n = new BSTNode<K>(key);
-    			n.setHeight(1);
-    			parent.setRightChild(n);
-    			numKeys++;
-    		// If parent's right child isn't null,
-    		// recursively calls add with the key to the parent's right child
+    	}
+    }
+
+    /**
+     * Updates the ancestors of a new node in PARTIAL_REBUILD mode.
+     * Recomputes the height and balance factor of every ancestor from the
+     * bottom up. If the new node ended up deeper than the scapegoat depth
+     * bound, the lowest ancestor that is not weight balanced is rebuilt.
+     *
+     * @param node The node that was just added
+     * @param depth The number of ancestors of node stored in path
+     */
+    private void updatePathPartial(BSTNode<K> node, int depth) {
+    	// Only a node deeper than the bound starts a scapegoat search
+    	boolean searching = depth > maxScapegoatDepth(numKeys);
+    	int size = 1;
+    	BSTNode<K> child = node;
+    	for (int i = depth - 1; i >= 0; i--) {
+    		BSTNode<K> parent = path[i];
+    		updateHeight(parent);
+    		if (searching) {
+    			// parent is the scapegoat if the child we came from holds
+    			// more than alpha of its keys
+    			BSTNode<K> sibling = parent.getLeftChild() == child ?
+    					parent.getRightChild() : parent.getLeftChild();
+    			int childSize = size;
+    			size = childSize + 1 + subtreeSize(sibling);
+    			if (childSize > scapegoatAlpha() * size) {
+    				parent = rebuildSubtree(parent, size);
+    				replacePathNode(i, parent);
+    				searching = false;
+    			}
+    		}
+    		child = parent;
+    	}
+    }
+
+    /**
+     * Updates the ancestors of a new node in AVL_ROTATION mode, from the
+     * bottom up. Each ancestor's height and balance factor are recomputed
+     * from its children; one whose balance factor exceeds the threshold is
+     * rotated back into balance. The walk stops as soon as a subtree's
+     * height is the same as before the insert, since nothing above it can
+     * have changed.
+     *
+     * @param depth The number of ancestors of the new node stored in path
+     */
+    private void updatePathRotate(int depth) {
+    	for (int i = depth - 1; i >= 0; i--) {
+    		BSTNode<K> parent = path[i];
+    		int oldHeight = parent.getHeight();
+    		updateHeight(parent);
+    		if (rebalanceThreshold > 0 &&
+    				Math.abs(parent.getBalanceFactor()) > rebalanceThreshold) {
+    			parent = rotateToBalance(parent);
+    			replacePathNode(i, parent);
+    		}
+    		if (parent.getHeight() == oldHeight) {
+    			break;
+    		}
+    	}
+    }
+
+    /**
+     * Rebalances the subtree rooted at n, whose balance factor has just
+     * gone one past the threshold, with a single rotation if the taller
+     * child leans the same way as n (or not at all), or a double rotation
+     * if it leans the other way.
+     *
+     * @param n the unbalanced node, with exact heights below it
+     * @return the new root of the subtree
+     */
+    private static <K> BSTNode<K> rotateToBalance(BSTNode<K> n) {
+    	if (n.getBalanceFactor() > 0) {
+    		if (n.getLeftChild().getBalanceFactor() < 0) {
+    			n.setLeftChild(rotateLeft(n.getLeftChild()));
+    		}
+    		return rotateRight(n);
+    	}
+    	if (n.getRightChild().getBalanceFactor() > 0) {
+    		n.setRightChild(rotateRight(n.getRightChild()));
+    	}
+    	return rotateLeft(n);
+    }
+
+    /**
+     * Rotates the subtree rooted at n to the right, making n's left child
+     * the root, and updates both nodes' heights and balance factors.
+     *
+     * @param n the subtree root, with a left child
+     * @return the new subtree root
+     */
+    private static <K> BSTNode<K> rotateRight(BSTNode<K> n) {
+    	BSTNode<K> l = n.getLeftChild();
+    	n.setLeftChild(l.getRightChild());
+    	l.setRightChild(n);
+    	updateHeight(n);
+    	updateHeight(l);
+    	return l;
+    }
+
+    /**
+     * Rotates the subtree rooted at n to the left, making n's right child
+     * the root, and updates both nodes' heights and balance factors.
+     *
+     * @param n the subtree root, with a right child
+     * @return the new subtree root
+     */
+    private static <K> BSTNode<K> rotateLeft(BSTNode<K> n) {
+    	BSTNode<K> r = n.getRightChild();
+    	n.setRightChild(r.getLeftChild());
+    	r.setLeftChild(n);
+    	updateHeight(n);
+    	updateHeight(r);
+    	return r;
+    }
+
+    /**
+     * Stores n as the ancestor at the given depth, growing path if needed.
+     *
+     * @param depth the depth of n, where the root has depth 0
+     * @param n the ancestor
+     */
+    private void pushPath(int depth, BSTNode<K> n) {
+    	if (depth == path.length) {
+    		path = Arrays.copyOf(path, path.length * 2);
+    	}
+    	path[depth] = n;
+    }
+
+    /**
+     * Drops the references path holds so rebuilt nodes can be collected.
+     *
+     * @param depth the number of ancestors stored in path
+     */
+    private void clearPath(int depth) {
+    	Arrays.fill(path, 0, depth, null);
+    }
+
+    /**
+     * Links n into the tree in place of the ancestor stored at path[i].
+     *
+     * @param i the depth of the ancestor being replaced
+     * @param n the replacement subtree root
+     */
+    private void replacePathNode(int i, BSTNode<K> n) {
+    	if (i == 0) {
+    		root = n;
+    	} else if (path[i - 1].getLeftChild() == path[i]) {
+    		path[i - 1].setLeftChild(n);
+    	} else {
+    		path[i - 1].setRightChild(n);
+    	}
+    	path[i] = n;
+    }
+
+    /**
+     * Returns the weight balance alpha used by PARTIAL_REBUILD mode. A node
+     * is out of balance when one child holds more than alpha of its keys.
+     * Larger thresholds tolerate more imbalance: 1 gives 2/3, 2 gives 3/4.
+     *
+     * @return alpha, between 1/2 and 1
+     */
+    private double scapegoatAlpha() {
+    	return 1.0 - 1.0 / (rebalanceThreshold + 2);
+    }
+
+    /**
+     * Returns the deepest a node may be in a tree with n keys before
+     * PARTIAL_REBUILD mode looks for a scapegoat, i.e., log base 1/alpha of n.
+     * A non-positive threshold never rebuilds.
+     *
+     * @param n the number of keys in the tree
+     * @return the depth bound
+     */
+    private int maxScapegoatDepth(int n) {
+    	if (rebalanceThreshold <= 0) return Integer.MAX_VALUE;
+    	return (int) Math.floor(Math.log(n) / -Math.log(scapegoatAlpha()));
+    }
+
+    /**
+     * Counts the keys in the subtree rooted at n, in O(1) if the tree tracks
+     * sizes.
+     *
+     * @param n the subtree root, may be null
+     * @return the number of keys under n
+     */
+    private int subtreeSize(BSTNode<K> n) {
+    	if (trackSizes) return size(n);
+    	int size = 0;
+    	BSTIterator<K> itr = new BSTIterator<K>(n);
+    	while (itr.hasNext()) {
+    		itr.next();
+    		size++;
+    	}
+    	return size;
+    }
+
+    /**
+     * Sets the height and balance factor of n from those of its children,
+     * and its subtree size if it is a SizedBSTNode. Every rotation and
+     * rebuild goes through here, so sizes need no other bookkeeping there.
+     *
+     * @param n the node to update
+     */
+    static <K> void updateHeight(BSTNode<K> n) {
+    	int lh = height(n.getLeftChild());
+    	int rh = height(n.getRightChild());
+    	n.setHeight(1 + Math.max(lh, rh));
+    	n.setBalanceFactor(lh - rh);
+    	if (n instanceof SizedBSTNode) {
+    		((SizedBSTNode<K>) n).setSize(1 + size(n.getLeftChild()) +
+    				size(n.getRightChild()));
+    	}
+    }
+
+    /**
+     * Returns the subtree size of n, which must be a SizedBSTNode or null.
+     *
+     * @param n the node, may be null
+     * @return the number of keys under n
+     */
+    private static <K> int size(BSTNode<K> n) {
+    	return n == null ? 0 : ((SizedBSTNode<K>) n).getSize();
+    }
+
+    /**
+     * Creates a leaf for key, a SizedBSTNode if the tree tracks sizes.
+     * Every node of the tree, including those ParallelRebuilder builds, is
+     * made here.
+     *
+     * @param key the key
+     * @return the new leaf
+     */
+    BSTNode<K> newNode(K key) {
+    	return trackSizes ? new SizedBSTNode<K>(key) : new BSTNode<K>(key);
+    }
+
+    /**
+     * Returns the height of n, where an empty subtree has height 0.
+     *
+     * @param n the node, may be null
+     * @return the height of n
+     */
+    private static <K> int height(BSTNode<K> n) {
+    	return n == null ? 0 : n.getHeight();
+    }
+
+    /**
+     * Rebuilds the subtree rooted at n into a perfectly balanced subtree.
+     *
+     * @param n the root of the subtree to rebuild
+     * @param size the number of keys under n
+     * @return the root of the rebuilt subtree
+     */
+    private BSTNode<K> rebuildSubtree(BSTNode<K> n, int size) {
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	K[] keys = (K[]) new Comparable[size];
+    	BSTIterator<K> itr = new BSTIterator<K>(n);
+    	int i = 0;
+    	while (itr.hasNext()) {
+    		keys[i++] = itr.next();
+    	}
+    	return sortedArrayToBST(keys, 0, size - 1);
+    }
+
+    /**
+     * Adds every key in the collection, see bulkLoad.
+     *
+     * @param keys the keys to add
+     * @throws IllegalArgumentException if keys or any key in it is null
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public void addAll(Collection<? extends K> keys) {
+    	if (keys == null) throw new IllegalArgumentException();
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	K[] array = (K[]) keys.toArray(new Comparable[keys.size()]);
+    	bulkLoad(array);
+    }
+
+    /**
+     * Adds every key in the array by building the tree in one pass instead
+     * of one add at a time. If the keys are already in ascending order the
+     * build is O(n); otherwise a copy is sorted first. Keys already in the
+     * tree are merged in, and duplicates are detected during the merge.
+     * If a duplicate or null key is found the tree is left unchanged.
+     *
+     * <p>The result is always a perfectly balanced tree with exact heights
+     * and balance factors, whatever the rebalanceThreshold.</p>
+     *
+     * @param keys the keys to add, not modified
+     * @throws IllegalArgumentException if keys or any key in it is null
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public void bulkLoad(K[] keys) {
+    	if (keys == null) throw new IllegalArgumentException();
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	K[] sorted = (K[]) new Comparable[keys.length];
+    	// Copies the keys, checking whether they are already in order
+    	boolean isSorted = true;
+    	for (int i = 0; i < keys.length; i++) {
+    		if (keys[i] == null) throw new IllegalArgumentException();
+    		sorted[i] = keys[i];
+    		if (isSorted && i > 0 && keys[i - 1].compareTo(keys[i]) >= 0) {
+    			isSorted = false;
+    		}
+    	}
+    	if (!isSorted) {
+    		Arrays.sort(sorted);
+    	}
+    	buildFromSorted(mergeWithTree(sorted));
+    }
+
+    /**
+     * Replaces the tree with a perfectly balanced one built from keys in
+     * O(n), by fork-join tasks if there are at least
+     * parallelRebuildThreshold of them.
+     *
+     * @param sorted the keys, in strictly ascending order, not checked
+     */
+    void buildFromSorted(K[] sorted) {
+    	root = sorted.length >= parallelRebuildThreshold ?
+    			ParallelRebuilder.build(this, sorted, 0, sorted.length - 1,
+    					ParallelRebuilder.SEQUENTIAL_CUTOFF) :
+    			sortedArrayToBST(sorted, 0, sorted.length - 1);
+    	numKeys = sorted.length;
+    	isBalanced = true;
+    }
+
+    /**
+     * Merges the keys in the tree with sorted into a new sorted array,
+     * throwing if a key appears twice in sorted or in both.
+     *
+     * @param sorted the sorted keys to merge in
+     * @return all keys in ascending order
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    private K[] mergeWithTree(K[] sorted) {
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	K[] merged = (K[]) new Comparable[numKeys + sorted.length];
+    	BSTIterator<K> itr = new BSTIterator<K>(root);
+    	K treeKey = itr.hasNext() ? itr.next() : null;
+    	int i = 0;
+    	int m = 0;
+    	while (i < sorted.length) {
+    		int cmp = treeKey == null ? 1 : treeKey.compareTo(sorted[i]);
+    		if (cmp == 0 ||
+    				(i > 0 && sorted[i - 1].compareTo(sorted[i]) == 0)) {
+    			throw new DuplicateKeyException();
+    		}
+    		if (cmp < 0) {
+    			merged[m++] = treeKey;
+    			treeKey = itr.hasNext() ? itr.next() : null;
     		} else {
-    			add(key, parent.getRightChild());
+    			merged[m++] = sorted[i++];
     		}
     	}
+    	// The rest of the tree is larger than every new key
+    	while (treeKey != null) {
+    		merged[m++] = treeKey;
+    		treeKey = itr.hasNext() ? itr.next() : null;
+    	}
+    	return merged;
     }
-    
+
     /**
      * Rebalances the tree by:
      * 1. Copying all keys in the BST in sorted order into an array.
      *    Hint: Use your BSTIterator.
      * 2. Rebuilding the tree from the sorted array of keys.
+     * Trees with at least parallelRebuildThreshold keys do both steps with
+     * fork-join tasks, see ParallelRebuilder; the new tree is the same.
      */
     public void rebalance() {
+    	// Large trees are copied and rebuilt by fork-join tasks instead
+    	if (numKeys >= parallelRebuildThreshold) {
+    		K[] keys = ParallelRebuilder.flatten(root, numKeys,
+    				ParallelRebuilder.SEQUENTIAL_CUTOFF);
+    		root = ParallelRebuilder.build(this, keys, 0, numKeys - 1,
+    				ParallelRebuilder.SEQUENTIAL_CUTOFF);
+    		isBalanced = true;
+    		return;
+    	}
     	K[] keys = (K[]) new Comparable[numKeys];
         BSTIterator<K> itr = new BSTIterator<K>(root);
         int i = 0;
@@ -185,34 +670,17 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
      * @param stop the last index of the part of the array used
      * @return root of the new balanced binary search tree
      */
-    private BSTNode<K> sortedArrayToBST(K[] keys, int start, int stop) {
-    	// Returns private companion sortedArrayToBST method
-    	
-    	int rootHeight = (int)Math.ceil(Math.log(keys.length) / Math.log(2));
-    	return sortedArrayToBST(keys, start, stop, rootHeight);
-	}
-    
-    private BSTNode<K> sortedArrayToBST(K[] keys, int start, int stop, int currHeight) {
+    BSTNode<K> sortedArrayToBST(K[] keys, int start, int stop) {
     	if (start > stop) return null;
     	// Mid is set to the middle of start and stop & creates a node with
     	// keys at mid's data
 		int mid = (stop + start) / 2;
-		BSTNode<K> node = new BSTNode<K>(keys[mid]);
-		// If node has left children
-		if (mid > start) {
-			node.setBalanceFactor(1);
-		}
-		// If node has right children
-		if (stop > mid) {
-			node.setBalanceFactor(node.getBalanceFactor() - 1);
-		}
-		// Sets the new node's height
-		node.setHeight(currHeight);
-		
-		int c = currHeight - 1;
+		BSTNode<K> node = newNode(keys[mid]);
 		// Sets its left and right children using recursion
-		node.setRightChild(sortedArrayToBST(keys, mid+1, stop, c));
-		node.setLeftChild(sortedArrayToBST(keys, start, mid-1, c));
+		node.setRightChild(sortedArrayToBST(keys, mid+1, stop));
+		node.setLeftChild(sortedArrayToBST(keys, start, mid-1));
+		// Height and balance factor follow from the finished children
+		updateHeight(node);
 		return node;
     }
 
@@ -225,73 +693,319 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
      */
     public boolean contains(K key) {        
     	if (key == null) throw new IllegalArgumentException();
-    	// Returns the private companion method contains with key and the root
-    	return contains(key, root);    	
-    }
-    
-    /**
-     * Private companion method that searches the entire tree using
-     * recursion to determine if it has a node that contains key
-     * 
-     * @param key The element we're looking for in the tree
-     * @param parent The current node being checked
-     * @return True if we found a matching node, false otherwise
-     */
-    private boolean contains(K key, BSTNode<K> parent) {
-    	if (parent == null) return false;
-    	// If parent's key equals key, return true
-    	if (parent.getKey().equals(key)) {
-    		return true;
-    	// If parent's key is less than key, look in right child's subtree
-    	} else if (parent.getKey().compareTo(key) < 0) {
-    		return contains(key, parent.getRightChild());
-    	// If parent's key is greater than key, look in left child's subtree
-    	} else {
-    		return contains(key, parent.getLeftChild());
+    	// Walks down from the root with a single compareTo per node
+    	BSTNode<K> n = root;
+    	while (n != null) {
+    		int cmp = key.compareTo(n.getKey());
+    		if (cmp == 0) {
+    			return true;
+    		}
+    		// If key is smaller look in the left subtree, else in the right
+    		n = cmp < 0 ? n.getLeftChild() : n.getRightChild();
     	}
+    	return false;
     }
 
     /**
-     * Returns the sorted list of keys in the tree that are in the specified
-     * range (inclusive of minValue, exclusive of maxValue). This can be done
-     * recursively.
+     * Searches for a sorted batch of probes in one traversal. Each node
+     * visited splits its run of probes around its key: the probes equal to
+     * the key are found, the smaller ones continue into the left subtree
+     * and the larger ones into the right. A node is therefore visited once
+     * per batch rather than once per probe that passes it, so the top
+     * levels, which every search crosses, are compared a few times instead
+     * of sortedProbes.length times. Once a run is down to one probe it
+     * finishes with an ordinary descent. Subtrees are kept on an explicit
+     * stack, since an unbalanced tree may be deep.
+     *
+     * <p>Checking the order costs one compareTo per probe.</p>
+     */
+    @Override
+    public void containsBatch(K[] sortedProbes, boolean[] out) {
+    	if (sortedProbes == null || out == null ||
+    			out.length < sortedProbes.length) {
+    		throw new IllegalArgumentException();
+    	}
+    	for (int i = 0; i < sortedProbes.length; i++) {
+    		if (sortedProbes[i] == null || (i > 0 &&
+    				sortedProbes[i - 1].compareTo(sortedProbes[i]) > 0)) {
+    			throw new IllegalArgumentException();
+    		}
+    	}
+    	if (sortedProbes.length == 0) return;
+
+    	// Pending subtrees, each with its run [lo, hi) of probes
+    	@SuppressWarnings({"unchecked", "rawtypes"})
+    	BSTNode<K>[] nodes = (BSTNode<K>[]) new BSTNode[16];
+    	int[] los = new int[16];
+    	int[] his = new int[16];
+    	nodes[0] = root;
+    	los[0] = 0;
+    	his[0] = sortedProbes.length;
+    	int top = 1;
+    	while (top > 0) {
+    		top--;
+    		BSTNode<K> n = nodes[top];
+    		int lo = los[top];
+    		int hi = his[top];
+    		nodes[top] = null;
+    		if (hi - lo == 1) {
+    			out[lo] = containsFrom(n, sortedProbes[lo]);
+    			continue;
+    		}
+    		if (n == null) {
+    			Arrays.fill(out, lo, hi, false);
+    			continue;
+    		}
+    		K key = n.getKey();
+    		// Probes [lo, mid) are smaller than key
+    		int mid = lowerBound(sortedProbes, lo, hi, key);
+    		int end = mid;
+    		while (end < hi && sortedProbes[end].compareTo(key) == 0) {
+    			out[end++] = true;
+    		}
+    		if (top + 2 > nodes.length) {
+    			nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    			los = Arrays.copyOf(los, los.length * 2);
+    			his = Arrays.copyOf(his, his.length * 2);
+    		}
+    		if (end < hi) {
+    			nodes[top] = n.getRightChild();
+    			los[top] = end;
+    			his[top++] = hi;
+    		}
+    		if (lo < mid) {
+    			nodes[top] = n.getLeftChild();
+    			los[top] = lo;
+    			his[top++] = mid;
+    		}
+    	}
+    }
+
+    /**
+     * Returns true iff the subtree rooted at n contains key.
+     *
+     * @param n the subtree root, may be null
+     * @param key the key to search
+     * @return true iff key is under n
+     */
+    private static <K extends Comparable<K>> boolean containsFrom(
+    		BSTNode<K> n, K key) {
+    	while (n != null) {
+    		int cmp = key.compareTo(n.getKey());
+    		if (cmp == 0) {
+    			return true;
+    		}
+    		n = cmp < 0 ? n.getLeftChild() : n.getRightChild();
+    	}
+    	return false;
+    }
+
+    /**
+     * Returns the index of the first of keys[lo..hi) that is not smaller
+     * than key, which are in ascending order.
+     *
+     * @param keys the sorted keys
+     * @param lo the first index searched
+     * @param hi one past the last index searched
+     * @param key the key
+     * @return the index, hi if every key is smaller
+     */
+    private static <K extends Comparable<K>> int lowerBound(K[] keys,
+    		int lo, int hi, K key) {
+    	while (lo < hi) {
+    		int mid = (lo + hi) >>> 1;
+    		if (keys[mid].compareTo(key) < 0) {
+    			lo = mid + 1;
+    		} else {
+    			hi = mid;
+    		}
+    	}
+    	return lo;
+    }
+
+    /**
+     * Returns the number of keys smaller than key, adding up the left
+     * subtree sizes along key's search path. Without tracked sizes those
+     * subtrees are counted; they are disjoint, so that is O(n).
+     *
+     * @param key the key
+     * @return the number of smaller keys
+     * @throws IllegalArgumentException if key is null
+     */
+    public int rank(K key) {
+    	if (key == null) throw new IllegalArgumentException();
+    	int rank = 0;
+    	BSTNode<K> n = root;
+    	while (n != null) {
+    		int cmp = key.compareTo(n.getKey());
+    		if (cmp <= 0) {
+    			if (cmp == 0) return rank + subtreeSize(n.getLeftChild());
+    			n = n.getLeftChild();
+    		} else {
+    			// n and everything left of it are smaller
+    			rank += subtreeSize(n.getLeftChild()) + 1;
+    			n = n.getRightChild();
+    		}
+    	}
+    	return rank;
+    }
+
+    /**
+     * Returns the key with the given rank, steering by left subtree sizes,
+     * or without tracked sizes by walking the keys in order up to it.
+     *
+     * @param rank the rank, from 0 to size() - 1
+     * @return the key
+     * @throws IllegalArgumentException if rank is out of range
+     */
+    public K select(int rank) {
+    	if (rank < 0 || rank >= numKeys) throw new IllegalArgumentException();
+    	if (!trackSizes) {
+    		BSTIterator<K> itr = new BSTIterator<K>(root);
+    		for (int i = 0; i < rank; i++) {
+    			itr.next();
+    		}
+    		return itr.next();
+    	}
+    	BSTNode<K> n = root;
+    	while (true) {
+    		int leftSize = size(n.getLeftChild());
+    		if (rank < leftSize) {
+    			n = n.getLeftChild();
+    		} else if (rank == leftSize) {
+    			return n.getKey();
+    		} else {
+    			rank -= leftSize + 1;
+    			n = n.getRightChild();
+    		}
+    	}
+    }
+
+    /**
+     * Returns the number of keys in [minValue, maxValue) as the difference
+     * of two ranks, without visiting the keys in between. Without tracked
+     * sizes the keys in the range are visited and counted instead.
      *
      * @param minValue the minimum value of the desired range (inclusive)
      * @param maxValue the maximum value of the desired range (exclusive)
-     * @return the sorted list of keys in the specified range
+     * @return the number of keys in the range
      * @throws IllegalArgumentException if either minValue or maxValue is
      * null, or minValue is larger than maxValue
      */
-    public List<K> subSet(K minValue, K maxValue) {
-    	if (minValue == null || maxValue == null || 
+    public int countInRange(K minValue, K maxValue) {
+    	if (minValue == null || maxValue == null ||
     			minValue.compareTo(maxValue) > 0) {
     		throw new IllegalArgumentException();
     	}
-    	// Creates subSetList and calls companion addToList method with the
-    	// min, max, root of the tree, and the new ArrayList
+    	if (!trackSizes) {
+    		int[] count = new int[1];
+    		forEachInRange(minValue, maxValue, key -> count[0]++);
+    		return count[0];
+    	}
+    	return rank(maxValue) - rank(minValue);
+    }
+
+    /**
+     * Returns the sorted list of keys in the tree that are in the specified
+     * range (inclusive of minValue, exclusive of maxValue). Subtrees that
+     * lie entirely outside the range are skipped, so only the O(height)
+     * boundary paths and the k matching nodes are visited.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @return the sorted list of keys in the specified range
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue
+     */
+    public List<K> subSet(K minValue, K maxValue) {
+    	// Creates subSetList and fills it with the pruned in-order traversal
     	List<K> subSetList = new ArrayList<K>();
-        addToList(minValue, maxValue, root, subSetList);
+    	forEachInRange(minValue, maxValue, subSetList::add);
         return subSetList;
     }
-    
+
     /**
-     * Resursively adds keys to the list using in-order traversal
-     * 
-     * @param minValue The minimum value
-     * @param maxValue The maximum value
-     * @param parent The parent node
-     * @param subSetList The subset list
+     * Passes each key in the range [minValue, maxValue) to action in sorted
+     * order. Only the subtrees that can hold keys in the range are visited,
+     * so a search costs O(height + k) for k matching keys. The traversal
+     * stack is the calling thread's, kept between searches, so once it has
+     * grown to the deepest path a search allocates nothing. No two searches
+     * hold the same stack: any number of threads may search at once while
+     * none adds, and action may itself search this tree, getting a new
+     * stack.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param action the action to perform on each key in the range
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue, or action is null
      */
-    private void addToList(K minValue, K maxValue, BSTNode<K> parent, List<K> subSetList) {
-    	// Adds the parent node to subSetList in the appropriate position using
-    	// in-order traversal (Check left - Visit - Check right)
-    	if (parent.getLeftChild() != null && parent.getLeftChild().getKey().compareTo(minValue) >= 0) {
-    		addToList(minValue, maxValue, parent.getLeftChild(), subSetList);
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+    	if (minValue == null || maxValue == null || action == null ||
+    			minValue.compareTo(maxValue) > 0) {
+    		throw new IllegalArgumentException();
     	}
-    	subSetList.add(parent.getKey());
-    	if (parent.getRightChild() != null && parent.getRightChild().getKey().compareTo(maxValue) < 0) {
-    		addToList(minValue, maxValue, parent.getRightChild(), subSetList);
+    	BSTNode<K>[] stack = takeStack();
+    	BSTNode<K> n = root;
+    	int top = 0;
+    	while (n != null || top > 0) {
+    		// Descends left only while the left subtree can hold keys >= min
+    		while (n != null) {
+    			if (top == stack.length) {
+    				stack = Arrays.copyOf(stack, top * 2);
+    			}
+    			stack[top++] = n;
+    			n = n.getKey().compareTo(minValue) > 0 ? n.getLeftChild() : null;
+    		}
+    		n = stack[--top];
+    		stack[top] = null;
+    		K key = n.getKey();
+    		// Keys only grow from here, so the first one past max ends it
+    		if (key.compareTo(maxValue) >= 0) {
+    			break;
+    		}
+    		if (key.compareTo(minValue) >= 0) {
+    			action.accept(key);
+    		}
+    		n = n.getRightChild();
     	}
+    	// The kept stack must not hold on to nodes of this tree
+    	Arrays.fill(stack, 0, top, null);
+    	STACKS.set(stack);
+    }
+
+    /**
+     * Takes the calling thread's traversal stack for one forEachInRange,
+     * which gives it back to STACKS when done, or a new one if the thread
+     * has none or a search of its own is holding it.
+     *
+     * @return the stack, empty
+     */
+    @SuppressWarnings("unchecked")
+    private static <K> BSTNode<K>[] takeStack() {
+    	BSTNode<?>[] s = STACKS.get();
+    	if (s == null) return (BSTNode<K>[]) new BSTNode<?>[16];
+    	STACKS.set(null);
+    	return (BSTNode<K>[]) s;
+    }
+
+    /**
+     * Clears result and fills it with the sorted keys in the range
+     * [minValue, maxValue), see forEachInRange.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param result the list to fill
+     * @return result
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue, or result is null
+     */
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+    	if (result == null) throw new IllegalArgumentException();
+    	result.clear();
+    	forEachInRange(minValue, maxValue, result::add);
+    	return result;
     }
 
     /**
@@ -302,6 +1016,18 @@ public class BSTreeSetTester <K extends Comparable<K>> implements SetTesterADT<K
         return new BSTIterator<K>(root);
     }
 
+    /**
+     * Return an in-order iterator that starts at the smallest key greater
+     * than or equal to from. Positioning the iterator takes O(height).
+     *
+     * @param from the smallest key the iterator may return
+     * @return the iterator
+     * @throws IllegalArgumentException if from is null
+     */
+    public Iterator<K> iteratorFrom(K from) {
+        return BSTIterator.from(root, from);
+    }
+
     /**
      * Clears the tree, i.e., removes all the keys in the tree.
      */
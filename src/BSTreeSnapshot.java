@@ -0,0 +1,366 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.zip.CRC32C;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             BSTreeSnapshot.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Saves a BSTreeSetTester of Integers to a binary snapshot file and loads
+ * it back, so a tree can be restored without parsing text or adding its
+ * keys one at a time.
+ *
+ * <p>A snapshot is a 32-byte header followed by the keys in ascending
+ * order as little-endian int32s. The header holds, each as a little-endian
+ * int32: the magic bytes "BSNP", the format version, the key type (only
+ * KEY_TYPE_INT so far), the number of keys, the tree's rebalance
+ * threshold, its RebalanceMode ordinal, flags (bit 0: subtree sizes are
+ * tracked) and a CRC-32C of every other byte of the file.</p>
+ *
+ * <p>load maps the file, checks the header, the length, the checksum and
+ * that the keys ascend, and then builds the tree straight from the sorted
+ * keys with BSTreeSetTester.buildFromSorted, in O(n) with no compareTo
+ * calls. The loaded tree is perfectly balanced, whatever shape the saved
+ * one had.</p>
+ *
+ * <p>save writes a temporary file next to the snapshot, forces it to the
+ * disk, renames it over the snapshot and forces the directory, so a crash
+ * while saving leaves the previous snapshot intact and a save that has
+ * returned survives a power loss.</p>
+ *
+ * <pre>java BSTreeSnapshot random_40000.txt random_40000.snap 2</pre>
+ *
+ * times building the tree from the text file with add and with bulkLoad,
+ * saves it and times loading the snapshot.
+ */
+public class BSTreeSnapshot {
+
+    /** The first four bytes of a snapshot, "BSNP" read little-endian */
+    static final int MAGIC = 0x504E5342;
+
+    /** The snapshot format version this class writes */
+    static final int VERSION = 1;
+
+    /** Key type code for Integer keys stored as int32 */
+    static final int KEY_TYPE_INT = 1;
+
+    /** Size of the header in bytes */
+    static final int HEADER_SIZE = 32;
+
+    /** Offset of the checksum in the header */
+    static final int CHECKSUM_OFFSET = 28;
+
+    /** Flag bit set when the tree tracks subtree sizes */
+    private static final int FLAG_TRACK_SIZES = 1;
+
+    /** Never instantiated */
+    private BSTreeSnapshot() {
+    }
+
+    /**
+     * Writes tree to file as a snapshot, replacing the file if it exists.
+     * When save returns, the rename is on the disk as well as the keys.
+     *
+     * @param tree the tree to save, not changed
+     * @param file the snapshot file name
+     * @throws IllegalArgumentException if tree or file is null
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void save(BSTreeSetTester<Integer> tree, String file)
+            throws IOException {
+        if (tree == null || file == null) throw new IllegalArgumentException();
+        Path path = Paths.get(file).toAbsolutePath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel ch = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(KEY_TYPE_INT)
+                    .putInt(tree.size()).putInt(tree.rebalanceThreshold)
+                    .putInt(tree.rebalanceMode.ordinal())
+                    .putInt(tree.trackSizes ? FLAG_TRACK_SIZES : 0);
+            // The checksum is written last, over everything but itself
+            ByteBuffer header = buf.duplicate();
+            header.flip();
+            crc.update(header);
+            buf.putInt(0);
+            int count = 0;
+            for (Integer key : tree) {
+                if (!buf.hasRemaining()) {
+                    writeFully(ch, buf, crc);
+                }
+                buf.putInt(key);
+                count++;
+            }
+            writeFully(ch, buf, crc);
+            if (count != tree.size()) {
+                throw new IOException("Tree changed while saving");
+            }
+            buf.putInt((int) crc.getValue()).flip();
+            while (buf.hasRemaining()) {
+                ch.write(buf, CHECKSUM_OFFSET + buf.position());
+            }
+            ch.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(path.getParent());
+    }
+
+    /**
+     * Forces dir to the disk, so that a rename into it is durable. Until
+     * then the new directory entry may be lost in a power failure, leaving
+     * the old file under the name.
+     *
+     * @param dir the directory
+     * @throws IOException if the directory cannot be forced
+     */
+    static void forceDirectory(Path dir) throws IOException {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows cannot open a directory, and makes renames durable
+            // itself
+            if (System.getProperty("os.name").startsWith("Windows")) return;
+            throw e;
+        }
+        try {
+            ch.force(true);
+        } finally {
+            ch.close();
+        }
+    }
+
+    /**
+     * Writes everything in buf to ch, adds it to crc and clears buf. The
+     * checksum field of the header is left out of crc.
+     *
+     * @param ch the channel
+     * @param buf the bytes to write, flipped by this method
+     * @param crc the running checksum
+     * @throws IOException if the write fails
+     */
+    private static void writeFully(FileChannel ch, ByteBuffer buf,
+            CRC32C crc) throws IOException {
+        buf.flip();
+        ByteBuffer data = buf.duplicate();
+        if (ch.position() == 0) {
+            data.position(HEADER_SIZE);
+        }
+        crc.update(data);
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Loads a snapshot into a new tree with the saved rebalance threshold,
+     * mode and size tracking.
+     *
+     * @param file the snapshot file name
+     * @return the tree
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException if the file cannot be read, is not a snapshot,
+     * or is truncated, corrupt or of an unsupported version or key type
+     */
+    public static BSTreeSetTester<Integer> load(String file)
+            throws IOException {
+        Path path = Paths.get(file);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(file);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Truncated header");
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + size);
+            }
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            int version = map.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version);
+            }
+            int keyType = map.getInt(8);
+            if (keyType != KEY_TYPE_INT) {
+                throw new IOException("Unsupported key type " + keyType);
+            }
+            int count = map.getInt(12);
+            if (count < 0 || size != HEADER_SIZE + 4L * count) {
+                throw new IOException("File holds " + (size - HEADER_SIZE) +
+                        " bytes of keys, header says " + count + " keys");
+            }
+            int threshold = map.getInt(16);
+            int mode = map.getInt(20);
+            int flags = map.getInt(24);
+            BSTreeSetTester.RebalanceMode[] modes =
+                    BSTreeSetTester.RebalanceMode.values();
+            if (mode < 0 || mode >= modes.length) {
+                throw new IOException("Unknown rebalance mode " + mode);
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(map.duplicate().position(0).limit(CHECKSUM_OFFSET));
+            crc.update(map.duplicate().position(HEADER_SIZE));
+            if ((int) crc.getValue() != map.getInt(CHECKSUM_OFFSET)) {
+                throw new IOException("Checksum mismatch");
+            }
+
+            Integer[] keys = new Integer[count];
+            IntBuffer ints = map.duplicate().order(ByteOrder.LITTLE_ENDIAN)
+                    .position(HEADER_SIZE).asIntBuffer();
+            int prev = 0;
+            for (int i = 0; i < count; i++) {
+                int key = ints.get(i);
+                if (i > 0 && key <= prev) {
+                    throw new IOException("Keys out of order at " + i);
+                }
+                keys[i] = key;
+                prev = key;
+            }
+            BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(
+                    threshold, modes[mode], (flags & FLAG_TRACK_SIZES) != 0);
+            tree.buildFromSorted(keys);
+            return tree;
+        }
+    }
+
+    /**
+     * Returns true iff the trees hold the same keys.
+     *
+     * @param a a tree
+     * @param b another tree
+     * @return true iff a and b iterate the same keys
+     */
+    private static boolean sameKeys(BSTreeSetTester<Integer> a,
+            BSTreeSetTester<Integer> b) {
+        if (a.size() != b.size()) return false;
+        Iterator<Integer> itr = b.iterator();
+        for (Integer key : a) {
+            if (!key.equals(itr.next())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Times the three ways of getting a tree of a data file's keys: parsing
+     * the text and adding each key, parsing it and calling bulkLoad, and
+     * loading a snapshot, which is saved first. Each is repeated and the
+     * fastest and mean times are printed; the first repetitions include
+     * JIT compilation, so the fastest is the steady-state figure.
+     *
+     * @param args a data file, a snapshot file to write, and optionally
+     * the rebalance threshold (default 2) and repetitions (default 5)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Bad invocation! Correct usage: "
+                    + "java BSTreeSnapshot <data file> <snapshot file> "
+                    + "[<rebalance threshold> [<repetitions>]]");
+            System.exit(1);
+        }
+        int threshold = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int reps = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        double[] addMs = new double[reps];
+        double[] bulkMs = new double[reps];
+        double[] snapMs = new double[reps];
+        BSTreeSetTester<Integer> added = null;
+        BSTreeSetTester<Integer> loaded = null;
+        for (int r = 0; r < reps; r++) {
+            long start = System.nanoTime();
+            added = new BSTreeSetTester<Integer>(threshold);
+            for (int key : IntDataLoader.load(args[0])) {
+                added.add(key);
+            }
+            addMs[r] = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            int[] values = IntDataLoader.load(args[0]);
+            Integer[] boxed = new Integer[values.length];
+            for (int i = 0; i < values.length; i++) {
+                boxed[i] = values[i];
+            }
+            BSTreeSetTester<Integer> bulk =
+                    new BSTreeSetTester<Integer>(threshold);
+            bulk.bulkLoad(boxed);
+            bulkMs[r] = (System.nanoTime() - start) / 1e6;
+
+            if (r == 0) {
+                start = System.nanoTime();
+                save(added, args[1]);
+                System.out.printf("Saved %d keys to %s in %.1f ms, %d "
+                        + "bytes%n", added.size(), args[1],
+                        (System.nanoTime() - start) / 1e6,
+                        Files.size(Paths.get(args[1])));
+            }
+
+            start = System.nanoTime();
+            loaded = load(args[1]);
+            snapMs[r] = (System.nanoTime() - start) / 1e6;
+        }
+        if (!sameKeys(added, loaded)) {
+            System.out.println("MISMATCH between the snapshot and the data");
+            System.exit(1);
+        }
+        System.out.printf("%-20s %10s %10s%n", "Path", "Best ms", "Mean ms");
+        System.out.printf("%-20s %10.2f %10.2f%n", "text + add",
+                min(addMs), SetBenchmark.mean(addMs));
+        System.out.printf("%-20s %10.2f %10.2f%n", "text + bulkLoad",
+                min(bulkMs), SetBenchmark.mean(bulkMs));
+        System.out.printf("%-20s %10.2f %10.2f%n", "snapshot load",
+                min(snapMs), SetBenchmark.mean(snapMs));
+    }
+
+    /**
+     * Returns the smallest sample.
+     *
+     * @param samples the samples, at least one
+     * @return the minimum
+     */
+    private static double min(double[] samples) {
+        double min = samples[0];
+        for (double x : samples) {
+            min = Math.min(min, x);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * BatchSearchADT specifies a membership search for many keys at once. The
+ * keys are given in sorted order, so an implementation can share the work
+ * of finding neighbouring keys instead of searching for each from scratch.
+ * It is implemented alongside SetTesterADT by the set testers that can
+ * take advantage of that.
+ *
+ * @author CS367
+ */
+public interface BatchSearchADT<K> {
+
+    /**
+     * Sets out[i] to true iff the set contains sortedProbes[i], for every
+     * i, with the same result as calling contains on each probe. The
+     * probes may repeat.
+     *
+     * @param sortedProbes the keys to search for, in ascending order
+     * @param out the results; only the first sortedProbes.length entries
+     * are written
+     * @throws IllegalArgumentException if either array or a probe is null,
+     * out is shorter than sortedProbes, or the probes are not in
+     * ascending order
+     */
+    public void containsBatch(K[] sortedProbes, boolean[] out);
+}
@@ -0,0 +1,265 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             BloomFilterSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Wraps any SetTesterADT with a blocked Bloom filter so that most searches
+ * for keys that are not in the set return without touching the set. A key
+ * the filter has never seen is a definite miss; a key it may have seen is
+ * looked up in the set, so contains is always exact.
+ *
+ * <p>The filter is an array of 512-bit blocks, one 64-byte cache line each.
+ * A key's hash picks one block and sets or tests all of its bits inside
+ * that block, so a lookup costs one cache miss at most. The blocks make
+ * the false positive rate somewhat higher than a classic Bloom filter of
+ * the same size; the sizing below allows for that with a few more bits per
+ * key.</p>
+ *
+ * <p>The filter is sized for the expected number of keys and the target
+ * false positive rate. If the set grows past the expected number, the
+ * filter is doubled and rebuilt from the set's iterator, so the rate holds
+ * at any size for an amortized O(1) per add.</p>
+ *
+ * <p>Keys are hashed from hashCode(), so the wrapped set's notion of
+ * equality (compareTo) must agree with equals, as it does for Integer.</p>
+ */
+public class BloomFilterSetTester<K extends Comparable<K>>
+        implements SetTesterADT<K> {
+
+    /** Longs in one block */
+    private static final int BLOCK_LONGS = 8;
+
+    /** Bits in one block */
+    private static final int BLOCK_BITS = BLOCK_LONGS * 64;
+
+    /**
+     * Odd multiplier that derives each bit position in a block from the
+     * hash. The top 9 bits of every product depend on all 64 bits of the
+     * hash, so they are unrelated to the high bits that chose the block.
+     */
+    private static final long PROBE_MULTIPLIER = 0xD6E8FEB86659FD93L;
+
+    /** Most bits a key sets in its block */
+    private static final int MAX_HASHES = 16;
+
+    /** The wrapped set */
+    private final SetTesterADT<K> set;
+
+    /** Target false positive rate */
+    private final double falsePositiveRate;
+
+    /** Keys the filter is currently sized for */
+    private int capacity;
+
+    /** Number of blocks */
+    private int numBlocks;
+
+    /** Bits set per key */
+    private int numHashes;
+
+    /** The blocks, BLOCK_LONGS longs each */
+    private long[] bits;
+
+    /**
+     * Wraps set with a filter sized for expectedKeys keys. Keys already in
+     * the set are added to the filter.
+     *
+     * @param set the set to wrap; it must not be changed except through
+     * this wrapper
+     * @param expectedKeys the number of keys the set is expected to hold
+     * @param falsePositiveRate the target fraction of misses that still
+     * reach the set, between 0 and 1 exclusive
+     * @throws IllegalArgumentException if set is null or expectedKeys or
+     * falsePositiveRate is out of range
+     */
+    public BloomFilterSetTester(SetTesterADT<K> set, int expectedKeys,
+            double falsePositiveRate) {
+        if (set == null || expectedKeys < 1 || !(falsePositiveRate > 0) ||
+                !(falsePositiveRate < 1)) {
+            throw new IllegalArgumentException();
+        }
+        this.set = set;
+        this.falsePositiveRate = falsePositiveRate;
+        resize(Math.max(expectedKeys, set.size()));
+    }
+
+    /**
+     * Sizes the filter for capacity keys and refills it from the set.
+     *
+     * @param capacity the number of keys to size for
+     */
+    private void resize(int capacity) {
+        this.capacity = capacity;
+        // Bits per key of a classic filter, -ln(p) / ln(2)^2, plus 20% for
+        // the collisions that blocking adds within a block
+        double bitsPerKey = 1.2 * -Math.log(falsePositiveRate) /
+                (Math.log(2) * Math.log(2));
+        long totalBits = (long) Math.ceil(bitsPerKey * capacity);
+        numBlocks = (int) Math.min(Integer.MAX_VALUE / BLOCK_LONGS,
+                Math.max(1, (totalBits + BLOCK_BITS - 1) / BLOCK_BITS));
+        numHashes = (int) Math.max(1, Math.min(MAX_HASHES,
+                Math.round(bitsPerKey / 1.2 * Math.log(2))));
+        bits = new long[numBlocks * BLOCK_LONGS];
+        for (K key : set) {
+            put(key);
+        }
+    }
+
+    /**
+     * Spreads the bits of key's hash code over 64 bits (the MurmurHash3
+     * finalizer), since Integer.hashCode() is the value itself.
+     *
+     * @param key the key
+     * @return the mixed hash
+     */
+    private static long hash(Object key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the index into bits of the first long of the block for hash h.
+     *
+     * @param h the mixed hash
+     * @return the block's first index
+     */
+    private int blockOffset(long h) {
+        // Maps the high 32 bits onto [0, numBlocks) without a division
+        return (int) (((h >>> 32) * numBlocks) >>> 32) * BLOCK_LONGS;
+    }
+
+    /**
+     * Sets key's bits.
+     *
+     * @param key the key
+     */
+    private void put(K key) {
+        long h = hash(key);
+        int block = blockOffset(h);
+        for (int i = 0; i < numHashes; i++) {
+            h *= PROBE_MULTIPLIER;
+            int bit = (int) (h >>> 55);
+            bits[block + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns false if key is definitely not in the set, true if it may be.
+     *
+     * @param key the key
+     * @return false iff the filter rules the key out
+     */
+    public boolean mightContain(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        long h = hash(key);
+        int block = blockOffset(h);
+        for (int i = 0; i < numHashes; i++) {
+            h *= PROBE_MULTIPLIER;
+            int bit = (int) (h >>> 55);
+            if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds key to the set and then to the filter, growing the filter first
+     * if the set has outgrown it.
+     *
+     * @param key the key to add
+     * @throws DuplicateKeyException if the key is a duplicate, in which case
+     * the filter is unchanged
+     */
+    @Override
+    public void add(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        set.add(key);
+        if (set.size() > capacity) {
+            resize((int) Math.min(Integer.MAX_VALUE / 2, 2L * capacity));
+        } else {
+            put(key);
+        }
+    }
+
+    /**
+     * Returns true iff the set contains key, searching the set only if the
+     * filter does not rule the key out.
+     */
+    @Override
+    public boolean contains(K key) {
+        return mightContain(key) && set.contains(key);
+    }
+
+    @Override
+    public List<K> subSet(K minValue, K maxValue) {
+        return set.subSet(minValue, maxValue);
+    }
+
+    /**
+     * Clears the set and the filter. The filter keeps its current size.
+     */
+    @Override
+    public void clear() {
+        set.clear();
+        Arrays.fill(bits, 0L);
+    }
+
+    @Override
+    public int size() {
+        return set.size();
+    }
+
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        set.displayTree(maxDisplayLevels);
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+        return set.iterator();
+    }
+
+    /**
+     * Returns the size of the filter's bit array.
+     *
+     * @return the filter's memory in bytes
+     */
+    public long getFilterBytes() {
+        return (long) bits.length * 8;
+    }
+
+    /**
+     * Returns the number of bits each key sets.
+     *
+     * @return the number of hash functions
+     */
+    public int getNumHashes() {
+        return numHashes;
+    }
+}
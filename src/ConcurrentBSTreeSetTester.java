@@ -0,0 +1,238 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             ConcurrentBSTreeSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Thread-safe BSTreeSetTester for read-mostly use: many threads may call
+ * contains, subSet and the other read methods while other threads add keys.
+ *
+ * <p>Readers never block. The set keeps two BSTreeSetTester instances with
+ * the same keys and uses Left-Right concurrency control (Ramalhete and
+ * Correia) to keep readers and the writer apart: readers use the instance
+ * that the volatile field readIndex names, and a writer changes the other
+ * one, switches readIndex to it, waits until no reader can still be using
+ * the first instance, and then repeats the change there. A reader does
+ * nothing but announce itself in a counter, read readIndex and search that
+ * instance as a single thread would, so it takes the same number of steps
+ * whatever the writers are doing, and it never sees a half-changed tree:
+ * an instance is only changed while no reader can reach it.</p>
+ *
+ * <p>Writers are serialized by a lock and change each instance exactly as a
+ * single thread would, rebalancing included, so every write is done twice
+ * and the set needs twice the memory. A writer waits for the readers on the
+ * instance it is about to change, which take as long as one search; a
+ * reader copying out a large range or iterating holds writers up for that
+ * long. Every read is linearizable: once add(key) has returned, both
+ * instances hold key.</p>
+ */
+public class ConcurrentBSTreeSetTester<K extends Comparable<K>>
+        implements SetTesterADT<K>, RangeSearchADT<K> {
+
+    /** The two instances, only changed while holding writeLock */
+    private final BSTreeSetTester<K>[] instances;
+
+    /** Index of the instance readers use */
+    private volatile int readIndex;
+
+    /** Which of the two counters in readers new readers announce in */
+    private volatile int versionIndex;
+
+    /** Readers in progress that announced in each version */
+    private final AtomicLong[] readers;
+
+    /** Serializes writers */
+    private final Object writeLock;
+
+    /**
+     * Constructs an empty tree with a given rebalanceThreshold.
+     *
+     * @param rbt the rebalance threshold, see BSTreeSetTester
+     */
+    public ConcurrentBSTreeSetTester(int rbt) {
+        this(rbt, BSTreeSetTester.RebalanceMode.FULL_REBUILD);
+    }
+
+    /**
+     * Constructs an empty tree with a given rebalanceThreshold and
+     * rebalance strategy.
+     *
+     * @param rbt the rebalance threshold, see BSTreeSetTester
+     * @param mode how the tree is rebalanced once rbt is exceeded
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentBSTreeSetTester(int rbt,
+            BSTreeSetTester.RebalanceMode mode) {
+        instances = (BSTreeSetTester<K>[]) new BSTreeSetTester[] {
+                new BSTreeSetTester<K>(rbt, mode),
+                new BSTreeSetTester<K>(rbt, mode) };
+        readers = new AtomicLong[] { new AtomicLong(), new AtomicLong() };
+        writeLock = new Object();
+    }
+
+    /**
+     * Runs a read on the instance readers currently use. The reader counts
+     * itself in the current version's counter for the duration, which is
+     * what writers wait on.
+     *
+     * @param read the read to run
+     * @return the result of read
+     */
+    private <R> R read(Function<BSTreeSetTester<K>, R> read) {
+        int version = versionIndex;
+        readers[version].incrementAndGet();
+        try {
+            return read.apply(instances[readIndex]);
+        } finally {
+            readers[version].decrementAndGet();
+        }
+    }
+
+    /**
+     * Applies a change to both instances, one at a time, each while no
+     * reader can use it. If the change throws on the first instance it must
+     * leave that instance unchanged, as add and bulkLoad do on a duplicate;
+     * the second instance is then not touched.
+     *
+     * @param write the change
+     */
+    private void write(Consumer<BSTreeSetTester<K>> write) {
+        synchronized (writeLock) {
+            int current = readIndex;
+            write.accept(instances[1 - current]);
+            readIndex = 1 - current;
+            // Readers that saw the old readIndex announced in either
+            // version; moving new readers to the other counter and
+            // draining both lets the old instance be changed
+            int version = versionIndex;
+            awaitNoReaders(1 - version);
+            versionIndex = 1 - version;
+            awaitNoReaders(version);
+            write.accept(instances[current]);
+        }
+    }
+
+    /**
+     * Waits until no reader is counted in a version.
+     *
+     * @param version the version
+     */
+    private void awaitNoReaders(int version) {
+        int spins = 0;
+        while (readers[version].get() != 0) {
+            // Readers are short, but on few CPUs they need the processor
+            if (++spins < 64) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void add(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        write(tree -> tree.add(key));
+    }
+
+    /**
+     * Adds every key in one bulk load, see BSTreeSetTester.bulkLoad.
+     *
+     * @param keys the keys to add
+     * @throws IllegalArgumentException if keys or any key in it is null
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public void bulkLoad(K[] keys) {
+        write(tree -> tree.bulkLoad(keys));
+    }
+
+    @Override
+    public void clear() {
+        write(tree -> tree.clear());
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        return read(tree -> tree.contains(key));
+    }
+
+    @Override
+    public List<K> subSet(K minValue, K maxValue) {
+        return read(tree -> tree.subSet(minValue, maxValue));
+    }
+
+    /**
+     * Passes each key in the range to action. The keys are collected
+     * first, so action runs after the read is over and may take as long as
+     * it likes without holding up writers.
+     */
+    @Override
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (action == null) throw new IllegalArgumentException();
+        for (K key : subSet(minValue, maxValue)) {
+            action.accept(key);
+        }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        return read(tree -> tree.subSetInto(minValue, maxValue, result));
+    }
+
+    @Override
+    public int size() {
+        return read(tree -> tree.numKeys);
+    }
+
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        read(tree -> {
+            tree.displayTree(maxDisplayLevels);
+            return null;
+        });
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the keys. Adds made after this
+     * call are not seen by the iterator.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<K> iterator() {
+        List<K> snapshot = read(tree -> {
+            List<K> keys = new ArrayList<K>(tree.numKeys);
+            for (K key : tree) {
+                keys.add(key);
+            }
+            return keys;
+        });
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+}
@@ -0,0 +1,265 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             ConcurrentSkipListSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Lock-free skip list set that any number of threads may add to and search
+ * at the same time. Since the set never removes a key, a node is never
+ * unlinked and no deletion marks are needed: a new node is linked into the
+ * bottom level with one compare-and-set, which is the moment the add takes
+ * effect, and then into the levels above it one compare-and-set at a time.
+ * An add that loses a race retries from a fresh search, so some thread always
+ * makes progress and writers working on different parts of the list do not
+ * touch the same memory.
+ *
+ * <p>contains and subSet never write and never wait. subSet and the
+ * iterator are weakly consistent: they see every key added before they
+ * started and may or may not see keys added while they run.</p>
+ *
+ * <p>clear() swaps in an empty list. It is not meant to run concurrently
+ * with add, since an add that started on the old list is lost.</p>
+ */
+public class ConcurrentSkipListSetTester<K extends Comparable<K>>
+        implements SetTesterADT<K>, RangeSearchADT<K> {
+
+    /** Number of levels, enough for 2^32 keys */
+    private static final int MAX_LEVEL = 32;
+
+    /** Volatile and compare-and-set access to the elements of Node.next */
+    private static final VarHandle NEXT =
+            MethodHandles.arrayElementVarHandle(Node[].class);
+
+    /**
+     * A key and its next node on each level it is linked into.
+     */
+    private static final class Node<K> {
+        /** The key, null in the head node */
+        final K key;
+
+        /** next[i] is the next node on level i, only accessed via NEXT */
+        final Node<?>[] next;
+
+        Node(K key, int levels) {
+            this.key = key;
+            next = new Node<?>[levels];
+        }
+
+        @SuppressWarnings("unchecked")
+        Node<K> next(int level) {
+            return (Node<K>) NEXT.getAcquire(next, level);
+        }
+
+        boolean casNext(int level, Node<K> expect, Node<K> update) {
+            return NEXT.compareAndSet(next, level, expect, update);
+        }
+    }
+
+    /** Sentinel linked into every level, before every key */
+    private volatile Node<K> head;
+
+    /** Number of keys, striped so writers do not contend on it */
+    private volatile LongAdder numKeys;
+
+    /**
+     * Constructs an empty set.
+     */
+    public ConcurrentSkipListSetTester() {
+        clear();
+    }
+
+    @Override
+    public void add(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        Node<K> h = head;
+        LongAdder count = numKeys;
+        int levels = randomLevels();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<K>[] preds = (Node<K>[]) new Node[levels];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<K>[] succs = (Node<K>[]) new Node[levels];
+
+        Node<K> node;
+        while (true) {
+            if (findPath(h, key, preds, succs)) {
+                throw new DuplicateKeyException();
+            }
+            node = new Node<K>(key, levels);
+            // Plain writes; the CAS that links node publishes them
+            for (int i = 0; i < levels; i++) {
+                node.next[i] = succs[i];
+            }
+            // Linking into the bottom level is what adds the key
+            if (preds[0].casNext(0, succs[0], node)) {
+                break;
+            }
+        }
+        count.increment();
+
+        // The upper levels only speed up searches, so link them lazily
+        for (int i = 1; i < levels; i++) {
+            while (!preds[i].casNext(i, succs[i], node)) {
+                findPath(h, key, preds, succs);
+                NEXT.setRelease(node.next, i, succs[i]);
+            }
+        }
+    }
+
+    /**
+     * Finds, on each of the bottom preds.length levels, the last node with
+     * a key less than key and the node after it.
+     *
+     * @param h the head of the list
+     * @param key the key to search for
+     * @param preds set to the last node before key on each level
+     * @param succs set to the first node at or after key on each level
+     * @return true if key is in the bottom level
+     */
+    private boolean findPath(Node<K> h, K key, Node<K>[] preds,
+            Node<K>[] succs) {
+        Node<K> pred = h;
+        for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+            Node<K> curr = pred.next(i);
+            while (curr != null && curr.key.compareTo(key) < 0) {
+                pred = curr;
+                curr = pred.next(i);
+            }
+            if (i < preds.length) {
+                preds[i] = pred;
+                succs[i] = curr;
+            }
+        }
+        return succs[0] != null && succs[0].key.compareTo(key) == 0;
+    }
+
+    /**
+     * Returns the first node with a key at or after key, or null.
+     *
+     * @param key the key to search for
+     * @return the node
+     */
+    private Node<K> ceiling(K key) {
+        Node<K> pred = head;
+        Node<K> curr = null;
+        for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+            curr = pred.next(i);
+            while (curr != null && curr.key.compareTo(key) < 0) {
+                pred = curr;
+                curr = pred.next(i);
+            }
+        }
+        return curr;
+    }
+
+    /**
+     * Returns the number of levels for a new node: 1 with probability 1/2,
+     * 2 with probability 1/4, and so on.
+     *
+     * @return the number of levels, from 1 to MAX_LEVEL
+     */
+    private static int randomLevels() {
+        int bits = ThreadLocalRandom.current().nextInt();
+        return Integer.numberOfTrailingZeros(bits | (1 << (MAX_LEVEL - 1)))
+                + 1;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        Node<K> n = ceiling(key);
+        return n != null && n.key.compareTo(key) == 0;
+    }
+
+    @Override
+    public List<K> subSet(K minValue, K maxValue) {
+        return subSetInto(minValue, maxValue, new ArrayList<K>());
+    }
+
+    @Override
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (minValue == null || maxValue == null || action == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        for (Node<K> n = ceiling(minValue);
+                n != null && n.key.compareTo(maxValue) < 0;
+                n = n.next(0)) {
+            action.accept(n.key);
+        }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        result.clear();
+        forEachInRange(minValue, maxValue, result::add);
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        head = new Node<K>(null, MAX_LEVEL);
+        numKeys = new LongAdder();
+    }
+
+    @Override
+    public int size() {
+        return numKeys.intValue();
+    }
+
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the keys in ascending
+     * order.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<K> iterator() {
+        final Node<K> h = head;
+        return new Iterator<K>() {
+            private Node<K> next = h.next(0);
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public K next() {
+                if (next == null) throw new NoSuchElementException();
+                K key = next.key;
+                next = next.next(0);
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,452 @@
+import java.util.SplittableRandom;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             DataGenerator.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Generates data sets of any size straight into int arrays, so the set
+ * testers can be timed on more than the bundled random_N.txt files. The
+ * same distribution, size and seed always give the same data.
+ *
+ * <p>Every data set holds distinct, even, non-negative keys, so any odd
+ * number is a key that is not in the set. The distributions differ in how
+ * the keys are spaced and in the order they are added:</p>
+ *
+ * <ul>
+ * <li>uniform: gaps of 2, 4 or 6, added in random order</li>
+ * <li>sorted: the uniform keys in ascending order</li>
+ * <li>reverse: the uniform keys in descending order</li>
+ * <li>nearly-sorted=k: ascending, then k random pairs swapped (default 1%
+ * of the size)</li>
+ * <li>sawtooth=t: t ascending ramps, each covering the whole key range; key
+ * i goes to ramp i mod t (default 16)</li>
+ * <li>zipfian: gaps drawn from a Zipf distribution, so most keys are dense
+ * and a few gaps are very large, added in random order</li>
+ * <li>clustered=c: c dense clusters of keys spread over the int range, added
+ * one cluster at a time in random order within each (default 64)</li>
+ * </ul>
+ *
+ * <p>SetTesterMain accepts a data set specification, parsed by
+ * {@link #parse}, in place of a file name:</p>
+ *
+ * <pre>gen:&lt;distribution&gt;[=&lt;parameter&gt;]:&lt;size&gt;[:&lt;seed&gt;]
+ * e.g. gen:nearly-sorted=500:10000000:7</pre>
+ */
+public class DataGenerator {
+
+    /** Prefix of a data set specification */
+    public static final String PREFIX = "gen:";
+
+    /** Distribution names, as accepted by generate */
+    public static final String[] DISTRIBUTIONS = { "uniform", "sorted",
+            "reverse", "nearly-sorted", "sawtooth", "zipfian", "clustered" };
+
+    /** Zipf exponent of the gaps of the zipfian distribution */
+    private static final double GAP_EXPONENT = 2.0;
+
+    /** Largest gap, in steps of 2, of the zipfian distribution */
+    private static final int MAX_GAP = 1 << 12;
+
+    /** Seed used when a specification gives none */
+    private static final long DEFAULT_SEED = 367;
+
+    /** Never instantiated */
+    private DataGenerator() {
+    }
+
+    /**
+     * Returns true iff the argument is a data set specification rather
+     * than a file name.
+     *
+     * @param arg the argument
+     * @return true iff it starts with PREFIX
+     */
+    public static boolean isSpec(String arg) {
+        return arg.startsWith(PREFIX);
+    }
+
+    /**
+     * Generates the data set a specification describes.
+     *
+     * @param spec gen:distribution[=parameter]:size[:seed]
+     * @return the keys, in insertion order
+     * @throws IllegalArgumentException if spec is malformed
+     */
+    public static int[] parse(String spec) {
+        String[] parts = spec.split(":");
+        if (!isSpec(spec) || parts.length < 3 || parts.length > 4) {
+            throw new IllegalArgumentException("Expected " + PREFIX +
+                    "<distribution>[=<parameter>]:<size>[:<seed>], got " +
+                    spec);
+        }
+        String distribution = parts[1];
+        int parameter = -1;
+        int eq = distribution.indexOf('=');
+        if (eq >= 0) {
+            parameter = Integer.parseInt(distribution.substring(eq + 1));
+            distribution = distribution.substring(0, eq);
+        }
+        int size = Integer.parseInt(parts[2]);
+        long seed = parts.length == 4 ? Long.parseLong(parts[3]) :
+                DEFAULT_SEED;
+        return generate(distribution, size, parameter, seed);
+    }
+
+    /**
+     * Generates a data set.
+     *
+     * @param distribution one of DISTRIBUTIONS
+     * @param size the number of keys
+     * @param parameter the swaps, ramps or clusters, or -1 for the default;
+     * ignored by the other distributions
+     * @param seed the random seed
+     * @return the keys, in insertion order
+     * @throws IllegalArgumentException if distribution is unknown, size is
+     * negative or the keys would not fit in an int
+     */
+    public static int[] generate(String distribution, int size,
+            int parameter, long seed) {
+        if (size < 0) throw new IllegalArgumentException("Negative size");
+        SplittableRandom rng = new SplittableRandom(seed);
+        int[] keys;
+        switch (distribution) {
+        case "uniform":
+            keys = uniformKeys(size, rng);
+            shuffle(keys, 0, size, rng);
+            return keys;
+        case "sorted":
+            return uniformKeys(size, rng);
+        case "reverse":
+            keys = uniformKeys(size, rng);
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                swap(keys, i, j);
+            }
+            return keys;
+        case "nearly-sorted":
+            keys = uniformKeys(size, rng);
+            int swaps = parameter >= 0 ? parameter : size / 100;
+            for (int s = 0; s < swaps && size > 1; s++) {
+                swap(keys, rng.nextInt(size), rng.nextInt(size));
+            }
+            return keys;
+        case "sawtooth":
+            return sawtooth(uniformKeys(size, rng),
+                    parameter > 0 ? parameter : 16);
+        case "zipfian":
+            keys = zipfianKeys(size, rng);
+            shuffle(keys, 0, size, rng);
+            return keys;
+        case "clustered":
+            return clusteredKeys(size, parameter > 0 ? parameter : 64, rng);
+        default:
+            throw new IllegalArgumentException("Unknown distribution: " +
+                    distribution);
+        }
+    }
+
+    /**
+     * Generates count search keys for a data set. A hitRatio fraction of
+     * them, rounded to the nearest query, are keys of the data set; the
+     * rest are odd numbers next to keys, so they are misses near the keys.
+     * With skew 0 every key is equally likely to be searched for; otherwise
+     * the keys are ranked in a random order and chosen by a Zipf
+     * distribution over the ranks with that exponent, so the same few keys,
+     * spread over the whole key range, are searched for most often.
+     *
+     * @param keys the data set
+     * @param count the number of queries
+     * @param hitRatio the fraction of queries that are hits, 0 to 1
+     * @param skew the Zipf exponent of the key popularity, 0 for uniform
+     * @param seed the random seed
+     * @return the queries, hits and misses mixed in random order
+     * @throws IllegalArgumentException if an argument is out of range, or
+     * keys is empty and count is positive
+     */
+    public static int[] queries(int[] keys, int count, double hitRatio,
+            double skew, long seed) {
+        if (count < 0 || hitRatio < 0 || hitRatio > 1 || skew < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (count == 0) return new int[0];
+        if (keys.length == 0) throw new IllegalArgumentException("No keys");
+        SplittableRandom rng = new SplittableRandom(seed);
+        // Ranks the keys in random order, whatever the insertion order
+        int[] ranked = keys.clone();
+        shuffle(ranked, 0, ranked.length, rng);
+        ZipfSampler zipf = skew > 0 ? new ZipfSampler(ranked.length, skew) :
+                null;
+        int hits = hitCount(count, hitRatio);
+        int[] queries = new int[count];
+        for (int i = 0; i < count; i++) {
+            int rank = zipf != null ? zipf.sample(rng) - 1 :
+                    rng.nextInt(ranked.length);
+            queries[i] = i < hits ? ranked[rank] : ranked[rank] + 1;
+        }
+        shuffle(queries, 0, count, rng);
+        return queries;
+    }
+
+    /**
+     * Returns how many of count queries queries() makes hits.
+     *
+     * @param count the number of queries
+     * @param hitRatio the fraction of queries that are hits
+     * @return the number of hits
+     */
+    public static int hitCount(int count, double hitRatio) {
+        return (int) Math.round(count * hitRatio);
+    }
+
+    /**
+     * Returns ascending even keys with gaps of 2, 4 or 6.
+     *
+     * @param size the number of keys
+     * @param rng the random number generator
+     * @return the keys
+     */
+    private static int[] uniformKeys(int size, SplittableRandom rng) {
+        int[] keys = new int[size];
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key += 2 * (1 + rng.nextInt(3));
+            keys[i] = checkedKey(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns ascending even keys whose gaps, in steps of 2, follow a Zipf
+     * distribution over 1..MAX_GAP.
+     *
+     * @param size the number of keys
+     * @param rng the random number generator
+     * @return the keys
+     */
+    private static int[] zipfianKeys(int size, SplittableRandom rng) {
+        ZipfSampler gaps = new ZipfSampler(MAX_GAP, GAP_EXPONENT);
+        int[] keys = new int[size];
+        long key = 0;
+        for (int i = 0; i < size; i++) {
+            key += 2L * gaps.sample(rng);
+            keys[i] = checkedKey(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns clusters of keys spaced 2 apart, with random gaps between
+     * clusters chosen so that the keys always fit in an int. The clusters
+     * come in random order, and the keys of each are shuffled.
+     *
+     * @param size the number of keys
+     * @param clusters the number of clusters
+     * @param rng the random number generator
+     * @return the keys, in insertion order
+     */
+    private static int[] clusteredKeys(int size, int clusters,
+            SplittableRandom rng) {
+        clusters = Math.max(1, Math.min(clusters, size));
+        long budget = (Integer.MAX_VALUE / 2 - (long) size) / clusters;
+        if (budget < 1) {
+            throw new IllegalArgumentException("Too many keys for an int");
+        }
+        int[] keys = new int[size];
+        // Cluster c holds keys [starts[c], starts[c+1])
+        int[] starts = new int[clusters + 1];
+        long key = 0;
+        for (int c = 0; c < clusters; c++) {
+            starts[c] = (int) ((long) size * c / clusters);
+            key += 2 * (1 + rng.nextLong(budget));
+            int end = (int) ((long) size * (c + 1) / clusters);
+            for (int i = starts[c]; i < end; i++) {
+                key += 2;
+                keys[i] = checkedKey(key);
+            }
+        }
+        starts[clusters] = size;
+
+        int[] order = new int[clusters];
+        for (int c = 0; c < clusters; c++) {
+            order[c] = c;
+        }
+        shuffle(order, 0, clusters, rng);
+        int[] result = new int[size];
+        int n = 0;
+        for (int c : order) {
+            int start = n;
+            for (int i = starts[c]; i < starts[c + 1]; i++) {
+                result[n++] = keys[i];
+            }
+            shuffle(result, start, n, rng);
+        }
+        return result;
+    }
+
+    /**
+     * Reorders ascending keys into the given number of ramps: ramp r holds the
+     * keys at indexes r, r + ramps, r + 2 ramps, ... in ascending order,
+     * and the ramps follow one another.
+     *
+     * @param keys the ascending keys
+     * @param ramps the number of ramps
+     * @return the reordered keys
+     */
+    private static int[] sawtooth(int[] keys, int ramps) {
+        int[] result = new int[keys.length];
+        int n = 0;
+        for (int r = 0; r < ramps; r++) {
+            for (int i = r; i < keys.length; i += ramps) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns key as an int.
+     *
+     * @param key a key
+     * @return the key
+     * @throws IllegalArgumentException if key does not fit in an int
+     */
+    private static int checkedKey(long key) {
+        if (key > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many keys for an int");
+        }
+        return (int) key;
+    }
+
+    /**
+     * Shuffles a[from..to) (Fisher-Yates).
+     *
+     * @param a the array
+     * @param from the first index shuffled
+     * @param to one past the last index shuffled
+     * @param rng the random number generator
+     */
+    private static void shuffle(int[] a, int from, int to,
+            SplittableRandom rng) {
+        for (int i = to - 1; i > from; i--) {
+            swap(a, i, from + rng.nextInt(i - from + 1));
+        }
+    }
+
+    /**
+     * Swaps a[i] and a[j].
+     *
+     * @param a the array
+     * @param i an index
+     * @param j an index
+     */
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+
+    /**
+     * Samples 1..n with probability proportional to k^-exponent, in O(1)
+     * expected time and without tables, by rejection-inversion (Hormann
+     * and Derflinger, "Rejection-inversion to generate variates from
+     * monotone discrete distributions", 1996).
+     */
+    static final class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        /**
+         * Creates a sampler.
+         *
+         * @param n the largest value sampled
+         * @param exponent the Zipf exponent, positive
+         * @throws IllegalArgumentException if n or exponent is not positive
+         */
+        ZipfSampler(int n, double exponent) {
+            if (n < 1 || !(exponent > 0)) throw new IllegalArgumentException();
+            this.n = n;
+            this.exponent = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        /**
+         * Returns the next sample.
+         *
+         * @param rng the random number generator
+         * @return a value from 1 to n
+         */
+        int sample(SplittableRandom rng) {
+            while (true) {
+                double u = hIntegralN +
+                        rng.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > n) {
+                    k = n;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        /** The integral of h, (x^(1-exponent) - 1) / (1 - exponent) */
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+
+        /** The unnormalized probability x^-exponent */
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        /** The inverse of hIntegral */
+        private double hIntegralInverse(double x) {
+            double t = x * (1 - exponent);
+            if (t < -1) {
+                t = -1;
+            }
+            return Math.exp(helper1(t) * x);
+        }
+
+        /** log(1 + x) / x, accurate near 0 */
+        private static double helper1(double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.log1p(x) / x;
+            }
+            return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        /** (exp(x) - 1) / x, accurate near 0 */
+        private static double helper2(double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.expm1(x) / x;
+            }
+            return 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
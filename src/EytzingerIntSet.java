@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             EytzingerIntSet.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Read-only set of primitive ints, built once from an array of keys, that
+ * stores its search tree in a single int array in Eytzinger (breadth-first)
+ * order: the root is at index 1 and the children of index k are at 2k and
+ * 2k+1. The tree is complete, so no child links are stored and the top
+ * levels, which every search touches, share a few cache lines at the front
+ * of the array instead of being spread over the heap as BSTNodes are.
+ *
+ * <p>contains(int) descends without a data-dependent branch: each step
+ * computes the next index as 2k or 2k+1 from the sign of the comparison, and
+ * the one equality test is made after the loop. The loop therefore runs the
+ * same number of times for every key and never mispredicts. Because the
+ * next index is a simple function of the current one, the indexes a search
+ * will visit four levels down, 16k to 16k+15, are contiguous, which is the
+ * layout a software prefetch would target; Java offers no prefetch
+ * instruction, so here it only helps the hardware prefetcher.</p>
+ *
+ * <p>subSet, forEachInRange and the iterator use a separate copy of the
+ * keys in ascending order, found by binary search.</p>
+ *
+ * <p>add and clear throw UnsupportedOperationException.</p>
+ */
+public class EytzingerIntSet implements SetTesterADT<Integer>,
+        RangeSearchADT<Integer> {
+
+    /** The keys in Eytzinger order, from index 1; index 0 is unused */
+    private final int[] tree;
+
+    /** The keys in ascending order */
+    private final int[] sorted;
+
+    /** Most keys a set can hold, so that 2k+1 never overflows */
+    static final int MAX_SIZE = (1 << 30) - 1;
+
+    /**
+     * Builds the set from keys, which need not be sorted.
+     *
+     * @param keys the keys, not modified
+     * @throws IllegalArgumentException if keys is null or longer than
+     * MAX_SIZE
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public EytzingerIntSet(int[] keys) {
+        if (keys == null || keys.length > MAX_SIZE) {
+            throw new IllegalArgumentException();
+        }
+        sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1] == sorted[i]) throw new DuplicateKeyException();
+        }
+        tree = new int[sorted.length + 1];
+        fill(1, 0);
+    }
+
+    /**
+     * Copies the sorted keys into the subtree at index k in order, starting
+     * with sorted[next]. The recursion is only as deep as the tree.
+     *
+     * @param k the subtree root
+     * @param next the index of the next sorted key to place
+     * @return the index of the next sorted key after this subtree
+     */
+    private int fill(int k, int next) {
+        if (k >= tree.length) return next;
+        next = fill(2 * k, next);
+        tree[k] = sorted[next++];
+        return fill(2 * k + 1, next);
+    }
+
+    /**
+     * Returns true iff the set contains key.
+     *
+     * @param key the key to search
+     * @return true iff key is in the set
+     */
+    public boolean contains(int key) {
+        int[] t = tree;
+        int n = t.length;
+        int k = 1;
+        while (k < n) {
+            // 2k if t[k] >= key, 2k+1 if t[k] < key; the sign of a long
+            // difference cannot overflow
+            k = 2 * k + (int) (((long) t[k] - key) >>> 63);
+        }
+        // Undo the right turns taken after the last left turn; k is then
+        // the smallest key >= key, or 0 if there is none
+        k >>>= Integer.numberOfTrailingZeros(~k) + 1;
+        return k != 0 && t[k] == key;
+    }
+
+    /**
+     * Returns the keys in [minValue, maxValue) in ascending order.
+     *
+     * @param minValue the minimum value of the range (inclusive)
+     * @param maxValue the maximum value of the range (exclusive)
+     * @return the keys in the range
+     * @throws IllegalArgumentException if minValue is larger than maxValue
+     */
+    public int[] rangeSearch(int minValue, int maxValue) {
+        if (minValue > maxValue) throw new IllegalArgumentException();
+        return Arrays.copyOfRange(sorted, lowerBound(minValue),
+                lowerBound(maxValue));
+    }
+
+    /**
+     * Passes each key in [minValue, maxValue), in ascending order, to
+     * action.
+     *
+     * @param minValue the minimum value of the range (inclusive)
+     * @param maxValue the maximum value of the range (exclusive)
+     * @param action called with each key in the range
+     * @throws IllegalArgumentException if action is null or minValue is
+     * larger than maxValue
+     */
+    public void forEachInRange(int minValue, int maxValue,
+            IntConsumer action) {
+        if (action == null || minValue > maxValue) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = lowerBound(minValue); i < sorted.length &&
+                sorted[i] < maxValue; i++) {
+            action.accept(sorted[i]);
+        }
+    }
+
+    /**
+     * Returns the index in sorted of the first key &gt;= key.
+     *
+     * @param key the key
+     * @return the index, sorted.length if every key is smaller
+     */
+    private int lowerBound(int key) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns a copy of the keys in ascending order.
+     *
+     * @return the sorted keys
+     */
+    public int[] toSortedArray() {
+        return sorted.clone();
+    }
+
+    /* SetTesterADT methods, which box */
+
+    /**
+     * Not supported, the set is read-only.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void add(Integer key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        return contains(key.intValue());
+    }
+
+    @Override
+    public List<Integer> subSet(Integer minValue, Integer maxValue) {
+        return subSetInto(minValue, maxValue, new ArrayList<Integer>());
+    }
+
+    @Override
+    public void forEachInRange(Integer minValue, Integer maxValue,
+            Consumer<? super Integer> action) {
+        if (minValue == null || maxValue == null || action == null) {
+            throw new IllegalArgumentException();
+        }
+        forEachInRange(minValue.intValue(), maxValue.intValue(),
+                (int key) -> action.accept(key));
+    }
+
+    @Override
+    public List<Integer> subSetInto(Integer minValue, Integer maxValue,
+            List<Integer> result) {
+        if (minValue == null || maxValue == null || result == null) {
+            throw new IllegalArgumentException();
+        }
+        result.clear();
+        forEachInRange(minValue.intValue(), maxValue.intValue(),
+                (int key) -> result.add(key));
+        return result;
+    }
+
+    /**
+     * Not supported, the set is read-only.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size() {
+        return sorted.length;
+    }
+
+    /**
+     * Displays the top levels of the tree in pre-order, in the same format
+     * as the other trees but without heights or balance factors, which the
+     * layout does not store.
+     */
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        System.out.println("-------------------------" +
+                "EytzingerIntSet Display--------------------------");
+        displayTreeHelper(1, 0, maxDisplayLevels);
+    }
+
+    private void displayTreeHelper(int k, int curDepth, int maxDisplayLevels) {
+        if (maxDisplayLevels <= curDepth) return;
+        if (k >= tree.length)
+            return;
+        for (int i = 0; i < curDepth; i++) {
+            System.out.print("|--");
+        }
+        System.out.println(tree[k]);
+        displayTreeHelper(2 * k, curDepth + 1, maxDisplayLevels);
+        displayTreeHelper(2 * k + 1, curDepth + 1, maxDisplayLevels);
+    }
+
+    /**
+     * Returns an iterator over the keys in ascending order.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return next < sorted.length;
+            }
+
+            public Integer next() {
+                if (next >= sorted.length) throw new NoSuchElementException();
+                return sorted[next++];
+            }
+        };
+    }
+}
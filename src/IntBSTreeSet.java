@@ -0,0 +1,507 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             IntBSTreeSet.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Binary Search Tree (BST) of primitive ints whose nodes live in parallel
+ * int arrays instead of BSTNode objects. A node is an index into keys,
+ * left, right, height and balance; index 0 is the empty tree, so a missing
+ * child is 0 and height[0] is 0.
+ *
+ * <p>Rebalancing follows the same rules as BSTreeSetTester: a non-positive
+ * rebalanceThreshold never rebalances, and a positive one rebuilds the whole
+ * tree once the absolute value of a balance factor on an insert path
+ * exceeds it. Heights and balance factors are updated on the insert path
+ * exactly as BSTreeSetTester does, so the two trees have the same shape and
+ * differ only in memory layout and boxing.</p>
+ *
+ * <p>The primitive methods add(int), contains(int) and rangeSearch(int, int)
+ * never box. The SetTesterADT methods are provided so the tree can be used
+ * wherever an Integer set is expected.</p>
+ */
+public class IntBSTreeSet implements SetTesterADT<Integer> {
+
+    /** Index of the empty tree, used for missing children */
+    private static final int NIL = 0;
+
+    /**
+     * Traversal stack kept by each thread between traversals, or null while
+     * one of its traversals holds it
+     */
+    private static final ThreadLocal<int[]> STACKS = new ThreadLocal<int[]>();
+
+    /** Key of each node */
+    private int[] keys;
+
+    /** Index of the left child of each node, NIL if none */
+    private int[] left;
+
+    /** Index of the right child of each node, NIL if none */
+    private int[] right;
+
+    /** Height of each node, a leaf has height 1 and NIL has height 0 */
+    private int[] height;
+
+    /** Balance factor (left height minus right height) of each node */
+    private int[] balance;
+
+    /** Index of the root node, NIL if the tree is empty */
+    private int root;
+
+    /** Number of keys in the tree, nodes use indices 1 to numKeys */
+    private int numKeys;
+
+    /** Rebalance threshold, see BSTreeSetTester */
+    private int rebalanceThreshold;
+
+    /** True iff no balance factor has exceeded the threshold */
+    private boolean isBalanced;
+
+    /** Ancestors of the node being added, reused between adds */
+    private int[] path;
+
+    /**
+     * Constructs an empty IntBSTreeSet with a given rebalanceThreshold.
+     *
+     * @param rbt the rebalance threshold
+     */
+    public IntBSTreeSet(int rbt) {
+        rebalanceThreshold = rbt;
+        keys = new int[16];
+        left = new int[16];
+        right = new int[16];
+        height = new int[16];
+        balance = new int[16];
+        path = new int[16];
+        root = NIL;
+        numKeys = 0;
+        isBalanced = true;
+    }
+
+    /**
+     * Adds the key to the tree, updating the height and balance factor of
+     * each node on the insert path and rebalancing as needed.
+     *
+     * @param key the key to add
+     * @throws DuplicateKeyException if the key is a duplicate
+     */
+    public void add(int key) {
+        // Walks down to the empty spot for key, remembering the ancestors
+        int n = root;
+        int depth = 0;
+        while (n != NIL) {
+            if (key == keys[n]) {
+                throw new DuplicateKeyException();
+            }
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = n;
+            n = key < keys[n] ? left[n] : right[n];
+        }
+
+        int node = newNode(key);
+        if (depth == 0) {
+            root = node;
+        } else if (key < keys[path[depth - 1]]) {
+            left[path[depth - 1]] = node;
+        } else {
+            right[path[depth - 1]] = node;
+        }
+
+        // Each ancestor grows by one toward the side the key went
+        for (int i = 0; i < depth; i++) {
+            int p = path[i];
+            int child = i + 1 < depth ? path[i + 1] : node;
+            balance[p] += left[p] == child ? 1 : -1;
+            height[p]++;
+            if (Math.abs(balance[p]) > rebalanceThreshold) {
+                isBalanced = false;
+            }
+        }
+        if (!isBalanced && rebalanceThreshold > 0) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Returns true iff the key is in the tree.
+     *
+     * @param key the key to search
+     * @return true iff the tree contains the key
+     */
+    public boolean contains(int key) {
+        int n = root;
+        while (n != NIL) {
+            int k = keys[n];
+            if (key == k) {
+                return true;
+            }
+            n = key < k ? left[n] : right[n];
+        }
+        return false;
+    }
+
+    /**
+     * Returns the sorted keys in the range [minValue, maxValue). Only the
+     * subtrees that can hold keys in the range are visited.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @return the sorted keys in the specified range
+     * @throws IllegalArgumentException if minValue is larger than maxValue
+     */
+    public int[] rangeSearch(int minValue, int maxValue) {
+        if (minValue > maxValue) throw new IllegalArgumentException();
+        int[] result = new int[8];
+        int count = 0;
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            // Descends left only while the left subtree can hold keys >= min
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = keys[n] > minValue ? left[n] : NIL;
+            }
+            n = stack[--top];
+            int k = keys[n];
+            if (k >= maxValue) {
+                break;
+            }
+            if (k >= minValue) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = k;
+            }
+            n = right[n];
+        }
+        STACKS.set(stack);
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Passes each key in the range [minValue, maxValue) to action in sorted
+     * order without boxing or allocating.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param action the action to perform on each key in the range
+     * @throws IllegalArgumentException if minValue is larger than maxValue
+     * or action is null
+     */
+    public void forEachInRange(int minValue, int maxValue,
+            IntConsumer action) {
+        if (minValue > maxValue || action == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = keys[n] > minValue ? left[n] : NIL;
+            }
+            n = stack[--top];
+            int k = keys[n];
+            if (k >= maxValue) {
+                break;
+            }
+            if (k >= minValue) {
+                action.accept(k);
+            }
+            n = right[n];
+        }
+        STACKS.set(stack);
+    }
+
+    /**
+     * Adds every key in the array by building the tree in one pass, like
+     * BSTreeSetTester.bulkLoad. Ascending input builds in O(n); otherwise a
+     * copy is sorted first. Keys already in the tree are merged in. If a
+     * duplicate is found the tree is left unchanged.
+     *
+     * @param newKeys the keys to add, not modified
+     * @throws IllegalArgumentException if newKeys is null
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public void bulkLoad(int[] newKeys) {
+        if (newKeys == null) throw new IllegalArgumentException();
+        int[] sorted = newKeys.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1] >= sorted[i]) {
+                Arrays.sort(sorted);
+                break;
+            }
+        }
+        int[] existing = toSortedArray();
+        int[] merged = new int[existing.length + sorted.length];
+        int i = 0;
+        int j = 0;
+        int m = 0;
+        while (j < sorted.length) {
+            if ((j > 0 && sorted[j - 1] == sorted[j]) ||
+                    (i < existing.length && existing[i] == sorted[j])) {
+                throw new DuplicateKeyException();
+            }
+            merged[m++] = i < existing.length && existing[i] < sorted[j] ?
+                    existing[i++] : sorted[j++];
+        }
+        while (i < existing.length) {
+            merged[m++] = existing[i++];
+        }
+        numKeys = 0;
+        root = build(merged, 0, merged.length - 1);
+        isBalanced = true;
+    }
+
+    /**
+     * Rebuilds the tree into a perfectly balanced tree. The keys are
+     * copied out in sorted order and the nodes are reassigned so that each
+     * subtree occupies a contiguous run of indices.
+     */
+    public void rebalance() {
+        int[] sorted = toSortedArray();
+        numKeys = 0;
+        root = build(sorted, 0, sorted.length - 1);
+        isBalanced = true;
+    }
+
+    /**
+     * Builds a balanced subtree from sorted[start..stop], allocating its
+     * root before its children.
+     *
+     * @param sorted the sorted keys
+     * @param start the first index of the part of the array used
+     * @param stop the last index of the part of the array used
+     * @return the index of the subtree root, NIL if the range is empty
+     */
+    private int build(int[] sorted, int start, int stop) {
+        if (start > stop) return NIL;
+        int mid = (start + stop) >>> 1;
+        int node = newNode(sorted[mid]);
+        int l = build(sorted, start, mid - 1);
+        int r = build(sorted, mid + 1, stop);
+        left[node] = l;
+        right[node] = r;
+        height[node] = 1 + Math.max(height[l], height[r]);
+        balance[node] = height[l] - height[r];
+        return node;
+    }
+
+    /**
+     * Allocates the next node index for a new leaf, growing the arrays if
+     * needed.
+     *
+     * @param key the key of the leaf
+     * @return the index of the new node
+     */
+    private int newNode(int key) {
+        int node = ++numKeys;
+        if (node == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            height = Arrays.copyOf(height, capacity);
+            balance = Arrays.copyOf(balance, capacity);
+        }
+        keys[node] = key;
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+        balance[node] = 0;
+        return node;
+    }
+
+    /**
+     * Copies the keys into a new array in sorted order.
+     *
+     * @return the sorted keys
+     */
+    public int[] toSortedArray() {
+        int[] sorted = new int[numKeys];
+        int i = 0;
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = left[n];
+            }
+            n = stack[--top];
+            sorted[i++] = keys[n];
+            n = right[n];
+        }
+        STACKS.set(stack);
+        return sorted;
+    }
+
+    /**
+     * Takes the calling thread's traversal stack for one call of
+     * rangeSearch, forEachInRange or toSortedArray, which gives it back to
+     * STACKS when done, so a thread's searches allocate no stack once it
+     * has grown to the deepest path. No two calls hold the same stack:
+     * threads may traverse the tree at the same time as long as none of
+     * them adds, and a forEachInRange action that searches again, finding
+     * the stack taken, gets a new one.
+     *
+     * @return the stack
+     */
+    private static int[] takeStack() {
+        int[] s = STACKS.get();
+        if (s == null) return new int[16];
+        STACKS.set(null);
+        return s;
+    }
+
+    /**
+     * Stores n at position top of a traversal stack, growing it if needed.
+     *
+     * @param s the stack, from takeStack
+     * @param top the stack position
+     * @param n the node index
+     * @return s, or its grown copy
+     */
+    private static int[] push(int[] s, int top, int n) {
+        if (top == s.length) {
+            s = Arrays.copyOf(s, top * 2);
+        }
+        s[top] = n;
+        return s;
+    }
+
+    @Override
+    public void add(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        add(key.intValue());
+    }
+
+    @Override
+    public boolean contains(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        return contains(key.intValue());
+    }
+
+    @Override
+    public List<Integer> subSet(Integer minValue, Integer maxValue) {
+        if (minValue == null || maxValue == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] range = rangeSearch(minValue, maxValue);
+        List<Integer> result = new ArrayList<Integer>(range.length);
+        for (int k : range) {
+            result.add(k);
+        }
+        return result;
+    }
+
+    /**
+     * Clears the tree. The node arrays are kept for reuse.
+     */
+    @Override
+    public void clear() {
+        root = NIL;
+        numKeys = 0;
+        isBalanced = true;
+    }
+
+    @Override
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * Displays the top maxDisplayLevels of the tree in the same format as
+     * BSTreeSetTester.
+     *
+     * @param maxDisplayLevels from the top of the BST that will be displayed
+     */
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        if (rebalanceThreshold > 0) {
+            System.out.println("---------------------------" +
+                    "IntBSTreeBSet Display----------------------------");
+        } else {
+            System.out.println("---------------------------" +
+                    "IntBSTreeSet Display-----------------------------");
+        }
+        displayTreeHelper(root, 0, maxDisplayLevels);
+    }
+
+    private void displayTreeHelper(int n, int curDepth, int maxDisplayLevels) {
+        if (maxDisplayLevels <= curDepth) return;
+        if (n == NIL)
+            return;
+        for (int i = 0; i < curDepth; i++) {
+            System.out.print("|--");
+        }
+        System.out.println(keys[n] + "[" + height[n] + "]{" +
+                balance[n] + "}");
+        displayTreeHelper(left[n], curDepth + 1, maxDisplayLevels);
+        displayTreeHelper(right[n], curDepth + 1, maxDisplayLevels);
+    }
+
+    /**
+     * Returns an in-order iterator over the keys. Like BSTIterator it only
+     * holds the nodes on one root-to-leaf path.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int[] stack = new int[16];
+            private int top = 0;
+            private int pending = root;
+
+            public boolean hasNext() {
+                return pending != NIL || top > 0;
+            }
+
+            public Integer next() {
+                while (pending != NIL) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = pending;
+                    pending = left[pending];
+                }
+                if (top == 0) throw new NoSuchElementException();
+                int n = stack[--top];
+                pending = right[n];
+                return keys[n];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
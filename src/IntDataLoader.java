@@ -0,0 +1,326 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Scanner;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             IntDataLoader.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Loads data files of integers into an int[] without Scanner.
+ *
+ * <p>Text files hold whitespace-separated decimal integers, as the bundled
+ * random_N.txt files do. They are memory-mapped in chunks of CHUNK_SIZE
+ * bytes and parsed byte by byte straight into the array, with no regular
+ * expressions, Strings or boxing. As with the Scanner.hasNextInt() loop this
+ * replaces, reading stops at the first token that is not an int.</p>
+ *
+ * <p>Binary files hold a 16-byte header (the magic bytes "ISET", the format
+ * version, the number of values and a reserved 0, each a little-endian
+ * int32) followed by the values as little-endian int32s. They load with a
+ * single bulk copy from the mapped file and no parsing. Binary files are
+ * recognized by their magic, which no text file can start with.</p>
+ *
+ * <pre>java IntDataLoader random_40000.txt random_40000.bin</pre>
+ *
+ * loads a file both ways, checks the results agree and reports the times;
+ * if a second file is named, the data is also written to it in the binary
+ * format.
+ */
+public class IntDataLoader {
+
+    /** The first four bytes of a binary file, "ISET" read little-endian */
+    static final int MAGIC = 0x54455349;
+
+    /** The binary format version this class writes */
+    static final int VERSION = 1;
+
+    /** Size of the binary header in bytes */
+    static final int HEADER_SIZE = 16;
+
+    /** Bytes of a text file mapped at a time */
+    private static final int CHUNK_SIZE = 1 << 26;
+
+    /** Never instantiated */
+    private IntDataLoader() {
+    }
+
+    /**
+     * Loads a data file in either format.
+     *
+     * @param file the file name
+     * @return the values, in file order
+     * @throws FileNotFoundException if the file does not exist
+     * @throws IOException if the file cannot be read or a binary file is
+     * malformed
+     */
+    public static int[] load(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (!Files.isRegularFile(path)) {
+            throw new FileNotFoundException(file);
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isBinary(ch)) {
+                return readBinary(ch);
+            }
+            return readText(ch);
+        }
+    }
+
+    /**
+     * Loads a text data file with Scanner.nextInt(), the way SetTesterMain
+     * used to. Slow, but kept as the reference the fast loader is checked
+     * against.
+     *
+     * @param file the file name
+     * @return the values, in file order
+     * @throws FileNotFoundException if the file does not exist
+     */
+    public static int[] loadWithScanner(String file)
+            throws FileNotFoundException {
+        int[] values = new int[16];
+        int count = 0;
+        Scanner fileScnr = new Scanner(new File(file));
+        while (fileScnr.hasNextInt()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = fileScnr.nextInt();
+        }
+        fileScnr.close();
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Writes values to a file in the binary format, replacing the file if it
+     * exists.
+     *
+     * @param file the file name
+     * @param values the values to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeBinary(String file, int[] values)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(values.length).putInt(0);
+            for (int v : values) {
+                if (!buf.hasRemaining()) {
+                    writeFully(ch, buf);
+                }
+                buf.putInt(v);
+            }
+            writeFully(ch, buf);
+        }
+    }
+
+    /**
+     * Writes everything in buf to ch and clears buf.
+     *
+     * @param ch the channel
+     * @param buf the bytes to write, flipped by this method
+     * @throws IOException if the write fails
+     */
+    private static void writeFully(FileChannel ch, ByteBuffer buf)
+            throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Returns true iff the file starts with MAGIC.
+     *
+     * @param ch the file
+     * @return true iff the file is in the binary format
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean isBinary(FileChannel ch) throws IOException {
+        if (ch.size() < 4) return false;
+        ByteBuffer magic = ByteBuffer.allocate(4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        while (magic.hasRemaining()) {
+            if (ch.read(magic, magic.position()) < 0) return false;
+        }
+        return magic.getInt(0) == MAGIC;
+    }
+
+    /**
+     * Reads a binary file.
+     *
+     * @param ch the file, starting with MAGIC
+     * @return the values
+     * @throws IOException if the header or the file length is wrong
+     */
+    private static int[] readBinary(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < HEADER_SIZE) {
+            throw new IOException("Truncated header");
+        }
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        int version = map.getInt(4);
+        int count = map.getInt(8);
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        if (count < 0 || size != HEADER_SIZE + 4L * count) {
+            throw new IOException("File holds " + (size - HEADER_SIZE) +
+                    " bytes of data, header says " + count + " values");
+        }
+        map.position(HEADER_SIZE);
+        IntBuffer ints = map.asIntBuffer();
+        int[] values = new int[count];
+        ints.get(values);
+        return values;
+    }
+
+    /**
+     * Parses a text file, mapping CHUNK_SIZE bytes at a time. The parser
+     * keeps its state between chunks, so a number may span two of them.
+     *
+     * @param ch the file
+     * @return the values, up to the first token that is not an int
+     * @throws IOException if the file cannot be read
+     */
+    private static int[] readText(FileChannel ch) throws IOException {
+        long size = ch.size();
+        // Guess one value per 8 bytes; the array grows if that is too few
+        int[] values = new int[(int) Math.min(size / 8 + 16, 1 << 24)];
+        int count = 0;
+
+        boolean inToken = false;
+        boolean negative = false;
+        boolean hasDigits = false;
+        long value = 0;
+
+        for (long pos = 0; pos < size; pos += CHUNK_SIZE) {
+            int len = (int) Math.min(CHUNK_SIZE, size - pos);
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, pos,
+                    len);
+            for (int i = 0; i < len; i++) {
+                int b = map.get(i);
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    hasDigits = true;
+                    inToken = true;
+                    // One past Integer.MIN_VALUE's magnitude is never valid
+                    if (value > 1L << 31) {
+                        return Arrays.copyOf(values, count);
+                    }
+                } else if (isWhitespace(b)) {
+                    if (inToken) {
+                        if (!hasDigits ||
+                                (!negative && value > Integer.MAX_VALUE)) {
+                            return Arrays.copyOf(values, count);
+                        }
+                        if (count == values.length) {
+                            values = Arrays.copyOf(values,
+                                    count + (count >> 1) + 16);
+                        }
+                        values[count++] = (int) (negative ? -value : value);
+                        inToken = false;
+                        negative = false;
+                        hasDigits = false;
+                        value = 0;
+                    }
+                } else if ((b == '-' || b == '+') && !inToken) {
+                    negative = b == '-';
+                    inToken = true;
+                } else {
+                    // Not an int token; Scanner.hasNextInt() stops here too
+                    return Arrays.copyOf(values, count);
+                }
+            }
+        }
+        // The last number need not be followed by whitespace
+        if (inToken && hasDigits && (negative || value <= Integer.MAX_VALUE)) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count + 1);
+            }
+            values[count++] = (int) (negative ? -value : value);
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Returns true iff b is an ASCII whitespace byte.
+     *
+     * @param b the byte
+     * @return true iff b separates tokens
+     */
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f'
+                || b == 0x0B;
+    }
+
+    /**
+     * Loads a text file with both loaders, checks they agree and prints the
+     * load times; optionally converts the file to the binary format.
+     *
+     * @param args a data file, then optionally a binary file to write
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Bad invocation! Correct usage: "
+                    + "java IntDataLoader <data file> [<binary file>]");
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        int[] scanned = loadWithScanner(args[0]);
+        long scannerNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        int[] loaded = load(args[0]);
+        long loadNanos = System.nanoTime() - start;
+        System.out.printf("%d values: Scanner %.1f ms, mapped %.1f ms%n",
+                loaded.length, scannerNanos / 1e6, loadNanos / 1e6);
+        if (!Arrays.equals(scanned, loaded)) {
+            System.out.println("MISMATCH between Scanner and mapped loader");
+            System.exit(1);
+        }
+        if (args.length == 2) {
+            writeBinary(args[1], loaded);
+            start = System.nanoTime();
+            int[] binary = load(args[1]);
+            long binaryNanos = System.nanoTime() - start;
+            if (!Arrays.equals(loaded, binary)) {
+                System.out.println("MISMATCH after binary round trip");
+                System.exit(1);
+            }
+            System.out.printf("Wrote %s, loads in %.1f ms%n", args[1],
+                    binaryNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.Arrays;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             LatencyHistogram.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Histogram of non-negative latencies (nanoseconds) with log-linear
+ * buckets, in the style of HdrHistogram. Values below 128 get a bucket each;
+ * above that every power-of-two range is split into 64 equal buckets, so a
+ * recorded value is known to within 1/64 (about 1.6%) of itself. The
+ * histogram is a single long[] of counts, so recording never allocates or
+ * boxes and the memory used does not grow with the number of samples.
+ *
+ * <p>Min, max, mean and standard deviation are tracked exactly; percentiles
+ * are reported as the largest value that falls in the same bucket as the
+ * requested percentile, as HdrHistogram does.</p>
+ */
+public class LatencyHistogram {
+
+    /** Values below this get a bucket each */
+    private static final int LINEAR_LIMIT = 128;
+
+    /** Number of buckets each power-of-two range above LINEAR_LIMIT has */
+    private static final int SUB_BUCKETS = 64;
+
+    /** log2 of SUB_BUCKETS */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /** log2 of LINEAR_LIMIT */
+    private static final int LINEAR_BITS = 7;
+
+    /** Enough buckets for every non-negative long */
+    private static final int NUM_BUCKETS =
+            LINEAR_LIMIT + (63 - LINEAR_BITS) * SUB_BUCKETS;
+
+    /** Number of samples in each bucket */
+    private final long[] counts;
+
+    /** Number of samples recorded */
+    private long totalCount;
+
+    /** Smallest sample recorded, Long.MAX_VALUE if none */
+    private long min;
+
+    /** Largest sample recorded, 0 if none */
+    private long max;
+
+    /** Sum of the samples, for the mean */
+    private double sum;
+
+    /** Sum of the squared samples, for the standard deviation */
+    private double sumOfSquares;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new long[NUM_BUCKETS];
+        reset();
+    }
+
+    /**
+     * Records one sample.
+     *
+     * @param value the sample in nanoseconds
+     * @throws IllegalArgumentException if value is negative
+     */
+    public void record(long value) {
+        if (value < 0) throw new IllegalArgumentException();
+        counts[bucketOf(value)]++;
+        totalCount++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+        sum += value;
+        sumOfSquares += (double) value * value;
+    }
+
+    /**
+     * Adds every sample recorded in other to this histogram.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    /**
+     * Removes every sample.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+
+    /**
+     * Returns the number of samples recorded.
+     *
+     * @return the sample count
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the smallest sample, or 0 if there are none.
+     *
+     * @return the minimum in nanoseconds
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * Returns the largest sample, or 0 if there are none.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean of the samples, or NaN if there are none.
+     *
+     * @return the mean in nanoseconds
+     */
+    public double getMean() {
+        return sum / totalCount;
+    }
+
+    /**
+     * Returns the population standard deviation of the samples, or NaN if
+     * there are none.
+     *
+     * @return the standard deviation in nanoseconds
+     */
+    public double getStdDeviation() {
+        double mean = getMean();
+        double variance = sumOfSquares / totalCount - mean * mean;
+        return Math.sqrt(Math.max(variance, 0));
+    }
+
+    /**
+     * Returns the value at or below which the given percentage of samples
+     * fall, as the largest value in that sample's bucket (but never more
+     * than the maximum). Returns 0 if there are no samples.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the value in nanoseconds
+     * @throws IllegalArgumentException if percentile is out of range
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException();
+        }
+        if (totalCount == 0) return 0;
+        // Rank of the sample we want, counting from 1
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value a non-negative value
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        // The top SUB_BUCKET_BITS + 1 bits of value pick the bucket
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_LIMIT + (magnitude - LINEAR_BITS) * SUB_BUCKETS
+                + subBucket;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the largest value in the bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,666 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             OffHeapIntBSTreeSet.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Binary Search Tree (BST) of primitive ints whose nodes live outside the
+ * Java heap, in direct ByteBuffers. It is IntBSTreeSet with the parallel
+ * arrays replaced by fixed-size node records: the same insert path,
+ * rebalancing rules and tree shapes, but the garbage collector sees only a
+ * handful of buffer objects however many keys the tree holds.
+ *
+ * <p>Each record is NODE_BYTES bytes: the key, the left and right child
+ * indexes, the height and the balance factor, each a native-order int. A
+ * node index selects a chunk of 2^chunkShift records and a record within
+ * it, so the tree grows one chunk at a time without copying, and index 0 is
+ * the empty tree as in IntBSTreeSet.</p>
+ *
+ * <p>clear() frees the chunks at once rather than waiting for the buffers
+ * to be collected. The buffers must not be used after that, so the tree
+ * hands out no views of them.</p>
+ */
+public class OffHeapIntBSTreeSet implements SetTesterADT<Integer> {
+
+    /** Index of the empty tree, used for missing children */
+    private static final int NIL = 0;
+
+    /**
+     * Traversal stack kept by each thread between traversals, or null while
+     * one of its traversals holds it
+     */
+    private static final ThreadLocal<int[]> STACKS = new ThreadLocal<int[]>();
+
+    /** Bytes in one node record */
+    static final int NODE_BYTES = 20;
+
+    /* Offsets of the fields within a record */
+    private static final int KEY = 0;
+    private static final int LEFT = 4;
+    private static final int RIGHT = 8;
+    private static final int HEIGHT = 12;
+    private static final int BALANCE = 16;
+
+    /** Default log2 of the records per chunk, 1.25 MB chunks */
+    static final int DEFAULT_CHUNK_SHIFT = 16;
+
+    /** Frees a direct buffer now, or null if the JDK does not allow it */
+    private static final BufferFreer FREER = BufferFreer.find();
+
+    /** log2 of the records per chunk */
+    private final int chunkShift;
+
+    /** Records per chunk minus one, to find a record within its chunk */
+    private final int chunkMask;
+
+    /** The allocated chunks; chunks[i] holds nodes i << chunkShift on */
+    private ByteBuffer[] chunks;
+
+    /** Number of chunks allocated */
+    private int numChunks;
+
+    /** Index of the root node, NIL if the tree is empty */
+    private int root;
+
+    /** Number of keys in the tree, nodes use indices 1 to numKeys */
+    private int numKeys;
+
+    /** Rebalance threshold, see BSTreeSetTester */
+    private int rebalanceThreshold;
+
+    /** True iff no balance factor has exceeded the threshold */
+    private boolean isBalanced;
+
+    /** Ancestors of the node being added, reused between adds */
+    private int[] path;
+
+    /**
+     * Constructs an empty OffHeapIntBSTreeSet with a given
+     * rebalanceThreshold.
+     *
+     * @param rbt the rebalance threshold
+     */
+    public OffHeapIntBSTreeSet(int rbt) {
+        this(rbt, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Constructs an empty tree with chunks of 2^chunkShift records. Small
+     * chunks let the tests cross many chunk boundaries.
+     *
+     * @param rbt the rebalance threshold
+     * @param chunkShift log2 of the records per chunk, 1 to 26
+     */
+    OffHeapIntBSTreeSet(int rbt, int chunkShift) {
+        if (chunkShift < 1 || chunkShift > 26) {
+            throw new IllegalArgumentException();
+        }
+        rebalanceThreshold = rbt;
+        this.chunkShift = chunkShift;
+        chunkMask = (1 << chunkShift) - 1;
+        chunks = new ByteBuffer[4];
+        path = new int[16];
+        root = NIL;
+        numKeys = 0;
+        isBalanced = true;
+    }
+
+    /* Record access. A node's chunk and byte offset come from its index. */
+
+    private ByteBuffer chunk(int n) {
+        return chunks[n >>> chunkShift];
+    }
+
+    private int offset(int n) {
+        return (n & chunkMask) * NODE_BYTES;
+    }
+
+    private int key(int n) {
+        return chunk(n).getInt(offset(n) + KEY);
+    }
+
+    private int left(int n) {
+        return chunk(n).getInt(offset(n) + LEFT);
+    }
+
+    private int right(int n) {
+        return chunk(n).getInt(offset(n) + RIGHT);
+    }
+
+    /** Height of n, 0 for NIL, which has no record */
+    private int height(int n) {
+        return n == NIL ? 0 : chunk(n).getInt(offset(n) + HEIGHT);
+    }
+
+    private int balance(int n) {
+        return chunk(n).getInt(offset(n) + BALANCE);
+    }
+
+    private void setLeft(int n, int child) {
+        chunk(n).putInt(offset(n) + LEFT, child);
+    }
+
+    private void setRight(int n, int child) {
+        chunk(n).putInt(offset(n) + RIGHT, child);
+    }
+
+    /**
+     * Adds the key to the tree, updating the height and balance factor of
+     * each node on the insert path and rebalancing as needed.
+     *
+     * @param key the key to add
+     * @throws DuplicateKeyException if the key is a duplicate
+     */
+    public void add(int key) {
+        // Walks down to the empty spot for key, remembering the ancestors
+        int n = root;
+        int depth = 0;
+        while (n != NIL) {
+            int k = key(n);
+            if (key == k) {
+                throw new DuplicateKeyException();
+            }
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = n;
+            n = key < k ? left(n) : right(n);
+        }
+
+        int node = newNode(key);
+        if (depth == 0) {
+            root = node;
+        } else if (key < key(path[depth - 1])) {
+            setLeft(path[depth - 1], node);
+        } else {
+            setRight(path[depth - 1], node);
+        }
+
+        // Each ancestor grows by one toward the side the key went
+        for (int i = 0; i < depth; i++) {
+            int p = path[i];
+            int child = i + 1 < depth ? path[i + 1] : node;
+            ByteBuffer c = chunk(p);
+            int off = offset(p);
+            int bf = c.getInt(off + BALANCE) +
+                    (c.getInt(off + LEFT) == child ? 1 : -1);
+            c.putInt(off + BALANCE, bf);
+            c.putInt(off + HEIGHT, c.getInt(off + HEIGHT) + 1);
+            if (Math.abs(bf) > rebalanceThreshold) {
+                isBalanced = false;
+            }
+        }
+        if (!isBalanced && rebalanceThreshold > 0) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Returns true iff the key is in the tree.
+     *
+     * @param key the key to search
+     * @return true iff the tree contains the key
+     */
+    public boolean contains(int key) {
+        int n = root;
+        while (n != NIL) {
+            ByteBuffer c = chunks[n >>> chunkShift];
+            int off = (n & chunkMask) * NODE_BYTES;
+            int k = c.getInt(off + KEY);
+            if (key == k) {
+                return true;
+            }
+            n = c.getInt(off + (key < k ? LEFT : RIGHT));
+        }
+        return false;
+    }
+
+    /**
+     * Returns the sorted keys in the range [minValue, maxValue). Only the
+     * subtrees that can hold keys in the range are visited.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @return the sorted keys in the specified range
+     * @throws IllegalArgumentException if minValue is larger than maxValue
+     */
+    public int[] rangeSearch(int minValue, int maxValue) {
+        if (minValue > maxValue) throw new IllegalArgumentException();
+        int[] result = new int[8];
+        int count = 0;
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            // Descends left only while the left subtree can hold keys >= min
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = key(n) > minValue ? left(n) : NIL;
+            }
+            n = stack[--top];
+            int k = key(n);
+            if (k >= maxValue) {
+                break;
+            }
+            if (k >= minValue) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = k;
+            }
+            n = right(n);
+        }
+        STACKS.set(stack);
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Passes each key in the range [minValue, maxValue) to action in sorted
+     * order without boxing.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param action the action to perform on each key in the range
+     * @throws IllegalArgumentException if minValue is larger than maxValue
+     * or action is null
+     */
+    public void forEachInRange(int minValue, int maxValue,
+            IntConsumer action) {
+        if (minValue > maxValue || action == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = key(n) > minValue ? left(n) : NIL;
+            }
+            n = stack[--top];
+            int k = key(n);
+            if (k >= maxValue) {
+                break;
+            }
+            if (k >= minValue) {
+                action.accept(k);
+            }
+            n = right(n);
+        }
+        STACKS.set(stack);
+    }
+
+    /**
+     * Adds every key in the array by building the tree in one pass, like
+     * IntBSTreeSet.bulkLoad. Keys already in the tree are merged in. If a
+     * duplicate is found the tree is left unchanged.
+     *
+     * @param newKeys the keys to add, not modified
+     * @throws IllegalArgumentException if newKeys is null
+     * @throws DuplicateKeyException if a key is a duplicate
+     */
+    public void bulkLoad(int[] newKeys) {
+        if (newKeys == null) throw new IllegalArgumentException();
+        int[] sorted = newKeys.clone();
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i - 1] >= sorted[i]) {
+                Arrays.sort(sorted);
+                break;
+            }
+        }
+        int[] existing = toSortedArray();
+        int[] merged = new int[existing.length + sorted.length];
+        int i = 0;
+        int j = 0;
+        int m = 0;
+        while (j < sorted.length) {
+            if ((j > 0 && sorted[j - 1] == sorted[j]) ||
+                    (i < existing.length && existing[i] == sorted[j])) {
+                throw new DuplicateKeyException();
+            }
+            merged[m++] = i < existing.length && existing[i] < sorted[j] ?
+                    existing[i++] : sorted[j++];
+        }
+        while (i < existing.length) {
+            merged[m++] = existing[i++];
+        }
+        numKeys = 0;
+        root = build(merged, 0, merged.length - 1);
+        isBalanced = true;
+    }
+
+    /**
+     * Rebuilds the tree into a perfectly balanced tree. The keys are copied
+     * out in sorted order and the records are rewritten in place from index
+     * 1, so no chunk is allocated or freed.
+     */
+    public void rebalance() {
+        int[] sorted = toSortedArray();
+        numKeys = 0;
+        root = build(sorted, 0, sorted.length - 1);
+        isBalanced = true;
+    }
+
+    /**
+     * Builds a balanced subtree from sorted[start..stop], allocating its
+     * root before its children.
+     *
+     * @param sorted the sorted keys
+     * @param start the first index of the part of the array used
+     * @param stop the last index of the part of the array used
+     * @return the index of the subtree root, NIL if the range is empty
+     */
+    private int build(int[] sorted, int start, int stop) {
+        if (start > stop) return NIL;
+        int mid = (start + stop) >>> 1;
+        int node = newNode(sorted[mid]);
+        int l = build(sorted, start, mid - 1);
+        int r = build(sorted, mid + 1, stop);
+        ByteBuffer c = chunk(node);
+        int off = offset(node);
+        c.putInt(off + LEFT, l);
+        c.putInt(off + RIGHT, r);
+        c.putInt(off + HEIGHT, 1 + Math.max(height(l), height(r)));
+        c.putInt(off + BALANCE, height(l) - height(r));
+        return node;
+    }
+
+    /**
+     * Writes a leaf record at the next node index, allocating a chunk if
+     * the index starts a new one.
+     *
+     * @param key the key of the leaf
+     * @return the index of the new node
+     */
+    private int newNode(int key) {
+        if (numKeys == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Tree is full");
+        }
+        int node = ++numKeys;
+        int c = node >>> chunkShift;
+        if (c == numChunks) {
+            if (c == chunks.length) {
+                chunks = Arrays.copyOf(chunks, c * 2);
+            }
+            chunks[c] = ByteBuffer.allocateDirect(
+                    (chunkMask + 1) * NODE_BYTES)
+                    .order(ByteOrder.nativeOrder());
+            numChunks++;
+        }
+        ByteBuffer buf = chunks[c];
+        int off = offset(node);
+        buf.putInt(off + KEY, key);
+        buf.putInt(off + LEFT, NIL);
+        buf.putInt(off + RIGHT, NIL);
+        buf.putInt(off + HEIGHT, 1);
+        buf.putInt(off + BALANCE, 0);
+        return node;
+    }
+
+    /**
+     * Copies the keys into a new array in sorted order.
+     *
+     * @return the sorted keys
+     */
+    public int[] toSortedArray() {
+        int[] sorted = new int[numKeys];
+        int i = 0;
+        int[] stack = takeStack();
+        int top = 0;
+        int n = root;
+        while (n != NIL || top > 0) {
+            while (n != NIL) {
+                stack = push(stack, top++, n);
+                n = left(n);
+            }
+            n = stack[--top];
+            sorted[i++] = key(n);
+            n = right(n);
+        }
+        STACKS.set(stack);
+        return sorted;
+    }
+
+    /**
+     * Takes the calling thread's traversal stack for one call of
+     * rangeSearch, forEachInRange or toSortedArray, which gives it back to
+     * STACKS when done, as in IntBSTreeSet. No two calls hold the same
+     * stack, so threads may traverse the tree at the same time as long as
+     * none of them adds, and a forEachInRange action may use the tree
+     * again.
+     *
+     * @return the stack
+     */
+    private static int[] takeStack() {
+        int[] s = STACKS.get();
+        if (s == null) return new int[16];
+        STACKS.set(null);
+        return s;
+    }
+
+    /**
+     * Stores n at position top of a traversal stack, growing it if needed.
+     *
+     * @param s the stack, from takeStack
+     * @param top the stack position
+     * @param n the node index
+     * @return s, or its grown copy
+     */
+    private static int[] push(int[] s, int top, int n) {
+        if (top == s.length) {
+            s = Arrays.copyOf(s, top * 2);
+        }
+        s[top] = n;
+        return s;
+    }
+
+    /**
+     * Returns the number of off-heap bytes the tree has allocated. Chunks
+     * are allocated whole, so this is at most one chunk more than the
+     * records in use.
+     *
+     * @return the bytes allocated
+     */
+    public long getOffHeapBytes() {
+        return (long) numChunks * (chunkMask + 1) * NODE_BYTES;
+    }
+
+    /**
+     * Returns the off-heap bytes allocated per key, counting the unused end
+     * of the last chunk.
+     *
+     * @return bytes per key, NaN if the tree is empty
+     */
+    public double getBytesPerKey() {
+        return numKeys == 0 ? Double.NaN :
+                (double) getOffHeapBytes() / numKeys;
+    }
+
+    @Override
+    public void add(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        add(key.intValue());
+    }
+
+    @Override
+    public boolean contains(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        return contains(key.intValue());
+    }
+
+    @Override
+    public List<Integer> subSet(Integer minValue, Integer maxValue) {
+        if (minValue == null || maxValue == null) {
+            throw new IllegalArgumentException();
+        }
+        int[] range = rangeSearch(minValue, maxValue);
+        List<Integer> result = new ArrayList<Integer>(range.length);
+        for (int k : range) {
+            result.add(k);
+        }
+        return result;
+    }
+
+    /**
+     * Clears the tree and frees its off-heap memory now. Where the JDK does
+     * not allow that, the buffers are dropped and freed when they are
+     * garbage collected.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < numChunks; i++) {
+            if (FREER != null) {
+                FREER.free(chunks[i]);
+            }
+            chunks[i] = null;
+        }
+        numChunks = 0;
+        root = NIL;
+        numKeys = 0;
+        isBalanced = true;
+    }
+
+    @Override
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * Displays the top maxDisplayLevels of the tree in the same format as
+     * BSTreeSetTester.
+     *
+     * @param maxDisplayLevels from the top of the BST that will be displayed
+     */
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        if (rebalanceThreshold > 0) {
+            System.out.println("------------------------" +
+                    "OffHeapIntBSTreeBSet Display------------------------");
+        } else {
+            System.out.println("------------------------" +
+                    "OffHeapIntBSTreeSet Display-------------------------");
+        }
+        displayTreeHelper(root, 0, maxDisplayLevels);
+    }
+
+    private void displayTreeHelper(int n, int curDepth, int maxDisplayLevels) {
+        if (maxDisplayLevels <= curDepth) return;
+        if (n == NIL)
+            return;
+        for (int i = 0; i < curDepth; i++) {
+            System.out.print("|--");
+        }
+        System.out.println(key(n) + "[" + height(n) + "]{" +
+                balance(n) + "}");
+        displayTreeHelper(left(n), curDepth + 1, maxDisplayLevels);
+        displayTreeHelper(right(n), curDepth + 1, maxDisplayLevels);
+    }
+
+    /**
+     * Returns an in-order iterator over the keys. Like BSTIterator it only
+     * holds the nodes on one root-to-leaf path. It must not be used after
+     * the tree is cleared.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private int[] stack = new int[16];
+            private int top = 0;
+            private int pending = root;
+
+            public boolean hasNext() {
+                return pending != NIL || top > 0;
+            }
+
+            public Integer next() {
+                while (pending != NIL) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = pending;
+                    pending = left(pending);
+                }
+                if (top == 0) throw new NoSuchElementException();
+                int n = stack[--top];
+                pending = right(n);
+                return key(n);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Frees direct buffers with sun.misc.Unsafe.invokeCleaner, found by
+     * reflection since it is not part of the Java SE API.
+     */
+    private static final class BufferFreer {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private BufferFreer(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        /**
+         * Looks up invokeCleaner.
+         *
+         * @return the freer, or null if this JDK does not have it
+         */
+        static BufferFreer find() {
+            try {
+                Class<?> cls = Class.forName("sun.misc.Unsafe");
+                Field field = cls.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                return new BufferFreer(field.get(null), cls.getMethod(
+                        "invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Frees buf's memory. buf must not be used afterward.
+         *
+         * @param buf a direct buffer that is not a slice or duplicate
+         */
+        void free(ByteBuffer buf) {
+            try {
+                invokeCleaner.invoke(unsafe, buf);
+            } catch (ReflectiveOperationException e) {
+                // Left for the garbage collector to free
+            }
+        }
+    }
+}
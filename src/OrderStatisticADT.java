@@ -0,0 +1,44 @@
+/**
+ * OrderStatisticADT specifies queries about the positions of keys in sorted
+ * order, answered without building a list of the keys. It is implemented
+ * alongside SetTesterADT by the set testers that can count.
+ *
+ * <p>Ranks are 0-based: the smallest key has rank 0. Ranges follow
+ * SetTesterADT.subSet: inclusive of minValue and exclusive of maxValue.</p>
+ *
+ * @author CS367
+ */
+public interface OrderStatisticADT<K> {
+
+    /**
+     * Returns the number of keys in the set that are smaller than key. key
+     * need not be in the set; if it is, this is its rank.
+     *
+     * @param key the key
+     * @return the number of smaller keys
+     * @throws IllegalArgumentException if key is null
+     */
+    public int rank(K key);
+
+    /**
+     * Returns the key with the given rank, i.e., the key that has exactly
+     * rank smaller keys in the set.
+     *
+     * @param rank the rank, from 0 to size() - 1
+     * @return the key
+     * @throws IllegalArgumentException if rank is out of range
+     */
+    public K select(int rank);
+
+    /**
+     * Returns the number of keys in the specified range, the size of the
+     * list subSet would return.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @return the number of keys in the range
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue
+     */
+    public int countInRange(K minValue, K maxValue);
+}
@@ -0,0 +1,228 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             ParallelRebuilder.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Fork-join versions of the two phases of BSTreeSetTester.rebalance():
+ * copying the keys out of the tree in order (flatten) and building a
+ * balanced tree from them (build). Both run on the common ForkJoinPool.
+ *
+ * <p>build splits the array at the same middle index as
+ * BSTreeSetTester.sortedArrayToBST and hands ranges of at most cutoff keys
+ * to it, so the tree it returns is identical in shape, height and balance
+ * factors to the sequential build.</p>
+ *
+ * <p>flatten needs to know where each subtree's keys start in the array,
+ * which the nodes do not record. A first pass therefore counts the keys
+ * under every node in the top few levels of the tree, in parallel, and a
+ * second pass copies each of those subtrees into its own slice of the
+ * array. Only the top levels are split, so a tree that is a long chain is
+ * flattened almost sequentially; it is the balanced trees that rebalance()
+ * rebuilds most often.</p>
+ */
+final class ParallelRebuilder {
+
+    /** Default largest range or subtree handled by a single task */
+    static final int SEQUENTIAL_CUTOFF = 1 << 13;
+
+    /** Never instantiated */
+    private ParallelRebuilder() {
+    }
+
+    /**
+     * Returns the keys of the tree rooted at root in ascending order.
+     *
+     * @param root the root of the tree, may be null
+     * @param size the number of keys in the tree
+     * @param cutoff the largest subtree copied by a single task
+     * @return the sorted keys
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <K extends Comparable<K>> K[] flatten(BSTNode<K> root, int size,
+            int cutoff) {
+        K[] keys = (K[]) new Comparable[size];
+        // Enough levels for a few tasks per worker thread
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int forkDepth = 34 - Integer.numberOfLeadingZeros(parallelism);
+        int[] sizes = new int[2 << forkDepth];
+        ForkJoinPool.commonPool().invoke(
+                new CountTask<K>(root, 1, 0, forkDepth, sizes));
+        ForkJoinPool.commonPool().invoke(new FlattenTask<K>(root, 1, 0,
+                forkDepth, sizes, keys, 0, cutoff));
+        return keys;
+    }
+
+    /**
+     * Builds a perfectly balanced tree from keys[start..stop], identical to
+     * tree.sortedArrayToBST(keys, start, stop).
+     *
+     * @param tree the tree the nodes are built for
+     * @param keys the sorted keys
+     * @param start the first index of the part of the array used
+     * @param stop the last index of the part of the array used
+     * @param cutoff the largest range built by a single task
+     * @return the root of the new tree
+     */
+    static <K extends Comparable<K>> BSTNode<K> build(BSTreeSetTester<K> tree,
+            K[] keys, int start, int stop, int cutoff) {
+        return ForkJoinPool.commonPool().invoke(
+                new BuildTask<K>(tree, keys, start, stop, cutoff));
+    }
+
+    /**
+     * Counts the keys under a node and, for nodes at most forkDepth levels
+     * down, records the count in sizes at the node's heap index (the root
+     * is 1 and the children of i are 2i and 2i+1).
+     */
+    private static final class CountTask<K> extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final BSTNode<K> node;
+        private final int index;
+        private final int depth;
+        private final int forkDepth;
+        private final int[] sizes;
+
+        CountTask(BSTNode<K> node, int index, int depth, int forkDepth,
+                int[] sizes) {
+            this.node = node;
+            this.index = index;
+            this.depth = depth;
+            this.forkDepth = forkDepth;
+            this.sizes = sizes;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (node == null) return 0;
+            int size;
+            if (depth == forkDepth) {
+                size = 0;
+                BSTIterator<K> itr = new BSTIterator<K>(node);
+                while (itr.hasNext()) {
+                    itr.next();
+                    size++;
+                }
+            } else {
+                CountTask<K> left = new CountTask<K>(node.getLeftChild(),
+                        2 * index, depth + 1, forkDepth, sizes);
+                left.fork();
+                int rightSize = new CountTask<K>(node.getRightChild(),
+                        2 * index + 1, depth + 1, forkDepth, sizes).compute();
+                size = left.join() + rightSize + 1;
+            }
+            sizes[index] = size;
+            return size;
+        }
+    }
+
+    /**
+     * Copies the keys under a node into keys, starting at offset, using the
+     * subtree sizes recorded by CountTask to place each half.
+     */
+    private static final class FlattenTask<K> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BSTNode<K> node;
+        private final int index;
+        private final int depth;
+        private final int forkDepth;
+        private final int[] sizes;
+        private final K[] keys;
+        private final int offset;
+        private final int cutoff;
+
+        FlattenTask(BSTNode<K> node, int index, int depth, int forkDepth,
+                int[] sizes, K[] keys, int offset, int cutoff) {
+            this.node = node;
+            this.index = index;
+            this.depth = depth;
+            this.forkDepth = forkDepth;
+            this.sizes = sizes;
+            this.keys = keys;
+            this.offset = offset;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected void compute() {
+            if (node == null) return;
+            if (depth == forkDepth || sizes[index] <= cutoff) {
+                int i = offset;
+                BSTIterator<K> itr = new BSTIterator<K>(node);
+                while (itr.hasNext()) {
+                    keys[i++] = itr.next();
+                }
+                return;
+            }
+            int leftSize = node.getLeftChild() == null ? 0 : sizes[2 * index];
+            keys[offset + leftSize] = node.getKey();
+            invokeAll(new FlattenTask<K>(node.getLeftChild(), 2 * index,
+                    depth + 1, forkDepth, sizes, keys, offset, cutoff),
+                    new FlattenTask<K>(node.getRightChild(), 2 * index + 1,
+                    depth + 1, forkDepth, sizes, keys, offset + leftSize + 1,
+                    cutoff));
+        }
+    }
+
+    /**
+     * Builds the subtree for keys[start..stop], forking the right half and
+     * building the left half itself, the same order sortedArrayToBST uses.
+     */
+    private static final class BuildTask<K extends Comparable<K>>
+            extends RecursiveTask<BSTNode<K>> {
+        private static final long serialVersionUID = 1L;
+
+        private final BSTreeSetTester<K> tree;
+        private final K[] keys;
+        private final int start;
+        private final int stop;
+        private final int cutoff;
+
+        BuildTask(BSTreeSetTester<K> tree, K[] keys, int start, int stop,
+                int cutoff) {
+            this.tree = tree;
+            this.keys = keys;
+            this.start = start;
+            this.stop = stop;
+            this.cutoff = cutoff;
+        }
+
+        @Override
+        protected BSTNode<K> compute() {
+            if (stop - start < cutoff) {
+                return tree.sortedArrayToBST(keys, start, stop);
+            }
+            int mid = (stop + start) / 2;
+            BSTNode<K> node = tree.newNode(keys[mid]);
+            BuildTask<K> right = new BuildTask<K>(tree, keys, mid + 1, stop,
+                    cutoff);
+            right.fork();
+            node.setLeftChild(new BuildTask<K>(tree, keys, start, mid - 1,
+                    cutoff).compute());
+            node.setRightChild(right.join());
+            BSTreeSetTester.updateHeight(node);
+            return node;
+        }
+    }
+}
@@ -2,6 +2,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 
 /**
  * SetTesterADT implementation using a Java's Treeset, which uses a Red-Black
@@ -12,7 +13,8 @@ import java.util.TreeSet;
  * @author CS367
  */
 
-public class RBTreeSetTester<K extends Comparable<K>> implements SetTesterADT<K> {
+public class RBTreeSetTester<K extends Comparable<K>> implements SetTesterADT<K>,
+        RangeSearchADT<K>, OrderStatisticADT<K> {
     
     TreeSet<K> rbTree;
     
@@ -35,6 +37,68 @@ public class RBTreeSetTester<K extends Comparable<K>> implements SetTesterADT<K>
         return new ArrayList<K>(rbTree.subSet(minValue, maxValue));
     }
 
+    /**
+     * Iterates the TreeSet's subSet view, which costs one small view object
+     * per query instead of a list.
+     */
+    @Override
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (minValue == null || maxValue == null || action == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        for (K item : rbTree.subSet(minValue, maxValue)) {
+            action.accept(item);
+        }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        result.clear();
+        forEachInRange(minValue, maxValue, result::add);
+        return result;
+    }
+
+    /**
+     * Returns the size of the headSet view. TreeSet keeps no subtree sizes,
+     * so the view counts its keys one by one, in O(rank).
+     */
+    @Override
+    public int rank(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        return rbTree.headSet(key).size();
+    }
+
+    /**
+     * Iterates up to the key with the given rank, in O(rank).
+     */
+    @Override
+    public K select(int rank) {
+        if (rank < 0 || rank >= rbTree.size()) {
+            throw new IllegalArgumentException();
+        }
+        Iterator<K> itr = rbTree.iterator();
+        for (int i = 0; i < rank; i++) {
+            itr.next();
+        }
+        return itr.next();
+    }
+
+    /**
+     * Returns the size of the subSet view, which counts the keys in the
+     * range one by one.
+     */
+    @Override
+    public int countInRange(K minValue, K maxValue) {
+        if (minValue == null || maxValue == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        return rbTree.subSet(minValue, maxValue).size();
+    }
+
     @Override
     public void clear() {
         rbTree.clear();
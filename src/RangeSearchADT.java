@@ -0,0 +1,42 @@
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * RangeSearchADT specifies range searches that do not allocate a new list
+ * for every query. It is implemented alongside SetTesterADT by the set
+ * testers whose range searches are used in tight loops.
+ *
+ * <p>The range follows SetTesterADT.subSet: inclusive of minValue and
+ * exclusive of maxValue.</p>
+ *
+ * @author CS367
+ */
+public interface RangeSearchADT<K> {
+
+    /**
+     * Passes each key in the specified range to action, in the same order
+     * subSet would return them. The action must not modify the set.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param action the action to perform on each key in the range
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue, or action is null
+     */
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action);
+
+    /**
+     * Clears result and fills it with the keys in the specified range, in
+     * the same order subSet would return them. Reusing one result list
+     * across calls avoids allocating a list per query.
+     *
+     * @param minValue the minimum value of the desired range (inclusive)
+     * @param maxValue the maximum value of the desired range (exclusive)
+     * @param result the list to fill
+     * @return result
+     * @throws IllegalArgumentException if either minValue or maxValue is
+     * null, or minValue is larger than maxValue, or result is null
+     */
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result);
+}
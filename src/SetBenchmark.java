@@ -0,0 +1,1744 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetBenchmark.java
+//File:             SetBenchmark.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Micro-benchmarks for the SetTesterADT implementations, run the way JMH
+ * runs them: each benchmark gets warmup iterations that are thrown away so
+ * the JIT has compiled the code, followed by timed measurement iterations of
+ * a fixed duration. Every iteration repeats the operation until its time is
+ * up, so even tiny data sets give a measurable time. Results are reported as
+ * throughput (ops/s) and average time (ns/op), each with the half-width of a
+ * 99.9% confidence interval over the measurement iterations.
+ *
+ * <p>Command-line arguments are a suite name followed by options:</p>
+ *
+ * <pre>java SetBenchmark ops -sizes 1000,10000 -orders random,sorted
+ *     -thresholds 0,2 -wi 5 -i 10 -time 200</pre>
+ *
+ * <ul>
+ * <li>-sizes: comma-separated data sizes</li>
+ * <li>-orders: insertion orders, random, sorted or any other DataGenerator
+ * distribution (reverse, nearly-sorted, sawtooth, zipfian, clustered)</li>
+ * <li>-thresholds: rebalance thresholds for BSTreeSetTester</li>
+ * <li>-benchmarks: subset of add, containsHit, containsMiss, subSet,
+ * iterate</li>
+ * <li>-wi: warmup iterations, -i: measurement iterations</li>
+ * <li>-time: milliseconds per iteration</li>
+ * <li>-seed: seed for the generated data</li>
+ * </ul>
+ *
+ * <p>The concurrent suite times concurrent adds instead. It accepts -sizes,
+ * -threads (comma-separated writer thread counts), -wi, -i, -time and
+ * -seed:</p>
+ *
+ * <pre>java SetBenchmark concurrent -sizes 100000 -threads 1,2,4,8,16,32</pre>
+ *
+ * <p>The eytzinger suite times contains on read-only sets of sizes from
+ * cache-resident to far larger than the last-level cache (-sizes, -wi, -i,
+ * -time, -seed), comparing EytzingerIntSet with the pointer-based trees.</p>
+ *
+ * <p>The bplus suite runs the ops benchmarks on BPlusTreeSetTester for each
+ * fanout in -fanouts, next to BSTreeSetTester and RBTreeSetTester, to find
+ * the node size that suits the caches (-sizes, -orders, -benchmarks, -wi,
+ * -i, -time, -seed):</p>
+ *
+ * <pre>java SetBenchmark bplus -sizes 1000000 -fanouts 8,16,32,64,128</pre>
+ *
+ * <p>By default every row runs in this JVM, one after another, through the
+ * same Workload and SetTesterADT call sites. Once a few structures have
+ * run, those sites are megamorphic, so later rows can be slower for
+ * reasons that have nothing to do with their structure. With -fork n,
+ * as in JMH, each row (one structure with one set of parameters) is
+ * instead measured in n fresh JVMs, and the table reports the iterations
+ * of all n together. Each fork reruns the suite from the same -seed,
+ * skipping the workloads of the rows before its own, and exits when its
+ * row is done; the rows are printed, and the summary tables of the
+ * offheap, bloom and splay suites are computed, by this JVM. -fork does
+ * not affect the wal suite, which times its runs itself:</p>
+ *
+ * <pre>java SetBenchmark ops -sizes 100000 -fork 2</pre>
+ *
+ * <p>JMH itself is not used because it cannot generate benchmarks for classes
+ * in the default package, which is where this project keeps its code.</p>
+ */
+public class SetBenchmark {
+
+    /** Number of operations a read benchmark runs per call */
+    private static final int BATCH = 1024;
+
+    /** Starts each line of samples a forked JVM sends back */
+    private static final String FORK_SAMPLES = "#samples";
+
+    /**
+     * One call runs a batch of operations and returns how many it ran.
+     */
+    interface Workload {
+        long run();
+    }
+
+    /** Options given on the command line, with defaults filled in */
+    private final Map<String, String> options;
+
+    /** Warmup iterations per benchmark */
+    private final int warmupIterations;
+
+    /** Measurement iterations per benchmark */
+    private final int iterations;
+
+    /** Length of one iteration in nanoseconds */
+    private final long iterationNanos;
+
+    /** JVMs each row is measured in, 0 to measure in this one */
+    private final int forks;
+
+    /**
+     * In a forked JVM, the index of the only row to measure, -1 otherwise.
+     * Set with the internal -forkRow option.
+     */
+    private final int forkRow;
+
+    /** The suite being run, passed on to forked JVMs */
+    private final String suite;
+
+    /** Where results go; in a forked JVM, everything else is discarded */
+    private final PrintStream results;
+
+    /** Structure and parameters of the current row */
+    private String rowKey;
+
+    /** Index of the current row, counting from 0 */
+    private int row = -1;
+
+    /** Samples the forks measured for the current row, one per call */
+    private ArrayDeque<double[]> forkedSamples;
+
+    /** Consumes benchmark results so the JIT cannot discard the work */
+    private static volatile long blackhole;
+
+    /**
+     * Runs the suite named by args[0] with the options that follow it.
+     *
+     * @param args suite [-option value]...
+     */
+    public static void main(String[] args) {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Bad invocation! Correct usage: "
+                    + "java SetBenchmark <suite> [-option value]...");
+            System.err.println("Suites: ops, concurrent, eytzinger, bplus, "
+                    + "offheap, bloom, splay, rank, batch, wal");
+            System.exit(1);
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 1; i < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        String suite = args[0];
+        SetBenchmark bench = new SetBenchmark(suite, options);
+
+        if (suite.equals("ops")) {
+            bench.runOperationSuite();
+        } else if (suite.equals("concurrent")) {
+            bench.runConcurrentSuite();
+        } else if (suite.equals("eytzinger")) {
+            bench.runEytzingerSuite();
+        } else if (suite.equals("bplus")) {
+            bench.runBPlusTreeSuite();
+        } else if (suite.equals("offheap")) {
+            bench.runOffHeapSuite();
+        } else if (suite.equals("bloom")) {
+            bench.runBloomSuite();
+        } else if (suite.equals("splay")) {
+            bench.runSplaySuite();
+        } else if (suite.equals("rank")) {
+            bench.runRankSuite();
+        } else if (suite.equals("batch")) {
+            bench.runBatchSuite();
+        } else if (suite.equals("wal")) {
+            bench.runWalSuite();
+        } else {
+            System.err.println("Unknown suite: " + suite);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Creates a benchmark runner. In a forked JVM, System.out is replaced
+     * by a stream that discards everything, and only the samples of the
+     * forked row are written to the original.
+     *
+     * @param suite the suite name
+     * @param options the command-line options
+     */
+    public SetBenchmark(String suite, Map<String, String> options) {
+        this.suite = suite;
+        this.options = options;
+        warmupIterations = intOption("-wi", 5);
+        iterations = intOption("-i", 10);
+        iterationNanos = intOption("-time", 200) * 1000000L;
+        forkRow = intOption("-forkRow", -1);
+        forks = forkRow >= 0 ? 0 : intOption("-fork", 0);
+        results = System.out;
+        if (forkRow >= 0) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    /**
+     * Benchmarks add, contains hits and misses, subSet and iteration for
+     * ArrayListSetTester, BSTreeSetTester at every threshold (full rebuilds,
+     * and AVL rotations for positive thresholds) and RBTreeSetTester, for
+     * every data size and insertion order.
+     */
+    public void runOperationSuite() {
+        int[] sizes = intListOption("-sizes", "1000,10000");
+        String[] orders = listOption("-orders", "random,sorted");
+        int[] thresholds = intListOption("-thresholds", "0,2");
+        List<String> benchmarks = Arrays.asList(listOption("-benchmarks",
+                "add,containsHit,containsMiss,subSet,iterate"));
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            for (String order : orders) {
+                // Keys are the even numbers, so odd numbers are misses
+                Integer[] keys = evenKeys(size, order, rng);
+                Integer[] hits = shuffledCopy(keys, rng);
+                Integer[] misses = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    misses[i] = hits[i] + 1;
+                }
+
+                List<String> names = new ArrayList<String>();
+                List<SetTesterADT<Integer>> sets =
+                        new ArrayList<SetTesterADT<Integer>>();
+                names.add("ArrayListSet");
+                sets.add(new ArrayListSetTester<Integer>());
+                for (int t : thresholds) {
+                    names.add("BSTreeSet(t=" + t + ")");
+                    sets.add(new BSTreeSetTester<Integer>(t));
+                }
+                for (int t : thresholds) {
+                    if (t <= 0) continue;
+                    names.add("BSTreeSet(t=" + t + ",avl)");
+                    sets.add(new BSTreeSetTester<Integer>(t,
+                            BSTreeSetTester.RebalanceMode.AVL_ROTATION));
+                }
+                names.add("RBTreeSet");
+                sets.add(new RBTreeSetTester<Integer>());
+
+                for (int s = 0; s < sets.size(); s++) {
+                    String params = size + " " + order;
+                    runOperations(names.get(s), params, sets.get(s), keys,
+                            hits, misses, benchmarks);
+                }
+            }
+        }
+    }
+
+    /**
+     * Benchmarks the ops suite operations on BPlusTreeSetTester across a
+     * sweep of fanouts, with BSTreeSetTester (threshold 2, partial
+     * rebuilds, which stay fast at large sizes) and RBTreeSetTester as
+     * baselines. A node of fanout f holds f - 1 key references, 4 or 8
+     * bytes each, so fanout 16 is about one 64-byte line per node and 256
+     * is a few KB; the fastest fanout shows where the shallower tree stops
+     * paying for the longer search within each node.
+     */
+    public void runBPlusTreeSuite() {
+        int[] sizes = intListOption("-sizes", "100000");
+        String[] orders = listOption("-orders", "random");
+        int[] fanouts = intListOption("-fanouts", "4,8,16,32,64,128,256");
+        List<String> benchmarks = Arrays.asList(listOption("-benchmarks",
+                "add,containsHit,containsMiss,subSet,iterate"));
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            for (String order : orders) {
+                Integer[] keys = evenKeys(size, order, rng);
+                Integer[] hits = shuffledCopy(keys, rng);
+                Integer[] misses = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    misses[i] = hits[i] + 1;
+                }
+                String params = size + " " + order;
+                for (int f : fanouts) {
+                    runOperations("BPlusTree(f=" + f + ")", params,
+                            new BPlusTreeSetTester<Integer>(f), keys, hits,
+                            misses, benchmarks);
+                }
+                runOperations("BSTreeSet(t=2,partial)", params,
+                        new BSTreeSetTester<Integer>(2,
+                                BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD),
+                        keys, hits, misses, benchmarks);
+                runOperations("RBTreeSet", params,
+                        new RBTreeSetTester<Integer>(), keys, hits, misses,
+                        benchmarks);
+            }
+        }
+    }
+
+    /**
+     * Runs the selected operation benchmarks on one set.
+     *
+     * @param name the structure name
+     * @param params the parameter columns
+     * @param set the set to benchmark
+     * @param keys the keys, in insertion order
+     * @param hits the keys in random order, for searches
+     * @param misses keys not in the set, for searches
+     * @param benchmarks the benchmarks to run
+     */
+    private void runOperations(String name, String params,
+            final SetTesterADT<Integer> set, final Integer[] keys,
+            final Integer[] hits, final Integer[] misses,
+            List<String> benchmarks) {
+        if (benchmarks.contains("add")) {
+            measure("add", name, params, new Workload() {
+                public long run() {
+                    set.clear();
+                    for (Integer k : keys) {
+                        set.add(k);
+                    }
+                    return keys.length;
+                }
+            });
+        }
+        // The read benchmarks share one build
+        set.clear();
+        for (Integer k : keys) {
+            set.add(k);
+        }
+        if (benchmarks.contains("containsHit")) {
+            measure("containsHit", name, params, containsWorkload(set, hits));
+        }
+        if (benchmarks.contains("containsMiss")) {
+            measure("containsMiss", name, params,
+                    containsWorkload(set, misses));
+        }
+        if (benchmarks.contains("subSet")) {
+            measure("subSet", name, params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        int k = hits[next];
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                        found += set.subSet(k - 10, k + 10).size();
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+        }
+        if (benchmarks.contains("iterate")) {
+            measure("iterate", name, params, new Workload() {
+                public long run() {
+                    long sum = 0;
+                    for (Integer k : set) {
+                        sum += k;
+                    }
+                    blackhole += sum;
+                    return keys.length;
+                }
+            });
+        }
+    }
+
+    /**
+     * Benchmarks adding every key to an empty set from 1 up to 32 writer
+     * threads. Each thread adds every T-th key of a random order, so the
+     * threads work on interleaved parts of the key range. The structures are
+     * ConcurrentSkipListSetTester, RBTreeSetTester behind one lock and
+     * ConcurrentBSTreeSetTester (threshold 2, partial rebuilds), whose
+     * writers are serialized.
+     */
+    public void runConcurrentSuite() {
+        int[] sizes = intListOption("-sizes", "100000");
+        int[] threadCounts = intListOption("-threads", "1,2,4,8,16,32");
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            Integer[] keys = evenKeys(size, "random", rng);
+            for (int threads : threadCounts) {
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                try {
+                    String params = size + " threads=" + threads;
+                    measure("concurrentAdd", "ConcurrentSkipList", params,
+                            concurrentAddWorkload(
+                                    new ConcurrentSkipListSetTester<Integer>(),
+                                    keys, threads, pool));
+                    measure("concurrentAdd", "SyncRBTreeSet", params,
+                            concurrentAddWorkload(new SynchronizedSetTester<
+                                    Integer>(new RBTreeSetTester<Integer>()),
+                                    keys, threads, pool));
+                    measure("concurrentAdd", "ConcurrentBSTree", params,
+                            concurrentAddWorkload(
+                                    new ConcurrentBSTreeSetTester<Integer>(2,
+                                    BSTreeSetTester.RebalanceMode
+                                            .PARTIAL_REBUILD),
+                                    keys, threads, pool));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Benchmarks contains hits and misses on read-only sets built by bulk
+     * load: EytzingerIntSet, a sorted int[] searched with
+     * Arrays.binarySearch, IntBSTreeSet and BSTreeSetTester. The trees have
+     * the shape sortedArrayToBST builds, so every structure does about
+     * log2(size) comparisons and the differences come from memory layout.
+     *
+     * <p>Java cannot read the hardware cache-miss counters. The sizes run
+     * from a few KB to hundreds of MB, so the change in ns/op between sizes
+     * shows the cost of the misses; for the counts themselves, run one
+     * structure and size under perf stat -e cache-misses and divide by the
+     * ops/s times the measured seconds.</p>
+     */
+    public void runEytzingerSuite() {
+        int[] sizes = intListOption("-sizes", "1000,100000,1000000,4000000");
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            String params = Integer.toString(size);
+            Integer[] keys = evenKeys(size, "random", rng);
+            final int[] hits = new int[size];
+            final int[] misses = new int[size];
+            int[] data = new int[size];
+            Integer[] boxedHits = new Integer[size];
+            Integer[] boxedMisses = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                data[i] = keys[i];
+                hits[i] = keys[(i + size / 2) % size];
+                misses[i] = hits[i] + 1;
+                boxedHits[i] = hits[i];
+                boxedMisses[i] = misses[i];
+            }
+
+            final EytzingerIntSet eytzinger = new EytzingerIntSet(data);
+            measure("containsHit", "EytzingerIntSet", params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (eytzinger.contains(hits[next])) found++;
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+            measure("containsMiss", "EytzingerIntSet", params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (eytzinger.contains(misses[next])) found++;
+                        next = next + 1 == misses.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+
+            final int[] sortedData = eytzinger.toSortedArray();
+            measure("containsHit", "SortedIntArray", params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (Arrays.binarySearch(sortedData, hits[next]) >= 0) {
+                            found++;
+                        }
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+
+            final IntBSTreeSet intTree = new IntBSTreeSet(2);
+            intTree.bulkLoad(data);
+            measure("containsHit", "IntBSTreeSet", params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (intTree.contains(hits[next])) found++;
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+
+            BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(2);
+            tree.bulkLoad(keys);
+            measure("containsHit", "BSTreeSet", params,
+                    containsWorkload(tree, boxedHits));
+            measure("containsMiss", "BSTreeSet", params,
+                    containsWorkload(tree, boxedMisses));
+        }
+    }
+
+    /**
+     * Builds BSTreeSetTester, IntBSTreeSet and OffHeapIntBSTreeSet from the
+     * same keys by bulk load and, while each is live on its own, reports:
+     *
+     * <ul>
+     * <li>the heap it retains, measured as used heap after System.gc()
+     * before and after the build, in bytes per key; for BSTreeSetTester
+     * this includes the boxed Integer keys</li>
+     * <li>the off-heap bytes per key</li>
+     * <li>the average pause of a full collection, which must trace every
+     * live object, from the GarbageCollectorMXBean times</li>
+     * <li>the young collections and their average pause while short-lived
+     * garbage is allocated for -time milliseconds</li>
+     * </ul>
+     *
+     * The containsHit benchmark runs on each structure while it is live,
+     * and the table follows the benchmark results.
+     */
+    public void runOffHeapSuite() {
+        int[] sizes = intListOption("-sizes", "1000000,4000000");
+        long seed = intOption("-seed", 367);
+
+        printHeader();
+        List<String> rows = new ArrayList<String>();
+        for (int size : sizes) {
+            String params = Integer.toString(size);
+            int[] data = DataGenerator.generate("uniform", size, -1, seed);
+            // The keys are in random order, so a rotation is another one
+            final int[] hits = new int[size];
+            for (int i = 0; i < size; i++) {
+                hits[i] = data[(i + size / 2) % size];
+            }
+
+            // Each structure is the only one live while it is measured
+            long before = usedHeapAfterGc();
+            BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(2);
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = data[i];
+            }
+            tree.bulkLoad(boxed);
+            boxed = null;
+            rows.add(memoryRow("BSTreeSet", tree, before, 0));
+            Integer[] boxedHits = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxedHits[i] = hits[i];
+            }
+            measure("containsHit", "BSTreeSet", params,
+                    containsWorkload(tree, boxedHits));
+            tree = null;
+            boxedHits = null;
+
+            before = usedHeapAfterGc();
+            final IntBSTreeSet intTree = new IntBSTreeSet(2);
+            intTree.bulkLoad(data);
+            rows.add(memoryRow("IntBSTreeSet", intTree, before, 0));
+            measure("containsHit", "IntBSTreeSet", params, new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (intTree.contains(hits[next])) found++;
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+            intTree.clear();
+
+            final OffHeapIntBSTreeSet offHeap = new OffHeapIntBSTreeSet(2);
+            before = usedHeapAfterGc();
+            offHeap.bulkLoad(data);
+            rows.add(memoryRow("OffHeapIntBSTreeSet", offHeap, before,
+                    offHeap.getOffHeapBytes()));
+            measure("containsHit", "OffHeapIntBSTreeSet", params,
+                    new Workload() {
+                private int next = 0;
+                public long run() {
+                    long found = 0;
+                    for (int i = 0; i < BATCH; i++) {
+                        if (offHeap.contains(hits[next])) found++;
+                        next = next + 1 == hits.length ? 0 : next + 1;
+                    }
+                    blackhole += found;
+                    return BATCH;
+                }
+            });
+            offHeap.clear();
+        }
+
+        System.out.println();
+        System.out.printf("%-20s %10s %12s %12s %10s %8s %10s%n",
+                "Structure", "Keys", "Heap B/key", "OffHeap B/key",
+                "FullGC ms", "YoungGCs", "YoungGC ms");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * Benchmarks containsMiss and containsHit on an unbalanced
+     * BSTreeSetTester built from random order and on RBTreeSetTester, each
+     * bare and wrapped in a BloomFilterSetTester sized for the data at every
+     * false positive rate. A table at the end gives the miss-path speedup,
+     * the hit-path cost of the extra filter probe, the filter's bytes and
+     * bits per key, and the fraction of misses the filter let through.
+     */
+    public void runBloomSuite() {
+        int[] sizes = intListOption("-sizes", "10000,1000000");
+        String[] rates = listOption("-fpp", "0.1,0.01,0.001");
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        List<String> rows = new ArrayList<String>();
+        for (int size : sizes) {
+            String params = Integer.toString(size);
+            Integer[] keys = evenKeys(size, "random", rng);
+            Integer[] hits = shuffledCopy(keys, rng);
+            Integer[] misses = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                misses[i] = hits[i] + 1;
+            }
+
+            List<String> names = new ArrayList<String>();
+            List<SetTesterADT<Integer>> sets =
+                    new ArrayList<SetTesterADT<Integer>>();
+            names.add("BSTreeSet(t=0)");
+            sets.add(new BSTreeSetTester<Integer>(0));
+            names.add("RBTreeSet");
+            sets.add(new RBTreeSetTester<Integer>());
+
+            for (int s = 0; s < sets.size(); s++) {
+                SetTesterADT<Integer> set = sets.get(s);
+                for (Integer k : keys) {
+                    set.add(k);
+                }
+                double bareMiss = measure("containsMiss", names.get(s),
+                        params, containsWorkload(set, misses));
+                double bareHit = measure("containsHit", names.get(s),
+                        params, containsWorkload(set, hits));
+                for (String rate : rates) {
+                    BloomFilterSetTester<Integer> bloom =
+                            new BloomFilterSetTester<Integer>(set, size,
+                            Double.parseDouble(rate));
+                    String name = "Bloom(" + rate + ")+" +
+                            (s == 0 ? "BST" : "RBT");
+                    double miss = measure("containsMiss", name, params,
+                            containsWorkload(bloom, misses));
+                    double hit = measure("containsHit", name, params,
+                            containsWorkload(bloom, hits));
+                    int passed = 0;
+                    for (Integer k : misses) {
+                        if (bloom.mightContain(k)) passed++;
+                    }
+                    rows.add(String.format(
+                            "%-22s %10d %8.2fx %8.2fx %12d %8.2f %9.4f",
+                            name, size, bareMiss / miss, bareHit / hit,
+                            bloom.getFilterBytes(),
+                            bloom.getFilterBytes() * 8.0 / size,
+                            (double) passed / size));
+                }
+                set.clear();
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-22s %10s %9s %9s %12s %8s %9s%n", "Structure",
+                "Keys", "Miss gain", "Hit gain", "Filter B", "Bits/key",
+                "Miss FPR");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * Benchmarks contains on streams of -queries searches whose keys follow
+     * a Zipf distribution with each exponent in -skews (0 is uniform), on
+     * SplayTreeSetTester, BSTreeSetTester (threshold 2, partial rebuilds)
+     * and RBTreeSetTester built from the same random order. The timed
+     * benchmark gives the amortized cost per search. One more pass over the
+     * stream then times every search on its own into a LatencyHistogram for
+     * the table at the end; those times include about 20-30 ns of
+     * System.nanoTime() overhead. The maximum is the worst single search,
+     * which for the splay tree is the price of its amortization, but it
+     * also catches any GC pause or safepoint that lands on a search, so
+     * compare it across structures only together with p99.9.
+     */
+    public void runSplaySuite() {
+        int[] sizes = intListOption("-sizes", "100000");
+        String[] skews = listOption("-skews", "0,0.8,1.0,1.2");
+        int queryCount = intOption("-queries", 1000000);
+        double hitRatio = doubleOption("-hit", 1.0);
+        long seed = intOption("-seed", 367);
+
+        printHeader();
+        List<String> rows = new ArrayList<String>();
+        for (int size : sizes) {
+            int[] data = DataGenerator.generate("uniform", size, -1, seed);
+            List<String> names = new ArrayList<String>();
+            List<SetTesterADT<Integer>> sets =
+                    new ArrayList<SetTesterADT<Integer>>();
+            names.add("SplayTreeSet");
+            sets.add(new SplayTreeSetTester<Integer>());
+            names.add("BSTreeSet(t=2,partial)");
+            sets.add(new BSTreeSetTester<Integer>(2,
+                    BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD));
+            names.add("RBTreeSet");
+            sets.add(new RBTreeSetTester<Integer>());
+            for (SetTesterADT<Integer> set : sets) {
+                for (int k : data) {
+                    set.add(k);
+                }
+            }
+
+            for (String skew : skews) {
+                int[] stream = DataGenerator.queries(data, queryCount,
+                        hitRatio, Double.parseDouble(skew), seed + 1);
+                Integer[] queries = new Integer[stream.length];
+                for (int i = 0; i < stream.length; i++) {
+                    queries[i] = stream[i];
+                }
+                String params = size + " s=" + skew;
+                for (int s = 0; s < sets.size(); s++) {
+                    SetTesterADT<Integer> set = sets.get(s);
+                    double nsPerOp = measure("zipfContains", names.get(s),
+                            params, containsWorkload(set, queries));
+                    LatencyHistogram latencies = new LatencyHistogram();
+                    long found = 0;
+                    for (Integer q : queries) {
+                        long start = System.nanoTime();
+                        if (set.contains(q)) found++;
+                        latencies.record(System.nanoTime() - start);
+                    }
+                    blackhole += found;
+                    rows.add(String.format(
+                            "%-22s %-16s %9.1f %8d %8d %8d %10d", names.get(s),
+                            params, nsPerOp,
+                            latencies.getValueAtPercentile(50),
+                            latencies.getValueAtPercentile(99),
+                            latencies.getValueAtPercentile(99.9),
+                            latencies.getMax()));
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-22s %-16s %9s %8s %8s %8s %10s%n", "Structure",
+                "Params", "Amort ns", "p50 ns", "p99 ns", "p99.9 ns",
+                "Max ns");
+        for (String row : rows) {
+            System.out.println(row);
+        }
+    }
+
+    /**
+     * Benchmarks the OrderStatisticADT queries on BSTreeSetTester with
+     * subtree sizes (partial rebuilds at threshold 2, and AVL rotations at
+     * threshold 1), RBTreeSetTester and, up to -listMax keys,
+     * ArrayListSetTester and BSTreeSetTester without sizes, which counts
+     * keys instead. Each structure holds the even keys of a random
+     * order. rank probes random keys, select random ranks, and countInRange
+     * ranges spanning -width keys; subSetSize times subSet(min,
+     * max).size() over the same ranges, the way a count is made without
+     * sizes. The add benchmark on the trees with and without sizes gives
+     * the cost of keeping them.
+     */
+    public void runRankSuite() {
+        int[] sizes = intListOption("-sizes", "1000,100000");
+        int width = intOption("-width", 1000);
+        int listMax = intOption("-listMax", 10000);
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            final Integer[] keys = evenKeys(size, "random", rng);
+            final Integer[] probes = shuffledCopy(keys, rng);
+            final int[] ranks = new int[size];
+            for (int i = 0; i < size; i++) {
+                ranks[i] = rng.nextInt(size);
+            }
+            String params = size + " w=" + width;
+
+            List<String> names = new ArrayList<String>();
+            List<SetTesterADT<Integer>> sets =
+                    new ArrayList<SetTesterADT<Integer>>();
+            List<OrderStatisticADT<Integer>> statsList =
+                    new ArrayList<OrderStatisticADT<Integer>>();
+            addRankSet(names, sets, statsList, "BSTreeSet(t=2,sized)",
+                    new BSTreeSetTester<Integer>(2,
+                    BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD, true));
+            addRankSet(names, sets, statsList, "BSTreeSet(avl,sized)",
+                    new BSTreeSetTester<Integer>(1,
+                    BSTreeSetTester.RebalanceMode.AVL_ROTATION, true));
+            addRankSet(names, sets, statsList, "RBTreeSet",
+                    new RBTreeSetTester<Integer>());
+            if (size <= listMax) {
+                addRankSet(names, sets, statsList, "ArrayListSet",
+                        new ArrayListSetTester<Integer>());
+                addRankSet(names, sets, statsList, "BSTreeSet(t=2)",
+                        new BSTreeSetTester<Integer>(2,
+                        BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD));
+            }
+
+            // What the sizes cost each add
+            measure("add", "BSTreeSet(t=2)", params, addWorkload(
+                    new BSTreeSetTester<Integer>(2,
+                            BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD),
+                    keys));
+            measure("add", "BSTreeSet(avl)", params, addWorkload(
+                    new BSTreeSetTester<Integer>(1,
+                            BSTreeSetTester.RebalanceMode.AVL_ROTATION),
+                    keys));
+
+            for (int s = 0; s < sets.size(); s++) {
+                final SetTesterADT<Integer> set = sets.get(s);
+                final OrderStatisticADT<Integer> stats = statsList.get(s);
+                String name = names.get(s);
+                if (name.endsWith(",sized)")) {
+                    measure("add", name, params, addWorkload(set, keys));
+                }
+                set.clear();
+                for (Integer k : keys) {
+                    set.add(k);
+                }
+                measure("rank", name, params, new Workload() {
+                    private int next = 0;
+                    public long run() {
+                        long sum = 0;
+                        for (int i = 0; i < BATCH; i++) {
+                            sum += stats.rank(probes[next]);
+                            next = next + 1 == probes.length ? 0 : next + 1;
+                        }
+                        blackhole += sum;
+                        return BATCH;
+                    }
+                });
+                measure("select", name, params, new Workload() {
+                    private int next = 0;
+                    public long run() {
+                        long sum = 0;
+                        for (int i = 0; i < BATCH; i++) {
+                            sum += stats.select(ranks[next]);
+                            next = next + 1 == ranks.length ? 0 : next + 1;
+                        }
+                        blackhole += sum;
+                        return BATCH;
+                    }
+                });
+                // Keys are even, so a range of 2 * width spans width keys
+                final int span = 2 * width;
+                measure("countInRange", name, params, new Workload() {
+                    private int next = 0;
+                    public long run() {
+                        long sum = 0;
+                        for (int i = 0; i < BATCH; i++) {
+                            int k = probes[next];
+                            next = next + 1 == probes.length ? 0 : next + 1;
+                            sum += stats.countInRange(k, k + span);
+                        }
+                        blackhole += sum;
+                        return BATCH;
+                    }
+                });
+                measure("subSetSize", name, params, new Workload() {
+                    private int next = 0;
+                    public long run() {
+                        long sum = 0;
+                        for (int i = 0; i < BATCH; i++) {
+                            int k = probes[next];
+                            next = next + 1 == probes.length ? 0 : next + 1;
+                            sum += set.subSet(k, k + span).size();
+                        }
+                        blackhole += sum;
+                        return BATCH;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Benchmarks BSTreeSetTester.containsBatch against calling contains on
+     * each probe of the same sorted batches, for every batch size in
+     * -batches, on trees built from a random order with partial rebuilds
+     * (threshold 2) and with AVL rotations (threshold 1), and against
+     * per-key contains on RBTreeSetTester. Half the probes are keys and
+     * half are misses between keys. Both methods get the probes sorted, so
+     * the per-key searches also enjoy the cache locality of sorted order
+     * and the difference is the shared descent alone.
+     */
+    public void runBatchSuite() {
+        int[] sizes = intListOption("-sizes", "100000,1000000");
+        int[] batchSizes = intListOption("-batches", "1,16,256,4096,65536");
+        Random rng = new Random(intOption("-seed", 367));
+
+        printHeader();
+        for (int size : sizes) {
+            Integer[] keys = evenKeys(size, "random", rng);
+            BSTreeSetTester<Integer> partial = new BSTreeSetTester<Integer>(2,
+                    BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD);
+            BSTreeSetTester<Integer> avl = new BSTreeSetTester<Integer>(1,
+                    BSTreeSetTester.RebalanceMode.AVL_ROTATION);
+            RBTreeSetTester<Integer> rb = new RBTreeSetTester<Integer>();
+            for (Integer k : keys) {
+                partial.add(k);
+                avl.add(k);
+                rb.add(k);
+            }
+            // A pool of at least 1M probes, cut into sorted batches
+            int poolSize = Math.max(1 << 20, size);
+            Integer[] pool = new Integer[poolSize];
+            for (int i = 0; i < poolSize; i++) {
+                pool[i] = keys[rng.nextInt(size)] + rng.nextInt(2);
+            }
+            for (int b : batchSizes) {
+                if (b < 1 || b > poolSize) continue;
+                final Integer[][] batches = new Integer[poolSize / b][];
+                for (int i = 0; i < batches.length; i++) {
+                    batches[i] = Arrays.copyOfRange(pool, i * b, i * b + b);
+                    Arrays.sort(batches[i]);
+                }
+                String params = size + " b=" + b;
+                measure("containsBatch", "BSTreeSet(t=2)", params,
+                        batchWorkload(partial, batches));
+                measure("contains", "BSTreeSet(t=2)", params,
+                        sortedContainsWorkload(partial, batches));
+                measure("containsBatch", "BSTreeSet(avl)", params,
+                        batchWorkload(avl, batches));
+                measure("contains", "BSTreeSet(avl)", params,
+                        sortedContainsWorkload(avl, batches));
+                measure("contains", "RBTreeSet", params,
+                        sortedContainsWorkload(rb, batches));
+            }
+        }
+    }
+
+    /**
+     * Benchmarks WalSetTester. First, sustained adds for -walTime ms each
+     * into a new set under every SyncPolicy, with GROUP at each group size
+     * in -groups and a flush every -interval ms, after a run with no log
+     * at all; every add is timed into a LatencyHistogram. Then recovery:
+     * for each length in -logLengths, that many adds are logged and the
+     * set is reopened, replaying the log, and then checkpointed and
+     * reopened from the snapshot alone. The sets are made in temporary
+     * directories under -dir (default the current directory, since /tmp
+     * may be a RAM disk where forcing costs nothing) and deleted after.
+     *
+     * <p>The trees do not rebalance (threshold 0); the keys are i times
+     * an odd constant, which are distinct and in no useful order, so the
+     * trees stay shallow and the log is what is measured.</p>
+     */
+    public void runWalSuite() {
+        long runNanos = intOption("-walTime", 2000) * 1000000L;
+        int[] groups = intListOption("-groups", "16,256,4096");
+        int interval = intOption("-interval", 10);
+        int[] logLengths = intListOption("-logLengths",
+                "10000,100000,1000000");
+        Path base = Paths.get(options.getOrDefault("-dir", "."));
+
+        System.out.printf("%-20s %10s %9s %8s %8s %9s %10s %8s %9s%n",
+                "Policy", "adds/s", "mean ns", "p50 ns", "p99 ns",
+                "p99.9 ns", "max ns", "forces", "log MB");
+        walAddRow("no log", null, WalSetTester.SyncPolicy.NONE, 0, 0,
+                runNanos);
+        walAddRow("NONE", base, WalSetTester.SyncPolicy.NONE, 0, 0,
+                runNanos);
+        for (int g : groups) {
+            walAddRow("GROUP(" + g + "," + interval + "ms)", base,
+                    WalSetTester.SyncPolicy.GROUP, g, interval, runNanos);
+        }
+        walAddRow("EVERY", base, WalSetTester.SyncPolicy.EVERY, 0, 0,
+                runNanos);
+
+        System.out.println();
+        System.out.printf("%10s %10s %12s %14s%n", "Log adds", "Log MB",
+                "Replay ms", "Snapshot ms");
+        for (int n : logLengths) {
+            Path dir = null;
+            try {
+                dir = Files.createTempDirectory(base, "wal");
+                WalSetTester wal = new WalSetTester(dir.toString(), 0,
+                        WalSetTester.SyncPolicy.NONE, 0, 0);
+                for (int i = 0; i < n; i++) {
+                    wal.add(walKey(i));
+                }
+                double logMb = wal.getLogBytes() / 1e6;
+                wal.close();
+                wal = new WalSetTester(dir.toString(), 0,
+                        WalSetTester.SyncPolicy.NONE, 0, 0);
+                double replayMs = wal.getRecoveryMillis();
+                if (wal.size() != n || wal.getReplayedRecords() != n) {
+                    throw new IllegalStateException("Replay lost adds");
+                }
+                wal.checkpoint();
+                wal.close();
+                wal = new WalSetTester(dir.toString(), 0,
+                        WalSetTester.SyncPolicy.NONE, 0, 0);
+                double snapshotMs = wal.getRecoveryMillis();
+                if (wal.size() != n) {
+                    throw new IllegalStateException("Snapshot lost adds");
+                }
+                wal.close();
+                System.out.printf("%10d %10.2f %12.1f %14.1f%n", n, logMb,
+                        replayMs, snapshotMs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deleteDirectory(dir);
+            }
+        }
+    }
+
+    /**
+     * Adds keys to a new WalSetTester for runNanos, timing each add, and
+     * prints a row of the add table. With no base directory the adds go
+     * to a bare tree with no log.
+     *
+     * @param name the row name
+     * @param base the directory to make the set in, or null for no log
+     * @param policy the sync policy
+     * @param groupSize the group size under GROUP
+     * @param flushMillis the flush interval under GROUP
+     * @param runNanos the duration of the run
+     */
+    private static void walAddRow(String name, Path base,
+            WalSetTester.SyncPolicy policy, int groupSize, int flushMillis,
+            long runNanos) {
+        Path dir = null;
+        try {
+            WalSetTester wal = null;
+            SetTesterADT<Integer> set;
+            if (base == null) {
+                set = new BSTreeSetTester<Integer>(0);
+            } else {
+                dir = Files.createTempDirectory(base, "wal");
+                wal = new WalSetTester(dir.toString(), 0, policy, groupSize,
+                        flushMillis);
+                set = wal;
+            }
+            LatencyHistogram latencies = new LatencyHistogram();
+            int i = 0;
+            long start = System.nanoTime();
+            long deadline = start + runNanos;
+            long lastTime = start;
+            while (lastTime < deadline) {
+                set.add(walKey(i++));
+                long now = System.nanoTime();
+                latencies.record(now - lastTime);
+                lastTime = now;
+            }
+            long forces = 0;
+            double logMb = 0;
+            if (wal != null) {
+                forces = wal.getSyncCount();
+                logMb = wal.getLogBytes() / 1e6;
+                wal.close();
+            }
+            System.out.printf("%-20s %10.0f %9.0f %8d %8d %9d %10d %8d "
+                    + "%9.2f%n", name, i * 1e9 / (lastTime - start),
+                    latencies.getMean(), latencies.getValueAtPercentile(50),
+                    latencies.getValueAtPercentile(99),
+                    latencies.getValueAtPercentile(99.9), latencies.getMax(),
+                    forces, logMb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Returns the i-th key of the wal suite, distinct for every i below
+     * 2^32 since the multiplier is odd.
+     *
+     * @param i the index
+     * @return the key
+     */
+    private static int walKey(int i) {
+        return i * 0x9E3779B9;
+    }
+
+    /**
+     * Deletes a directory made by the wal suite and the files in it.
+     *
+     * @param dir the directory, or null
+     */
+    private static void deleteDirectory(Path dir) {
+        if (dir == null) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + dir + ": " + e);
+        }
+    }
+
+    /**
+     * Returns a workload that searches for one batch per call with
+     * containsBatch.
+     *
+     * @param set the set to search
+     * @param batches the sorted batches, searched in turn
+     * @return the workload
+     */
+    private static Workload batchWorkload(final BatchSearchADT<Integer> set,
+            final Integer[][] batches) {
+        return new Workload() {
+            private int next = 0;
+            private final boolean[] out = new boolean[batches[0].length];
+            public long run() {
+                Integer[] probes = batches[next];
+                next = next + 1 == batches.length ? 0 : next + 1;
+                set.containsBatch(probes, out);
+                long found = 0;
+                for (boolean b : out) {
+                    if (b) found++;
+                }
+                blackhole += found;
+                return probes.length;
+            }
+        };
+    }
+
+    /**
+     * Returns a workload that searches for one batch per call, calling
+     * contains on each probe in order.
+     *
+     * @param set the set to search
+     * @param batches the sorted batches, searched in turn
+     * @return the workload
+     */
+    private static Workload sortedContainsWorkload(
+            final SetTesterADT<Integer> set, final Integer[][] batches) {
+        return new Workload() {
+            private int next = 0;
+            private final boolean[] out = new boolean[batches[0].length];
+            public long run() {
+                Integer[] probes = batches[next];
+                next = next + 1 == batches.length ? 0 : next + 1;
+                for (int i = 0; i < probes.length; i++) {
+                    out[i] = set.contains(probes[i]);
+                }
+                long found = 0;
+                for (boolean b : out) {
+                    if (b) found++;
+                }
+                blackhole += found;
+                return probes.length;
+            }
+        };
+    }
+
+    /**
+     * Adds a structure for the rank suite to its parallel lists, once as a
+     * set and once as an OrderStatisticADT.
+     *
+     * @param names the structure names
+     * @param sets the structures as sets
+     * @param statsList the structures as OrderStatisticADTs
+     * @param name the structure's name
+     * @param set the structure
+     */
+    private static <S extends SetTesterADT<Integer> &
+            OrderStatisticADT<Integer>> void addRankSet(List<String> names,
+            List<SetTesterADT<Integer>> sets,
+            List<OrderStatisticADT<Integer>> statsList, String name, S set) {
+        names.add(name);
+        sets.add(set);
+        statsList.add(set);
+    }
+
+    /**
+     * Returns a workload that clears set and then adds every key to it.
+     *
+     * @param set the set to add to
+     * @param keys the keys, in insertion order
+     * @return the workload
+     */
+    private static Workload addWorkload(final SetTesterADT<Integer> set,
+            final Integer[] keys) {
+        return new Workload() {
+            public long run() {
+                set.clear();
+                for (Integer k : keys) {
+                    set.add(k);
+                }
+                return keys.length;
+            }
+        };
+    }
+
+    /**
+     * Measures the memory and collection costs of a live set for the
+     * offheap suite's table.
+     *
+     * @param name the structure name
+     * @param set the set, kept reachable until this returns
+     * @param heapBefore used heap after a full collection before the build
+     * @param offHeapBytes the set's off-heap allocation
+     * @return the table row
+     */
+    private String memoryRow(String name, SetTesterADT<Integer> set,
+            long heapBefore, long offHeapBytes) {
+        long heapBytes = usedHeapAfterGc() - heapBefore;
+        int size = set.size();
+
+        final int fullGcs = 3;
+        long[] start = gcTotals();
+        for (int i = 0; i < fullGcs; i++) {
+            System.gc();
+        }
+        long[] end = gcTotals();
+        double fullGcMs = (double) (end[1] - start[1]) / fullGcs;
+
+        // Short-lived garbage, a few KB of it live at a time
+        Object[] ring = new Object[256];
+        start = gcTotals();
+        long stop = System.nanoTime() + iterationNanos;
+        int i = 0;
+        while (System.nanoTime() < stop) {
+            for (int j = 0; j < 1024; j++) {
+                ring[i++ & 255] = new int[16];
+            }
+        }
+        end = gcTotals();
+        blackhole += ring.length + set.size();
+        long youngGcs = end[0] - start[0];
+
+        return String.format("%-20s %10d %12.1f %12.1f %10.1f %8d %10.2f",
+                name, size, (double) heapBytes / size,
+                (double) offHeapBytes / size, fullGcMs, youngGcs,
+                youngGcs == 0 ? 0.0 : (double) (end[1] - start[1]) / youngGcs);
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     *
+     * @return used heap bytes
+     */
+    private static long usedHeapAfterGc() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+
+    /**
+     * Returns the collection count and the accumulated collection time in
+     * milliseconds, summed over every collector.
+     *
+     * @return { count, milliseconds }
+     */
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc :
+                ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    /**
+     * Returns a workload that clears set and then adds every key to it,
+     * split across threads tasks run on pool.
+     *
+     * @param set the thread-safe set to add to
+     * @param keys the keys to add
+     * @param threads the number of writer threads
+     * @param pool a pool with at least threads threads
+     * @return the workload
+     */
+    private static Workload concurrentAddWorkload(
+            final SetTesterADT<Integer> set, final Integer[] keys,
+            final int threads, final ExecutorService pool) {
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for (int i = first; i < keys.length; i += threads) {
+                        set.add(keys[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+        return new Workload() {
+            public long run() {
+                set.clear();
+                try {
+                    for (Future<Void> f : pool.invokeAll(tasks)) {
+                        f.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                blackhole += set.size();
+                return keys.length;
+            }
+        };
+    }
+
+    /**
+     * Makes any SetTesterADT thread-safe by running every method while
+     * holding the lock of this wrapper, like
+     * Collections.synchronizedSortedSet. The iterator walks a copy.
+     */
+    static class SynchronizedSetTester<K> implements SetTesterADT<K> {
+
+        /** The set every method is delegated to */
+        private final SetTesterADT<K> set;
+
+        /**
+         * Wraps a set.
+         *
+         * @param set the set to make thread-safe
+         */
+        SynchronizedSetTester(SetTesterADT<K> set) {
+            this.set = set;
+        }
+
+        public synchronized void add(K key) {
+            set.add(key);
+        }
+
+        public synchronized boolean contains(K key) {
+            return set.contains(key);
+        }
+
+        public synchronized List<K> subSet(K minValue, K maxValue) {
+            return set.subSet(minValue, maxValue);
+        }
+
+        public synchronized void clear() {
+            set.clear();
+        }
+
+        public synchronized int size() {
+            return set.size();
+        }
+
+        public synchronized void displayTree(int maxDisplayLevels) {
+            set.displayTree(maxDisplayLevels);
+        }
+
+        public synchronized Iterator<K> iterator() {
+            List<K> copy = new ArrayList<K>(set.size());
+            for (K key : set) {
+                copy.add(key);
+            }
+            return copy.iterator();
+        }
+    }
+
+    /**
+     * Returns a workload that searches for the probes in turn.
+     *
+     * @param set the set to search
+     * @param probes the keys to search for
+     * @return the workload
+     */
+    private static Workload containsWorkload(final SetTesterADT<Integer> set,
+            final Integer[] probes) {
+        return new Workload() {
+            private int next = 0;
+            public long run() {
+                long found = 0;
+                for (int i = 0; i < BATCH; i++) {
+                    if (set.contains(probes[next])) found++;
+                    next = next + 1 == probes.length ? 0 : next + 1;
+                }
+                blackhole += found;
+                return BATCH;
+            }
+        };
+    }
+
+    /**
+     * Runs the warmup and measurement iterations of one benchmark and prints
+     * its throughput and average time. Consecutive calls with the same
+     * structure and params make up one row. With -fork, the first call of
+     * a row has the forks measure the whole row, and each call takes its
+     * samples from them. In a forked JVM, calls for the rows before its own
+     * return NaN without running, and the first call after it exits.
+     *
+     * @param benchmark the benchmark name
+     * @param structure the structure name
+     * @param params the parameter columns
+     * @param workload the operation to measure
+     * @return the mean time in ns/op, or NaN for a row a fork skips
+     * @throws IllegalStateException if a fork fails or its rows do not
+     * match this JVM's
+     */
+    double measure(String benchmark, String structure, String params,
+            Workload workload) {
+        String key = structure + " " + params;
+        if (!key.equals(rowKey)) {
+            rowKey = key;
+            row++;
+            if (forks > 0) {
+                forkedSamples = runForks(row);
+            }
+        }
+        if (forkRow >= 0 && row != forkRow) {
+            if (row > forkRow) {
+                results.flush();
+                System.exit(0);
+            }
+            return Double.NaN;
+        }
+
+        double[] nsPerOp;
+        if (forks > 0) {
+            nsPerOp = forkedSamples.poll();
+            if (nsPerOp == null) {
+                throw new IllegalStateException("Forks measured fewer " +
+                        "benchmarks than " + key + " has");
+            }
+        } else {
+            for (int i = 0; i < warmupIterations; i++) {
+                runIteration(workload);
+            }
+            nsPerOp = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                nsPerOp[i] = runIteration(workload);
+            }
+        }
+        if (forkRow >= 0) {
+            StringBuilder line = new StringBuilder(FORK_SAMPLES);
+            for (double x : nsPerOp) {
+                line.append(' ').append(x);
+            }
+            results.println(line);
+            return mean(nsPerOp);
+        }
+
+        double[] opsPerSec = new double[nsPerOp.length];
+        for (int i = 0; i < nsPerOp.length; i++) {
+            opsPerSec[i] = 1e9 / nsPerOp[i];
+        }
+        String label = String.format("%-14s %-20s %-16s", benchmark,
+                structure, params);
+        results.printf("%s thrpt %5d %16.3f +- %14.3f  ops/s%n", label,
+                nsPerOp.length, mean(opsPerSec), error(opsPerSec));
+        results.printf("%s avgt  %5d %16.3f +- %14.3f  ns/op%n", label,
+                nsPerOp.length, mean(nsPerOp), error(nsPerOp));
+        return mean(nsPerOp);
+    }
+
+    /**
+     * Measures one row in forks fresh JVMs, one after another, each
+     * running this suite with the same options and -forkRow row. The JVMs
+     * get this JVM's arguments and class path.
+     *
+     * @param row the row index
+     * @return the samples of each benchmark of the row, in order, with the
+     * iterations of every fork together
+     * @throws IllegalStateException if a fork fails or the forks disagree
+     * on the number of benchmarks
+     */
+    private ArrayDeque<double[]> runForks(int row) {
+        List<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin",
+                "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean()
+                .getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SetBenchmark.class.getName());
+        command.add(suite);
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().equals("-fork")) continue;
+            command.add(option.getKey());
+            command.add(option.getValue());
+        }
+        command.add("-forkRow");
+        command.add(Integer.toString(row));
+
+        List<double[]> merged = null;
+        for (int f = 0; f < forks; f++) {
+            List<double[]> samples = new ArrayList<double[]>();
+            try {
+                Process fork = new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(fork.getInputStream()))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (!line.startsWith(FORK_SAMPLES)) continue;
+                        String[] fields = line.split(" ");
+                        double[] x = new double[fields.length - 1];
+                        for (int i = 0; i < x.length; i++) {
+                            x[i] = Double.parseDouble(fields[i + 1]);
+                        }
+                        samples.add(x);
+                    }
+                }
+                int status = fork.waitFor();
+                if (status != 0) {
+                    throw new IllegalStateException("Fork for " + rowKey +
+                            " exited with status " + status);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (merged == null) {
+                merged = samples;
+            } else if (merged.size() != samples.size()) {
+                throw new IllegalStateException("Forks for " + rowKey +
+                        " measured different benchmarks");
+            } else {
+                for (int i = 0; i < samples.size(); i++) {
+                    double[] a = merged.get(i);
+                    double[] b = samples.get(i);
+                    double[] both = Arrays.copyOf(a, a.length + b.length);
+                    System.arraycopy(b, 0, both, a.length, b.length);
+                    merged.set(i, both);
+                }
+            }
+        }
+        return new ArrayDeque<double[]>(merged);
+    }
+
+    /**
+     * Runs the workload repeatedly for one iteration's duration.
+     *
+     * @param workload the operation to run
+     * @return the average nanoseconds per operation
+     */
+    private double runIteration(Workload workload) {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            ops += workload.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return (double) elapsed / ops;
+    }
+
+    /**
+     * Prints the column headings of the result table.
+     */
+    void printHeader() {
+        System.out.printf("%-14s %-20s %-16s %-5s %5s %16s   %14s  %s%n",
+                "Benchmark", "Structure", "Params", "Mode", "Cnt", "Score",
+                "Error", "Units");
+    }
+
+    /**
+     * Returns the mean of the samples.
+     *
+     * @param samples the samples
+     * @return the mean
+     */
+    static double mean(double[] samples) {
+        double sum = 0;
+        for (double x : samples) {
+            sum += x;
+        }
+        return sum / samples.length;
+    }
+
+    /**
+     * Returns the half-width of the 99.9% confidence interval of the mean,
+     * using Student's t distribution as JMH does. NaN for one sample.
+     *
+     * @param samples the samples
+     * @return the error
+     */
+    static double error(double[] samples) {
+        int n = samples.length;
+        if (n < 2) return Double.NaN;
+        double mean = mean(samples);
+        double ss = 0;
+        for (double x : samples) {
+            ss += (x - mean) * (x - mean);
+        }
+        double stdev = Math.sqrt(ss / (n - 1));
+        return studentT999(n - 1) * stdev / Math.sqrt(n);
+    }
+
+    /**
+     * Returns the two-sided 99.9% quantile of Student's t distribution with
+     * df degrees of freedom, from the Cornish-Fisher expansion around the
+     * normal quantile. Within 1% of the exact value for df &gt;= 3.
+     *
+     * @param df the degrees of freedom
+     * @return the quantile
+     */
+    static double studentT999(int df) {
+        // Exact values where the expansion is poor
+        if (df == 1) return 636.619;
+        if (df == 2) return 31.599;
+        double z = 3.290527;
+        double z3 = z * z * z;
+        double z5 = z3 * z * z;
+        double z7 = z5 * z * z;
+        double v = df;
+        return z + (z3 + z) / (4 * v)
+                + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v);
+    }
+
+    /**
+     * Returns the even numbers 0, 2, ..., 2(size-1) in the given order, or
+     * for any other DataGenerator distribution the even keys it generates.
+     *
+     * @param size the number of keys
+     * @param order random, sorted or a DataGenerator distribution
+     * @param rng the random number generator
+     * @return the keys
+     */
+    static Integer[] evenKeys(int size, String order, Random rng) {
+        Integer[] keys = new Integer[size];
+        if (!order.equals("random") && !order.equals("sorted")) {
+            int[] generated = DataGenerator.generate(order, size, -1,
+                    rng.nextLong());
+            for (int i = 0; i < size; i++) {
+                keys[i] = generated[i];
+            }
+            return keys;
+        }
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+        }
+        if (order.equals("random")) {
+            return shuffledCopy(keys, rng);
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a shuffled copy of the keys.
+     *
+     * @param keys the keys
+     * @param rng the random number generator
+     * @return the shuffled copy
+     */
+    static Integer[] shuffledCopy(Integer[] keys, Random rng) {
+        Integer[] copy = keys.clone();
+        for (int i = copy.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            Integer tmp = copy[i];
+            copy[i] = copy[j];
+            copy[j] = tmp;
+        }
+        return copy;
+    }
+
+    /**
+     * Returns an integer option.
+     *
+     * @param name the option name
+     * @param def the default value
+     * @return the option value
+     */
+    int intOption(String name, int def) {
+        String value = options.get(name);
+        return value == null ? def : Integer.parseInt(value);
+    }
+
+    /**
+     * Returns a floating-point option.
+     *
+     * @param name the option name
+     * @param def the default value
+     * @return the option value
+     */
+    double doubleOption(String name, double def) {
+        String value = options.get(name);
+        return value == null ? def : Double.parseDouble(value);
+    }
+
+    /**
+     * Returns a comma-separated option as an array.
+     *
+     * @param name the option name
+     * @param def the default value
+     * @return the option values
+     */
+    String[] listOption(String name, String def) {
+        String value = options.get(name);
+        return (value == null ? def : value).split(",");
+    }
+
+    /**
+     * Returns a comma-separated integer option as an array.
+     *
+     * @param name the option name
+     * @param def the default value
+     * @return the option values
+     */
+    int[] intListOption(String name, String def) {
+        String[] values = listOption(name, def);
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+}
@@ -1,14 +1,14 @@
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 ///////////////////////////////////////////////////////////////////////////////
 //
 //Title:            SetTesterMain
-//Files:            SetTesterMain.java, BSTIterator.java, BSTreeSetTester.java
+//Files:            SetTesterMain.java, BSTIterator.java, BSTreeSetTester.java,
+//                  IntBSTreeSet.java
 //Semester:         CS 367 Spring 2016
 //
 //Author:           Nathan Petersen
@@ -47,15 +47,61 @@ public class SetTesterMain {
 	/** Data read from a file and used for evaluation timing trials. */
 	private List<Integer> originalDataList;
 
+	/**
+	 * The same data as originalDataList as primitive ints, in the same
+	 * order, for the structures that do not box their keys.
+	 */
+	private int[] originalData;
+
+	/**
+	 * Keys the contains trials search for, or null to search for every
+	 * data item. See setQueryHitRatio.
+	 */
+	private List<Integer> queryList;
+
+	/** The same queries as queryList as primitive ints */
+	private int[] queries;
+
+	/** How many of the queries are in the data */
+	private int expectedHits;
+
 	/** Number of trials to run for each operation */
 	private int numOfTrials;
 
+	/**
+	 * Number of trials run before numOfTrials to warm up the JIT. Their
+	 * results are thrown away.
+	 */
+	private int numOfWarmupTrials;
+
 	/** Rebalance threshold for binary search tree with rebalance */
 	private int rebalanceThreshold;
 
 	/** The number of levels to display of the BSTree structures */
 	private int numOfDisplayLevels;
 
+	/** Consumes read results so the JIT cannot discard the reads */
+	private static volatile long blackhole;
+
+	/**
+	 * Operations a throughput thread runs between clock reads, when it is
+	 * not timing each one
+	 */
+	private static final int CLOCK_INTERVAL = 64;
+
+	/**
+	 * One read operation of a throughput run, on the i-th item of its keys.
+	 */
+	private interface ReadOperation {
+		/**
+		 * Runs the operation.
+		 *
+		 * @param i the index of the key to read
+		 * @return a value derived from the result
+		 */
+		long run(int i);
+	}
+
 
 	/** 
 	 * <p>Main method. Every application needs one.  
@@ -64,7 +110,9 @@ public class SetTesterMain {
 	 * <ul>
 	 * <li>args[0] is the name of an existing data file that contains a
 	 * a single line of [randomly generated] integers.  This is the data set
-	 * that will be used for all trials.</li>
+	 * that will be used for all trials. Instead of a file name it may be a
+	 * DataGenerator specification, gen:distribution[=parameter]:size[:seed],
+	 * to generate the data set, e.g. gen:sawtooth:1000000.</li>
 	 * 
 	 * <li>args[1] is a positive integer indicating the number of trials to be run.
 	 * The final results display the average(mean) of all trials.</li>
@@ -74,20 +122,61 @@ public class SetTesterMain {
 	 * 
 	 * <li>args[3] is an integer indicating how many levels deep to display
 	 * the contents of the binary search trees.</li>
+	 * 
+	 * <li>args[4] is optional: a non-negative integer indicating the number
+	 * of warmup trials to run first and leave out of the results.
+	 * Defaults to 0.</li>
+	 * 
+	 * <li>args[5] is optional: the fraction, from 0 to 1, of the contains
+	 * searches that search for a data item; the others search for keys that
+	 * are not in the data. Without it every data item is searched for once.
+	 * Other values need a generated data set, whose odd numbers are misses.
+	 * </li>
 	 * </ul>
 	 * 
 	 * <p>For example:</p> 
 	 * 
 	 * <pre>java SetTesterMain random_1000.txt 10 2 3</pre>
 	 *
+	 * <p>The data file may also be in IntDataLoader's binary format.</p>
+	 *
+	 * <p>With -throughput as the first argument, each tree is instead built
+	 * once and then searched by several threads at once; see
+	 * runThroughputEvaluation:</p>
+	 *
+	 * <pre>java SetTesterMain -throughput random_40000.txt 2 8 1000</pre>
+	 *
+	 * <p>The arguments are the data file, the rebalance threshold, and
+	 * optionally the largest number of threads (default twice the number
+	 * of processors) and the milliseconds each run lasts (default 1000).</p>
+	 *
 	 * @param args filename numTrials rebalanceThreshold numLevels
+	 * [numWarmupTrials [queryHitRatio]], or -throughput filename
+	 * rebalanceThreshold [maxThreads [runMillis]]
 	 */
 	public static void main( String[] args ){
-		if ( args.length != 4 ){
+		if ( args.length >= 3 && args.length <= 5 &&
+				args[0].equals("-throughput") ) {
+			int maxThreads = args.length > 3 ? Integer.valueOf(args[3]) :
+					2 * Runtime.getRuntime().availableProcessors();
+			int runMillis = args.length > 4 ? Integer.valueOf(args[4]) : 1000;
+			SetTesterMain evaluator = new SetTesterMain(args[1], 1,
+					Integer.valueOf(args[2]), 0);
+			evaluator.runThroughputEvaluation(maxThreads, runMillis);
+			return;
+		}
+		if ( args.length < 4 || args.length > 6 ){
 			System.err.println("Bad invocation! Correct usage: "
 					+ "java Evaluator <Data file> " +
 					"<Number of Trials> <Rebalance Threshold> <Number of " +
-					"Levels to Display>");
+					"Levels to Display> [Number of Warmup Trials " +
+					"[Query Hit Ratio]]");
+			System.err.println("   or: java SetTesterMain -throughput " +
+					"<Data file> <Rebalance Threshold> [Max Threads " +
+					"[Milliseconds per Run]]");
+			System.err.println("<Data file> may be gen:<distribution>" +
+					"[=<parameter>]:<size>[:<seed>], distributions: " +
+					String.join(", ", DataGenerator.DISTRIBUTIONS));
 			System.exit(1);
 		}
 
@@ -95,10 +184,15 @@ public class SetTesterMain {
 		int numOfTrials          = Integer.valueOf(args[1]);
 		int rebalanceThreshold   = Integer.valueOf(args[2]);
 		int numOfLevelsToDisplay = Integer.valueOf(args[3]);
+		int numOfWarmupTrials    = args.length > 4 ? Integer.valueOf(args[4]) : 0;
 
 		SetTesterMain evaluator = new SetTesterMain(
 				dataFilename, numOfTrials, 
 				rebalanceThreshold,	numOfLevelsToDisplay);
+		evaluator.setNumOfWarmupTrials(numOfWarmupTrials);
+		if ( args.length > 5 ) {
+			evaluator.setQueryHitRatio(Double.valueOf(args[5]));
+		}
 
 		// Run evaluation for unsorted data.
 		evaluator.runEvaluation(false);
@@ -110,7 +204,7 @@ public class SetTesterMain {
 
 	/**
 	 * Evaluator constructor.
-	 * @param dataFile data file name.
+	 * @param dataFile data file name, or a DataGenerator specification.
 	 * @param numOfTrials number of trials for each evaluation.
 	 * @param rebalanceThreshold  rebalance threshold for the binary search tree
 	 *                            with rebalance.
@@ -123,18 +217,16 @@ public class SetTesterMain {
 		this.rebalanceThreshold = rebalanceThreshold;
 		this.numOfDisplayLevels = numOfDisplayLevels;
 
-		// Read integer data values from the file
+		// Read integer data values from the file, text or binary; see
+		// IntDataLoader. Or generate them; see DataGenerator
 		try {
-			originalDataList = new ArrayList<Integer>();
-			Scanner fileScnr = new Scanner(new File(dataFile));
-
-			// read individual data values from the file
-			// all values must be integers
-			while( fileScnr.hasNextInt() ){
-				originalDataList.add( fileScnr.nextInt() );
+			int[] values = DataGenerator.isSpec(dataFile) ?
+					DataGenerator.parse(dataFile) :
+					IntDataLoader.load(dataFile);
+			originalDataList = new ArrayList<Integer>(values.length);
+			for (int value : values) {
+				originalDataList.add( value );
 			}
-
-			fileScnr.close();
 		} catch ( FileNotFoundException e ) {
 			System.out.println("SetTesterMain Construction fails..." +
 					dataFile + " file not found.");
@@ -146,6 +238,45 @@ public class SetTesterMain {
 		}
 	}
 
+	/**
+	 * Sets how many warmup trials evaluateAll runs, and throws away, before
+	 * the measured trials.
+	 *
+	 * @param numOfWarmupTrials the number of warmup trials
+	 * @throws IllegalArgumentException if numOfWarmupTrials is negative
+	 */
+	public void setNumOfWarmupTrials(int numOfWarmupTrials) {
+		if ( numOfWarmupTrials < 0 ) throw new IllegalArgumentException();
+		this.numOfWarmupTrials = numOfWarmupTrials;
+	}
+
+	/**
+	 * Makes the contains trials search for as many generated keys as there
+	 * are data items instead of for every data item, with the given
+	 * fraction of them in the data. Misses are odd numbers, so the data
+	 * must have only even keys, as DataGenerator data sets do.
+	 *
+	 * @param hitRatio the fraction of searches that find a key, 0 to 1
+	 * @throws IllegalArgumentException if hitRatio is out of range, or it
+	 * is below 1 and the data has an odd key
+	 */
+	public void setQueryHitRatio(double hitRatio) {
+		int[] data = new int[originalDataList.size()];
+		for ( int i=0; i < data.length; i++ ) {
+			data[i] = originalDataList.get(i);
+			if ( hitRatio < 1 && data[i] % 2 != 0 ) {
+				throw new IllegalArgumentException(
+						"Misses need data with only even keys");
+			}
+		}
+		queries = DataGenerator.queries(data, data.length, hitRatio, 0, 367);
+		queryList = new ArrayList<Integer>(queries.length);
+		for (int query : queries) {
+			queryList.add( query );
+		}
+		expectedHits = DataGenerator.hitCount(queries.length, hitRatio);
+	}
+
 	/**
 	 * Run the evaluation trials and display result tables.
 	 *
@@ -155,9 +286,12 @@ public class SetTesterMain {
 	 * <li>Binary Search Tree(bsTree)</li>
 	 * <li>Binary Search Tree with rebalance(bsTreeB)</li>
 	 * <li>RedBlack Tree(rbTree)</li>
+	 * <li>Binary Search Tree with rebalance of primitive ints stored in
+	 * arrays(intTreeB)</li>
 	 * </ol>
 	 *
-	 * Step 2: Display the evaluation results in table form for easy analysis.
+	 * Step 2: Display the evaluation results in table form for easy analysis,
+	 * followed by the per-operation latency percentiles.
 	 *
 	 * Step 3. Display the top (N) levels of the BSTree and BSTreeB, 
 	 * where n is entered by the user as a command-line argument.
@@ -169,6 +303,10 @@ public class SetTesterMain {
 		if ( sortData ){
 			Collections.sort(originalDataList);
 		}
+		originalData = new int[originalDataList.size()];
+		for ( int i=0; i < originalData.length; i++ ) {
+			originalData[i] = originalDataList.get(i);
+		}
 
 		SetTesterADT<Integer> listSet = new ArrayListSetTester<Integer>();
 		Stats listSetResult = evaluateAll(listSet);
@@ -183,12 +321,261 @@ public class SetTesterMain {
 		SetTesterADT<Integer> rbTree = new RBTreeSetTester<Integer>();
 		Stats rbTreeResult = evaluateAll(rbTree);
 
+		IntBSTreeSet intTreeB = new IntBSTreeSet(rebalanceThreshold);
+		Stats intTreeBResult = evaluateAll(intTreeB);
+
 		displayResultTable( sortData,
 				listSetResult, bsTreeResult, bsTreeBResult, rbTreeResult,
-				rebalanceThreshold );
+				intTreeBResult, rebalanceThreshold );
+		displayLatencyTable( sortData,
+				new String[] { "ArrayListSet", "BSTreeSet", "BSTreeBSet",
+						"RBTreeSet", "IntBSTreeBSet" },
+				new Stats[] { listSetResult, bsTreeResult, bsTreeBResult,
+						rbTreeResult, intTreeBResult } );
 
 		bsTree.displayTree(numOfDisplayLevels);
 		bsTreeB.displayTree(numOfDisplayLevels);
+		intTreeB.displayTree(numOfDisplayLevels);
+	}
+
+	/**
+	 * Measures how the read throughput of each tree scales when it is shared
+	 * by several reader threads. Each tree is built once from the data in
+	 * file order; then contains (of the same keys the contains trials
+	 * search for) and range searches (the same [item - 10, item + 10)
+	 * ranges) are run on it by 1, 2, 4 and so on up to maxThreads threads
+	 * at once, each for runMillis. Nothing adds during a run, so the trees
+	 * need no locking and every thread reads the same nodes.
+	 *
+	 * <p>Each thread starts at a different offset into the keys. Every
+	 * thread count gets two runs: one that only counts operations, for the
+	 * throughput, and one that times every operation into each thread's
+	 * own LatencyHistogram, for the percentiles. The table gives the
+	 * aggregate throughput, its ratio to one thread, the percentiles of
+	 * all threads' operations together, and the lowest and highest p99 of
+	 * any single thread. Past the number of processors the threads only
+	 * take turns, so throughput stops rising and the percentiles grow by
+	 * the scheduling delays; before that, a tree whose throughput rises
+	 * less than the thread count is limited by memory bandwidth or shared
+	 * caches.</p>
+	 *
+	 * <p>The threads are platform threads. ArrayListSetTester is left out,
+	 * since one linear search per contains would dwarf the trees.</p>
+	 *
+	 * @param maxThreads the largest number of reader threads
+	 * @param runMillis the duration of each run in milliseconds
+	 * @throws IllegalArgumentException if maxThreads or runMillis is not
+	 * positive
+	 */
+	public void runThroughputEvaluation(int maxThreads, int runMillis) {
+		if ( maxThreads < 1 || runMillis < 1 ) {
+			throw new IllegalArgumentException();
+		}
+		originalData = new int[originalDataList.size()];
+		for ( int i=0; i < originalData.length; i++ ) {
+			originalData[i] = originalDataList.get(i);
+		}
+		final List<Integer> searches = queryList != null ? queryList :
+				originalDataList;
+		final int[] intSearches = queries != null ? queries : originalData;
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for ( int t=1; t < maxThreads; t *= 2 ) {
+			threadCounts.add(t);
+		}
+		threadCounts.add(maxThreads);
+		long runNanos = runMillis * 1000000L;
+
+		System.out.println("READ THROUGHPUT:    #items:" +
+				originalDataList.size() + "  Thresh:" + rebalanceThreshold +
+				"  #Processors:" +
+				Runtime.getRuntime().availableProcessors() + "  ms/run:" +
+				runMillis);
+		System.out.printf("%-16s%-10s%8s%12s%9s%9s%9s%10s%11s%18s\n",
+				"Tester D.S.", "Op", "Threads", "ops/s", "Scaling", "p50",
+				"p99", "p99.9", "max", "thread p99 range");
+		System.out.println("=================================================" +
+				"=================================================" +
+				"===========");
+
+		String[] names = { "BSTreeSet", "BSTreeBSet", "RBTreeSet",
+				"IntBSTreeBSet" };
+		for ( int s=0; s < names.length; s++ ) {
+			ReadOperation contains;
+			ReadOperation range;
+			if ( s < 3 ) {
+				final SetTesterADT<Integer> ds = s == 0 ?
+						new BSTreeSetTester<Integer>(0) : s == 1 ?
+						new BSTreeSetTester<Integer>(rebalanceThreshold) :
+						new RBTreeSetTester<Integer>();
+				for ( Integer elem : originalDataList ) {
+					ds.add(elem);
+				}
+				contains = i -> ds.contains(searches.get(i)) ? 1 : 0;
+				range = i -> {
+					int elem = originalData[i];
+					return ds.subSet(elem - 10, elem + 10).size();
+				};
+			} else {
+				final IntBSTreeSet intTree =
+						new IntBSTreeSet(rebalanceThreshold);
+				for ( int elem : originalData ) {
+					intTree.add(elem);
+				}
+				contains = i -> intTree.contains(intSearches[i]) ? 1 : 0;
+				range = i -> {
+					int elem = originalData[i];
+					return intTree.rangeSearch(elem - 10, elem + 10).length;
+				};
+			}
+			runThroughputRows(names[s], "contains", contains,
+					searches.size(), threadCounts, runNanos);
+			runThroughputRows("", "range", range, originalData.length,
+					threadCounts, runNanos);
+			if ( s + 1 < names.length ) {
+				System.out.println("-----------------------------------------" +
+						"-------------------------------------------------" +
+						"-------------------");
+			}
+		}
+		System.out.println("=================================================" +
+				"=================================================" +
+				"===========");
+	}
+
+	/**
+	 * Runs one operation at every thread count, after a single-threaded
+	 * warmup run, and prints a row per thread count. The throughput and the
+	 * latencies come from separate runs, so the clock reads and histogram
+	 * updates of the latency run do not lower the throughput.
+	 *
+	 * @param name the data structure name, or blank
+	 * @param opName the operation name
+	 * @param op the operation
+	 * @param count the number of keys op reads, by index
+	 * @param threadCounts the thread counts, in increasing order
+	 * @param runNanos the duration of each run in nanoseconds
+	 */
+	private void runThroughputRows(String name, String opName,
+			ReadOperation op, int count, List<Integer> threadCounts,
+			long runNanos) {
+		runReaders(op, count, 1, runNanos, null);
+		double oneThread = 0;
+		for ( int threads : threadCounts ) {
+			double opsPerSec = runReaders(op, count, threads, runNanos,
+					null);
+			if ( threads == 1 ) oneThread = opsPerSec;
+			LatencyHistogram[] perThread = new LatencyHistogram[threads];
+			runReaders(op, count, threads, runNanos, perThread);
+			LatencyHistogram all = new LatencyHistogram();
+			long minP99 = Long.MAX_VALUE;
+			long maxP99 = 0;
+			for ( LatencyHistogram h : perThread ) {
+				all.add(h);
+				minP99 = Math.min(minP99, h.getValueAtPercentile(99));
+				maxP99 = Math.max(maxP99, h.getValueAtPercentile(99));
+			}
+			System.out.printf("%-16s%-10s%8d%12.0f%9.2f%9d%9d%10d%11d%18s\n",
+					name, opName, threads, opsPerSec, opsPerSec / oneThread,
+					all.getValueAtPercentile(50), all.getValueAtPercentile(99),
+					all.getValueAtPercentile(99.9), all.getMax(),
+					minP99 + "-" + maxP99);
+			name = "";
+			opName = "";
+		}
+	}
+
+	/**
+	 * Runs op on threads threads at once for runNanos. Thread t starts at
+	 * key t * count / threads and cycles through all count keys. If
+	 * perThread is null the threads only count operations, reading the
+	 * clock once every CLOCK_INTERVAL of them to see whether the run is
+	 * over; otherwise each operation is timed on its own into perThread[t],
+	 * with the histogram updated outside the timed span.
+	 * The threads are started and wait at a gate, so they all begin
+	 * together.
+	 *
+	 * @param op the operation
+	 * @param count the number of keys op reads, by index
+	 * @param threads the number of threads
+	 * @param runNanos the duration of the run in nanoseconds
+	 * @param perThread receives each thread's latency histogram, or null
+	 * @return the aggregate operations per second
+	 */
+	private static double runReaders(final ReadOperation op, final int count,
+			int threads, final long runNanos,
+			final LatencyHistogram[] perThread) {
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		final long[] ops = new long[threads];
+		final long[] starts = new long[threads];
+		final long[] ends = new long[threads];
+		Thread[] workers = new Thread[threads];
+		for ( int t=0; t < threads; t++ ) {
+			final int id = t;
+			final LatencyHistogram latencies = perThread == null ? null :
+					new LatencyHistogram();
+			if ( perThread != null ) perThread[t] = latencies;
+			workers[t] = new Thread(() -> {
+				int i = (int) ((long) id * count / threads);
+				long sum = 0;
+				long n = 0;
+				ready.countDown();
+				try {
+					go.await();
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				long startTime = System.nanoTime();
+				long deadline = startTime + runNanos;
+				long endTime = startTime;
+				if ( latencies == null ) {
+					do {
+						for ( int k=0; k < CLOCK_INTERVAL; k++ ) {
+							sum += op.run(i);
+							i = i + 1 == count ? 0 : i + 1;
+						}
+						n += CLOCK_INTERVAL;
+						endTime = System.nanoTime();
+					} while ( endTime < deadline );
+				} else {
+					while ( endTime < deadline ) {
+						long begin = System.nanoTime();
+						sum += op.run(i);
+						endTime = System.nanoTime();
+						latencies.record(endTime - begin);
+						i = i + 1 == count ? 0 : i + 1;
+						n++;
+					}
+				}
+				ops[id] = n;
+				starts[id] = startTime;
+				ends[id] = endTime;
+				blackhole += sum;
+			}, "reader-" + t);
+			workers[t].start();
+		}
+		try {
+			ready.await();
+			go.countDown();
+			for ( Thread worker : workers ) {
+				worker.join();
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted during throughput run");
+		}
+		// Over the whole span, from the first start to the last finish, since
+		// threads the scheduler starts late also finish late
+		long totalOps = 0;
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for ( int t=0; t < threads; t++ ) {
+			totalOps += ops[t];
+			first = Math.min(first, starts[t]);
+			last = Math.max(last, ends[t]);
+		}
+		return totalOps * 1e9 / Math.max(1, last - first);
 	}
 
 	/**
@@ -199,9 +586,17 @@ public class SetTesterMain {
 	 * <li>the time to build the Integer data structure (add all items)</li>
 	 * <li>the time to search for individual items in the data structure</li>
 	 * <li>the time to search for all items within a given range of values</li>
+	 * <li>for binary search trees, the time to bulk build the data structure
+	 * from the whole data list (timed first, so the add-built tree is what
+	 * remains)</li>
 	 * </ol>
 	 *
-	 * The number of trials has been stored as a data field.
+	 * The number of trials has been stored as a data field. The
+	 * numOfWarmupTrials warmup trials are run first and not recorded.
+	 * After the timed passes of a trial, each operation is run once more
+	 * over the data with every single operation timed in nanoseconds into
+	 * the Stats latency histograms. The trial times are taken from the
+	 * first passes, which read the clock only at their start and end.
 	 * A Stats instance is created and returned so that all results for
 	 * a given data structure are together for future analysis and reporting.
 	 *
@@ -211,16 +606,68 @@ public class SetTesterMain {
 	public Stats evaluateAll(SetTesterADT<Integer> dataStructure) {
 
 		Stats stats = new Stats();
-		for ( int t=0; t < numOfTrials; t++ ) {
+		// Warmup trials run exactly like the others but record into this
+		Stats discarded = new Stats();
+		for ( int t=0; t < numOfWarmupTrials + numOfTrials; t++ ) {
+			Stats trialStats = t < numOfWarmupTrials ? discarded : stats;
+
+			// Bulk build first so the tree is left as add() built it
+			if ( dataStructure instanceof BSTreeSetTester ) {
+				trialStats.addBulkBuildStat(evaluateBulkBuild(
+						(BSTreeSetTester<Integer>) dataStructure));
+			}
+
+			double trialTime = evaluateBuild(dataStructure, null);
+			trialStats.addBuildStat(trialTime);
+
+			trialTime = evaluateContainsSearch(dataStructure, null);
+			trialStats.addContainsSearchStat(trialTime);
+
+			trialTime = evaluateRangeSearch(dataStructure, null);
+			trialStats.addRangeSearchStat(trialTime);
+
+			// Separate passes, so that timing each operation does not
+			// slow the trial times above
+			evaluateBuild(dataStructure, trialStats.getBuildLatency());
+			evaluateContainsSearch(dataStructure,
+					trialStats.getContainsSearchLatency());
+			evaluateRangeSearch(dataStructure,
+					trialStats.getRangeSearchLatency());
+		}
+		return stats;
+	}
+
+	/**
+	 * Runs the same trials as evaluateAll(SetTesterADT) on the primitive
+	 * int tree, using its int methods so that no key is boxed.
+	 *
+	 * @param intTree the int tree to evaluate.
+	 * @return the evaluation results stats
+	 */
+	public Stats evaluateAll(IntBSTreeSet intTree) {
+
+		Stats stats = new Stats();
+		Stats discarded = new Stats();
+		for ( int t=0; t < numOfWarmupTrials + numOfTrials; t++ ) {
+			Stats trialStats = t < numOfWarmupTrials ? discarded : stats;
+
+			// Bulk build first so the tree is left as add(int) built it
+			trialStats.addBulkBuildStat(evaluateBulkBuild(intTree));
+
+			double trialTime = evaluateBuild(intTree, null);
+			trialStats.addBuildStat(trialTime);
 
-			long trialTime = evaluateBuild(dataStructure);
-			stats.addBuildStat(trialTime);
+			trialTime = evaluateContainsSearch(intTree, null);
+			trialStats.addContainsSearchStat(trialTime);
 
-			trialTime = evaluateContainsSearch(dataStructure);
-			stats.addContainsSearchStat(trialTime);
+			trialTime = evaluateRangeSearch(intTree, null);
+			trialStats.addRangeSearchStat(trialTime);
 
-			trialTime = evaluateRangeSearch(dataStructure);
-			stats.addRangeSearchStat(trialTime);
+			evaluateBuild(intTree, trialStats.getBuildLatency());
+			evaluateContainsSearch(intTree,
+					trialStats.getContainsSearchLatency());
+			evaluateRangeSearch(intTree,
+					trialStats.getRangeSearchLatency());
 		}
 		return stats;
 	}
@@ -232,55 +679,255 @@ public class SetTesterMain {
 	 * However, after the evaluation, the tester should contain all the data.
 	 * (Don't clear it).
 	 * 
+	 * <p>If latencies is null only the whole build is timed. Otherwise
+	 * each add is timed on its own into latencies, with the clock read
+	 * before and after it and the histogram updated outside that span, and
+	 * the time returned is the sum of those times.</p>
+	 *
 	 * @param tester the data structure to evaluate
+	 * @param latencies records the time of each add (nanoseconds), or null
 	 * @return the time (milliseconds) to build the data structure
 	 */
-	public long evaluateBuild(SetTesterADT<Integer> tester) {
+	public double evaluateBuild(SetTesterADT<Integer> tester,
+			LatencyHistogram latencies) {
 		tester.clear();
-		long startTime = System.currentTimeMillis();
+		if (latencies == null) {
+			long startTime = System.nanoTime();
+			for (Integer elem : originalDataList) {
+				tester.add(elem);
+			}
+			return (System.nanoTime() - startTime) / 1e6;
+		}
+		long total = 0;
 		for (Integer elem : originalDataList) {
+			long begin = System.nanoTime();
 			tester.add(elem);
+			long time = System.nanoTime() - begin;
+			latencies.record(time);
+			total += time;
 		}
-		return System.currentTimeMillis()-startTime;
+		return total / 1e6;
+	}
+
+	/**
+	 * Times building the tree from the whole data list in one bulkLoad
+	 * instead of one add per item. As with evaluateBuild, the tree is
+	 * cleared first and contains all the data afterwards.
+	 *
+	 * @param tree the tree to evaluate
+	 * @return the time (milliseconds) to bulk build the tree
+	 */
+	public double evaluateBulkBuild(BSTreeSetTester<Integer> tree) {
+		tree.clear();
+		long startTime = System.nanoTime();
+		tree.addAll(originalDataList);
+		return (System.nanoTime() - startTime) / 1e6;
+	}
+
+	/**
+	 * Times building the int tree from the whole data array with
+	 * bulkLoad(int[]).
+	 *
+	 * @param intTree the int tree to evaluate
+	 * @return the time (milliseconds) to bulk build the tree
+	 */
+	public double evaluateBulkBuild(IntBSTreeSet intTree) {
+		intTree.clear();
+		long startTime = System.nanoTime();
+		intTree.bulkLoad(originalData);
+		return (System.nanoTime() - startTime) / 1e6;
 	}
 
 
 	/**
 	 * Run a single trial that times and searches for each item in the original
-	 * data listing.  The data structure contains any of four different
+	 * data listing, or for the generated queries if setQueryHitRatio was
+	 * called.  The data structure contains any of four different
 	 * data set implementations. Returns the elapsed time in milliseconds.
 	 *
+	 * As in evaluateBuild, latencies may be null to time only the whole
+	 * trial.
+	 *
 	 * @param ds the data structure filled with data to test
+	 * @param latencies records the time of each contains (nanoseconds), or
+	 * null
 	 * @return elapsed time in milliseconds
-	 * @throws RuntimeException if a data item is not found in the SetTester
+	 * @throws RuntimeException if a data item is not found in the SetTester,
+	 * or a query that is not in the data is
 	 */
-	public long evaluateContainsSearch(SetTesterADT<Integer> ds) {
-		// Saves the time the method starts and returns the time the method
-		// took to run, checking for a RuntimeException along the way
-		long startTime = System.currentTimeMillis();
-		for (Integer elm : originalDataList){
-			if (!ds.contains(elm)){
-				throw new RuntimeException("Data item not found in SetTester");
+	public double evaluateContainsSearch(SetTesterADT<Integer> ds,
+			LatencyHistogram latencies) {
+		List<Integer> searches = queryList != null ? queryList :
+				originalDataList;
+		int found = 0;
+		long elapsed;
+		if (latencies == null) {
+			// Saves the time the method starts and returns the time the
+			// method took to run, checking for a RuntimeException afterwards
+			long startTime = System.nanoTime();
+			for (Integer elm : searches){
+				if (ds.contains(elm)){
+					found++;
+				}
+			}
+			elapsed = System.nanoTime() - startTime;
+		} else {
+			elapsed = 0;
+			for (Integer elm : searches){
+				long begin = System.nanoTime();
+				if (ds.contains(elm)){
+					found++;
+				}
+				long time = System.nanoTime() - begin;
+				latencies.record(time);
+				elapsed += time;
 			}
 		}
-		return System.currentTimeMillis()-startTime;
+		checkFound(found);
+		return elapsed / 1e6;
+	}
+
+	/**
+	 * Checks that a contains trial found exactly the keys it should have.
+	 *
+	 * @param found the number of searches that found their key
+	 * @throws RuntimeException if found is wrong
+	 */
+	private void checkFound(int found) {
+		int expected = queryList != null ? expectedHits :
+				originalDataList.size();
+		if (found != expected) {
+			throw new RuntimeException("Data item not found in SetTester: " +
+					found + " of " + expected + " found");
+		}
 	}
 
 	/**
 	 * Time how long it take to search for items within a given range
 	 * from each element.
 	 * 
+	 * As in evaluateBuild, latencies may be null to time only the whole
+	 * trial.
+	 *
 	 * @param ds the data structure to evaluate
+	 * @param latencies records the time of each range search (nanoseconds),
+	 * or null
 	 * @return the time (milliseconds) for range search
 	 */
-	public long evaluateRangeSearch(SetTesterADT<Integer> ds) {
-		// Saves the time the method starts and returns the time the method
-		// took to run, checking for a RuntimeException along the way
-		long startTime = System.currentTimeMillis();
+	public double evaluateRangeSearch(SetTesterADT<Integer> ds,
+			LatencyHistogram latencies) {
+		if (latencies == null) {
+			long startTime = System.nanoTime();
+			for (Integer elm : originalDataList) {
+				ds.subSet(elm - 10, elm + 10);
+			}
+			return (System.nanoTime() - startTime) / 1e6;
+		}
+		long total = 0;
 		for (Integer elm : originalDataList) {
+			long begin = System.nanoTime();
 			ds.subSet(elm - 10, elm + 10);
+			long time = System.nanoTime() - begin;
+			latencies.record(time);
+			total += time;
+		}
+		return total / 1e6;
+	}
+
+	/**
+	 * Times adding every data item to the int tree with add(int).
+	 *
+	 * @param intTree the int tree to evaluate
+	 * @param latencies records the time of each add (nanoseconds), or null
+	 * @return the time (milliseconds) to build the tree
+	 */
+	public double evaluateBuild(IntBSTreeSet intTree,
+			LatencyHistogram latencies) {
+		intTree.clear();
+		if (latencies == null) {
+			long startTime = System.nanoTime();
+			for (int elem : originalData) {
+				intTree.add(elem);
+			}
+			return (System.nanoTime() - startTime) / 1e6;
+		}
+		long total = 0;
+		for (int elem : originalData) {
+			long begin = System.nanoTime();
+			intTree.add(elem);
+			long time = System.nanoTime() - begin;
+			latencies.record(time);
+			total += time;
 		}
-		return System.currentTimeMillis()-startTime;
+		return total / 1e6;
+	}
+
+	/**
+	 * Times searching the int tree with contains(int) for the same keys as
+	 * evaluateContainsSearch(SetTesterADT).
+	 *
+	 * @param intTree the int tree filled with data to test
+	 * @param latencies records the time of each contains (nanoseconds), or
+	 * null
+	 * @return elapsed time in milliseconds
+	 * @throws RuntimeException if the wrong number of keys is found
+	 */
+	public double evaluateContainsSearch(IntBSTreeSet intTree,
+			LatencyHistogram latencies) {
+		int[] searches = queries != null ? queries : originalData;
+		int found = 0;
+		long elapsed;
+		if (latencies == null) {
+			long startTime = System.nanoTime();
+			for (int elm : searches){
+				if (intTree.contains(elm)){
+					found++;
+				}
+			}
+			elapsed = System.nanoTime() - startTime;
+		} else {
+			elapsed = 0;
+			for (int elm : searches){
+				long begin = System.nanoTime();
+				if (intTree.contains(elm)){
+					found++;
+				}
+				long time = System.nanoTime() - begin;
+				latencies.record(time);
+				elapsed += time;
+			}
+		}
+		checkFound(found);
+		return elapsed / 1e6;
+	}
+
+	/**
+	 * Times the same range searches as evaluateRangeSearch(SetTesterADT)
+	 * on the int tree with rangeSearch(int, int).
+	 *
+	 * @param intTree the int tree to evaluate
+	 * @param latencies records the time of each range search (nanoseconds),
+	 * or null
+	 * @return the time (milliseconds) for range search
+	 */
+	public double evaluateRangeSearch(IntBSTreeSet intTree,
+			LatencyHistogram latencies) {
+		if (latencies == null) {
+			long startTime = System.nanoTime();
+			for (int elm : originalData) {
+				intTree.rangeSearch(elm - 10, elm + 10);
+			}
+			return (System.nanoTime() - startTime) / 1e6;
+		}
+		long total = 0;
+		for (int elm : originalData) {
+			long begin = System.nanoTime();
+			intTree.rangeSearch(elm - 10, elm + 10);
+			long time = System.nanoTime() - begin;
+			latencies.record(time);
+			total += time;
+		}
+		return total / 1e6;
 	}
 
 	/**
@@ -291,6 +938,7 @@ public class SetTesterMain {
 	 * @param bsTreeResult evaluate results of bsTree
 	 * @param bsTreeBResult evaluate results of bsTreeB
 	 * @param rbTreeResult evaluate results of rbTree
+	 * @param intTreeBResult evaluate results of intTreeB
 	 * @param rebalanceThreshold the integer indicating when to rebalance
 	 * the BSTreeB data structure
 	 */
@@ -299,6 +947,7 @@ public class SetTesterMain {
 			Stats bsTreeResult,
 			Stats bsTreeBResult,
 			Stats rbTreeResult,
+			Stats intTreeBResult,
 			int rebalanceThreshold) {
 
 		// DISPLAY IF THESE RESULTS ARE FOR SORTED OR RANDOM DATA
@@ -310,40 +959,115 @@ public class SetTesterMain {
 				originalDataList.size() + "  #Trials:" + numOfTrials
 				+ "  Thresh:" + rebalanceThreshold);
 		System.out.println("Tester D.S.(ms):\t   Build Tree\tContains " +
-				"Search\t\tRange Search");
+				"Search\t\tRange Search\t  Bulk Build");
 		System.out.println("=================================================" +
-				"===========================");
+				"=========================================");
 
 		// DISPLAY RESULTS FOR ARRAY LIST
-		System.out.printf("ArrayListSet:\t\t%13f\t%14f\t%20f\n",
+		System.out.printf("ArrayListSet:\t\t%13f\t%14f\t%20f\t%s\n",
 				listResult.getBuildMean(), 
 				listResult.getContainsSearchMean(),
-				listResult.getRangeSearchMean());
+				listResult.getRangeSearchMean(),
+				formatBulkBuild(listResult.getBulkBuildMean()));
 		System.out.println("-------------------------------------------------" +
-				"---------------------------");
+				"-----------------------------------------");
 
 		// DISPLAY RESULTS FOR BINARY SEARCH TREE (no rebalancing)
-		System.out.printf("BSTreeSet:\t\t%13f\t%14f\t%20f\n",
+		System.out.printf("BSTreeSet:\t\t%13f\t%14f\t%20f\t%s\n",
 				bsTreeResult.getBuildMean(), 
 				bsTreeResult.getContainsSearchMean(),
-				bsTreeResult.getRangeSearchMean());
+				bsTreeResult.getRangeSearchMean(),
+				formatBulkBuild(bsTreeResult.getBulkBuildMean()));
 		System.out.println("-------------------------------------------------" +
-				"---------------------------");
+				"-----------------------------------------");
 
 		// DISPLAY RESULTS FOR BINARY SEARCH TREE (w/rebalancing)
-		System.out.printf("BSTreeBSet:\t\t%13f\t%14f\t%20f\n",
+		System.out.printf("BSTreeBSet:\t\t%13f\t%14f\t%20f\t%s\n",
 				bsTreeBResult.getBuildMean(), 
 				bsTreeBResult.getContainsSearchMean(),
-				bsTreeBResult.getRangeSearchMean());
+				bsTreeBResult.getRangeSearchMean(),
+				formatBulkBuild(bsTreeBResult.getBulkBuildMean()));
 		System.out.println("-------------------------------------------------" +
-				"---------------------------");
+				"-----------------------------------------");
 
 		// DISPLAY RESULTS FOR RED-BLACK TREE (TreeSet)
-		System.out.printf("RBTreeSet:\t\t%13f\t%14f\t%20f\n",
+		System.out.printf("RBTreeSet:\t\t%13f\t%14f\t%20f\t%s\n",
 				rbTreeResult.getBuildMean(), 
 				rbTreeResult.getContainsSearchMean(),
-				rbTreeResult.getRangeSearchMean());
+				rbTreeResult.getRangeSearchMean(),
+				formatBulkBuild(rbTreeResult.getBulkBuildMean()));
+		System.out.println("-------------------------------------------------" +
+				"-----------------------------------------");
+
+		// DISPLAY RESULTS FOR INT BINARY SEARCH TREE (w/rebalancing)
+		System.out.printf("IntBSTreeBSet:\t\t%13f\t%14f\t%20f\t%s\n",
+				intTreeBResult.getBuildMean(), 
+				intTreeBResult.getContainsSearchMean(),
+				intTreeBResult.getRangeSearchMean(),
+				formatBulkBuild(intTreeBResult.getBulkBuildMean()));
+		System.out.println("=================================================" +
+				"=========================================");
+	}
+
+	/**
+	 * Display the latency percentiles of single build, contains search and
+	 * range search operations for each data structure, in nanoseconds.
+	 *
+	 * @param sorted indicates if the data was sorted for these results
+	 * @param names the data structure names, one per row group
+	 * @param results the evaluation results, in the same order as names
+	 */
+	public void displayLatencyTable(boolean sorted, String[] names,
+			Stats[] results) {
+		if (sorted) System.out.print("SORTED ");
+		else System.out.print("RANDOM ");
+		System.out.println("DATA LATENCIES:(ns per operation)    #items:" +
+				originalDataList.size() + "  #Trials:" + numOfTrials +
+				"  #Warmup:" + numOfWarmupTrials);
+		System.out.printf("%-16s%-10s%10s%10s%10s%10s%10s%12s%12s\n",
+				"Tester D.S.", "Op", "min", "p50", "p90", "p99", "p99.9",
+				"max", "stddev");
+		System.out.println("=================================================" +
+				"=========================================");
+		for (int i = 0; i < names.length; i++) {
+			printLatencyRow(names[i], "build", results[i].getBuildLatency());
+			printLatencyRow("", "contains",
+					results[i].getContainsSearchLatency());
+			printLatencyRow("", "range", results[i].getRangeSearchLatency());
+			if (i + 1 < names.length) {
+				System.out.println("---------------------------------------" +
+						"---------------------------------------------------");
+			}
+		}
 		System.out.println("=================================================" +
-				"===========================");
+				"=========================================");
+	}
+
+	/**
+	 * Prints one row of the latency table.
+	 *
+	 * @param name the data structure name, or blank
+	 * @param op the operation name
+	 * @param h the operation's latency histogram
+	 */
+	private static void printLatencyRow(String name, String op,
+			LatencyHistogram h) {
+		System.out.printf("%-16s%-10s%10d%10d%10d%10d%10d%12d%12.1f\n",
+				name, op, h.getMin(), h.getValueAtPercentile(50),
+				h.getValueAtPercentile(90), h.getValueAtPercentile(99),
+				h.getValueAtPercentile(99.9), h.getMax(),
+				h.getStdDeviation());
+	}
+
+	/**
+	 * Formats a bulk build mean for the result table, or n/a if the data
+	 * structure has no bulk build.
+	 *
+	 * @param mean the mean bulk build time, NaN if there were no trials
+	 * @return the formatted column
+	 */
+	private static String formatBulkBuild(double mean) {
+		if (Double.isNaN(mean)) return String.format("%12s", "n/a");
+		return String.format("%12f", mean);
 	}
 }
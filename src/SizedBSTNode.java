@@ -0,0 +1,59 @@
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             SizedBSTNode.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * BSTNode that also records the number of keys in its subtree, for trees
+ * that answer order-statistic queries. BSTNode itself must not change, so
+ * the count lives in this subclass, and trees that do not track sizes keep
+ * using plain BSTNodes.
+ */
+class SizedBSTNode<K> extends BSTNode<K> {
+
+    /** Number of keys in the subtree rooted here, including this one */
+    private int size;
+
+    /**
+     * Constructs a new leaf node containing k.
+     *
+     * @param k the key
+     */
+    SizedBSTNode(K k) {
+        super(k);
+        size = 1;
+    }
+
+    /**
+     * Returns the number of keys in this node's subtree.
+     *
+     * @return the subtree size
+     */
+    int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the number of keys in this node's subtree.
+     *
+     * @param s the subtree size
+     */
+    void setSize(int s) {
+        size = s;
+    }
+}
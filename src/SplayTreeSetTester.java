@@ -0,0 +1,276 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             SplayTreeSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * SetTesterADT implementation using a splay tree. Every add and contains
+ * splays the key it searched for (or the last node on its search path) to
+ * the root, so keys that are searched for often stay near the top and cost
+ * little to find, while keys that are never searched for sink.
+ *
+ * <p>The splay is top-down (Sleator and Tarjan): a single pass from the
+ * root that takes the zig-zig and zig-zag steps on the way down and hangs
+ * the nodes it passes on a left and a right tree, which are joined under
+ * the new root at the end. It needs no parent links or stack, so BSTNode
+ * is used unchanged; its height and balance factor are not maintained.</p>
+ *
+ * <p>Any sequence of m operations on a tree of n keys costs O((m + n) log
+ * n) in total, and a query stream where a few keys are most popular costs
+ * about as much as the best static tree for it. A single operation can
+ * still take O(n), for example searching for the smallest key after
+ * adding keys in ascending order, which leaves the tree a chain. contains
+ * changes the tree, so even searches must not run concurrently.</p>
+ */
+public class SplayTreeSetTester<K extends Comparable<K>>
+        implements SetTesterADT<K>, RangeSearchADT<K> {
+
+    /** Root of this tree */
+    private BSTNode<K> root;
+
+    /** Number of keys in this tree */
+    private int numKeys;
+
+    /**
+     * Constructs an empty splay tree.
+     */
+    public SplayTreeSetTester() {
+        root = null;
+        numKeys = 0;
+    }
+
+    /**
+     * Splays the tree rooted at t for key: the node with key, or else the
+     * last node on key's search path, becomes the root.
+     *
+     * @param t the root of a non-empty tree
+     * @param key the key to search for
+     * @return the new root
+     */
+    private BSTNode<K> splay(BSTNode<K> t, K key) {
+        // The left tree holds keys smaller than key, the right tree larger
+        // ones; leftMax and rightMin are where the next nodes are hung
+        BSTNode<K> leftRoot = null;
+        BSTNode<K> leftMax = null;
+        BSTNode<K> rightRoot = null;
+        BSTNode<K> rightMin = null;
+        while (true) {
+            int cmp = key.compareTo(t.getKey());
+            if (cmp < 0) {
+                BSTNode<K> l = t.getLeftChild();
+                if (l == null) break;
+                if (key.compareTo(l.getKey()) < 0) {
+                    // Zig-zig: rotates right before linking
+                    t.setLeftChild(l.getRightChild());
+                    l.setRightChild(t);
+                    t = l;
+                    if (t.getLeftChild() == null) break;
+                }
+                // Links t into the right tree
+                if (rightMin == null) {
+                    rightRoot = t;
+                } else {
+                    rightMin.setLeftChild(t);
+                }
+                rightMin = t;
+                t = t.getLeftChild();
+            } else if (cmp > 0) {
+                BSTNode<K> r = t.getRightChild();
+                if (r == null) break;
+                if (key.compareTo(r.getKey()) > 0) {
+                    // Zag-zag: rotates left before linking
+                    t.setRightChild(r.getLeftChild());
+                    r.setLeftChild(t);
+                    t = r;
+                    if (t.getRightChild() == null) break;
+                }
+                // Links t into the left tree
+                if (leftMax == null) {
+                    leftRoot = t;
+                } else {
+                    leftMax.setRightChild(t);
+                }
+                leftMax = t;
+                t = t.getRightChild();
+            } else {
+                break;
+            }
+        }
+        // Joins the left tree, t and the right tree
+        if (leftMax != null) {
+            leftMax.setRightChild(t.getLeftChild());
+            t.setLeftChild(leftRoot);
+        }
+        if (rightMin != null) {
+            rightMin.setLeftChild(t.getRightChild());
+            t.setRightChild(rightRoot);
+        }
+        return t;
+    }
+
+    /**
+     * Adds key to the tree as the new root, splitting the old tree around
+     * it after splaying.
+     *
+     * @param key the key to add
+     * @throws DuplicateKeyException if the key is a duplicate
+     */
+    @Override
+    public void add(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        BSTNode<K> n = new BSTNode<K>(key);
+        if (root == null) {
+            root = n;
+            numKeys = 1;
+            return;
+        }
+        root = splay(root, key);
+        int cmp = key.compareTo(root.getKey());
+        if (cmp == 0) {
+            throw new DuplicateKeyException();
+        }
+        if (cmp < 0) {
+            n.setLeftChild(root.getLeftChild());
+            n.setRightChild(root);
+            root.setLeftChild(null);
+        } else {
+            n.setRightChild(root.getRightChild());
+            n.setLeftChild(root);
+            root.setRightChild(null);
+        }
+        root = n;
+        numKeys++;
+    }
+
+    /**
+     * Returns true iff the key is in the tree, splaying it, or the last
+     * node on its search path, to the root.
+     *
+     * @param key the key to search
+     * @return true iff the tree contains the key
+     */
+    @Override
+    public boolean contains(K key) {
+        if (key == null) throw new IllegalArgumentException();
+        if (root == null) return false;
+        root = splay(root, key);
+        return key.compareTo(root.getKey()) == 0;
+    }
+
+    @Override
+    public List<K> subSet(K minValue, K maxValue) {
+        return subSetInto(minValue, maxValue, new ArrayList<K>());
+    }
+
+    /**
+     * Passes each key in [minValue, maxValue) to action in sorted order.
+     * minValue is splayed first, so the range starts at or next to the
+     * root and only the subtrees that can hold keys in the range are
+     * visited.
+     */
+    @Override
+    public void forEachInRange(K minValue, K maxValue,
+            Consumer<? super K> action) {
+        if (minValue == null || maxValue == null || action == null ||
+                minValue.compareTo(maxValue) > 0) {
+            throw new IllegalArgumentException();
+        }
+        if (root == null) return;
+        root = splay(root, minValue);
+        ArrayDeque<BSTNode<K>> stack = new ArrayDeque<BSTNode<K>>();
+        BSTNode<K> n = root;
+        while (n != null || !stack.isEmpty()) {
+            // Descends left only while the left subtree can hold keys >= min
+            while (n != null) {
+                stack.push(n);
+                n = n.getKey().compareTo(minValue) > 0 ? n.getLeftChild() :
+                        null;
+            }
+            n = stack.pop();
+            K key = n.getKey();
+            if (key.compareTo(maxValue) >= 0) {
+                return;
+            }
+            if (key.compareTo(minValue) >= 0) {
+                action.accept(key);
+            }
+            n = n.getRightChild();
+        }
+    }
+
+    @Override
+    public List<K> subSetInto(K minValue, K maxValue, List<K> result) {
+        if (result == null) throw new IllegalArgumentException();
+        result.clear();
+        forEachInRange(minValue, maxValue, result::add);
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        numKeys = 0;
+    }
+
+    @Override
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * Displays the top levels of the tree in pre-order in the same format
+     * as BSTreeSetTester, without heights or balance factors, which are not
+     * maintained.
+     */
+    @Override
+    public void displayTree(int maxDisplayLevels) {
+        System.out.println("---------------------------" +
+                "SplayTreeSet Display-----------------------------");
+        displayTreeHelper(root, 0, maxDisplayLevels);
+    }
+
+    private void displayTreeHelper(BSTNode<K> n, int curDepth,
+            int maxDisplayLevels) {
+        if (maxDisplayLevels <= curDepth) return;
+        if (n == null)
+            return;
+        for (int i = 0; i < curDepth; i++) {
+            System.out.print("|--");
+        }
+        System.out.println(n.getKey());
+        displayTreeHelper(n.getLeftChild(), curDepth + 1, maxDisplayLevels);
+        displayTreeHelper(n.getRightChild(), curDepth + 1, maxDisplayLevels);
+    }
+
+    /**
+     * Returns an in-order iterator. Iterating does not splay, so the tree
+     * must not be searched or changed until the iteration is done.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<K> iterator() {
+        return new BSTIterator<K>(root);
+    }
+}
@@ -12,8 +12,14 @@ import java.util.List;
  * Each list item is the time it took to complete that particular
  * evaluation operation.
  * 
- * Use the getBuildMean(), getContainsSearchMean(), and getRangeSearchMean()
- * method to get the average of all trials added for that operation.
+ * Use the getBuildMean(), getContainsSearchMean(), getRangeSearchMean() and
+ * getBulkBuildMean() method to get the average of all trials added for that
+ * operation.
+ * 
+ * Per-operation latencies (nanoseconds) for build, contains search and
+ * range search are also recorded into a LatencyHistogram each, for the
+ * percentiles and standard deviation of single operations. Warmup trials
+ * should not be added at all.
  * 
  * @author CS367
  */
@@ -28,6 +34,21 @@ class Stats {
 	/** List of rangeSearch trial run times (milliseconds) */
 	List<Double> rangeSearchStats;
 
+	/**
+	 * List of bulk build trial run times (milliseconds). Empty for data
+	 * structures that have no bulk build.
+	 */
+	List<Double> bulkBuildStats;
+
+	/** Latency of each add during build trials (nanoseconds) */
+	LatencyHistogram buildLatency;
+
+	/** Latency of each contains during contains search trials (nanoseconds) */
+	LatencyHistogram containsSearchLatency;
+
+	/** Latency of each range search during range search trials (nanoseconds) */
+	LatencyHistogram rangeSearchLatency;
+
 	/** 
 	 * Create place to store timing results for build and search times
 	 * for a given data structure.
@@ -36,6 +57,10 @@ class Stats {
 		buildStats = new ArrayList<Double>();
 		containsSearchStats = new ArrayList<Double>();
 		rangeSearchStats = new ArrayList<Double>();
+		bulkBuildStats = new ArrayList<Double>();
+		buildLatency = new LatencyHistogram();
+		containsSearchLatency = new LatencyHistogram();
+		rangeSearchLatency = new LatencyHistogram();
 	}
 
 	/**
@@ -65,6 +90,15 @@ class Stats {
 		rangeSearchStats.add(time);
 	}
 
+	/**
+	 * Add one evaluation trial result (time) for bulk building structure.
+	 *
+	 * @param time The time in milliseconds to bulk build the structure
+	 */
+	public void addBulkBuildStat(double time){
+		bulkBuildStats.add(time);
+	}
+
 	/**
 	 * Return the average(mean) time of building (filling structure with data)
 	 * @return mean time in milliseconds to build (add data) data structure
@@ -89,6 +123,39 @@ class Stats {
 		return getMean(rangeSearchStats);
 	}
 
+	/**
+	 * Return the average(mean) time of bulk building
+	 * @return mean time in milliseconds to bulk build the data structure,
+	 * or NaN if no bulk build trials were added
+	 */
+	public double getBulkBuildMean(){
+		return getMean(bulkBuildStats);
+	}
+
+	/**
+	 * Return the histogram of single add latencies from the build trials.
+	 * @return build latencies in nanoseconds
+	 */
+	public LatencyHistogram getBuildLatency(){
+		return buildLatency;
+	}
+
+	/**
+	 * Return the histogram of single contains latencies.
+	 * @return contains search latencies in nanoseconds
+	 */
+	public LatencyHistogram getContainsSearchLatency(){
+		return containsSearchLatency;
+	}
+
+	/**
+	 * Return the histogram of single range search latencies.
+	 * @return range search latencies in nanoseconds
+	 */
+	public LatencyHistogram getRangeSearchLatency(){
+		return rangeSearchLatency;
+	}
+
 	/**
 	 * Calculate the average time for the operation based on the list
 	 * of time entries for that operation.
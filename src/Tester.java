@@ -1,28 +1,2073 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Checks the set testers against java.util.TreeSet on the bundled data
+ * files. For every data item the range [item - 10, item + 10) is searched,
+ * the same ranges SetTesterMain times, and the result must equal
+ * TreeSet.subSet.
+ *
+ * <pre>java Tester random_100.txt random_1000.txt</pre>
+ *
+ * With no arguments the four bundled random_N.txt files are checked.
+ * BSTreeSetTester, IntBSTreeSet and OffHeapIntBSTreeSet must give the same
+ * range searches from several threads at once as from one.
+ * ConcurrentBSTreeSetTester is also stress tested on each file, with reader
+ * threads searching while the data is added, and its reads must finish
+ * while an add is stalled halfway, and ConcurrentSkipListSetTester
+ * with several threads adding the same data at once, and the fork-join
+ * rebuild is compared node by node with the sequential one. IntDataLoader
+ * must read each file, and its binary copy, exactly as Scanner does.
+ * Every DataGenerator distribution is checked for distinct even keys in the
+ * promised order, and its queries for the requested number of hits.
+ * LatencyHistogram must report exact counts, min, max, mean and standard
+ * deviation, percentiles within one bucket of the exact ones, and the
+ * same after merging; SetTesterMain must leave warmup trials out of Stats.
+ * EytzingerIntSet is checked with every data item, its neighbours and the
+ * same ranges, and exhaustively on every set size up to 64.
+ * BPlusTreeSetTester is checked the same way at several fanouts, from the
+ * file order and from sorted order, along with its iterator and duplicates.
+ * OffHeapIntBSTreeSet, with tiny chunks, must match IntBSTreeSet key for key
+ * and free its memory on clear. BloomFilterSetTester must answer exactly
+ * like the set it wraps while its filter grows from a tiny size, must turn
+ * away most misses and must forget every key on clear. SplayTreeSetTester
+ * is checked like the B+-tree, including after sorted adds make it a chain.
+ * In AVL_ROTATION mode every stored height and balance factor must match
+ * the tree's real shape and stay within the threshold after every add.
+ * With subtree sizes tracked, in every rebalance mode, after bulkLoad and
+ * after a fork-join rebuild, every stored size must be exact and rank,
+ * select and countInRange must agree with the sorted data, as must the
+ * RBTreeSetTester and ArrayListSetTester baselines on the smaller files.
+ * BSTreeSetTester.containsBatch must answer every sorted batch, of every
+ * size, with repeats and misses, exactly as contains does.
+ * BSTreeSnapshot must restore each tree's keys and settings, with exact
+ * heights, and must refuse a snapshot with a changed byte or cut short.
+ * WalSetTester must recover exactly the logged keys after a close, at least
+ * the synced ones after a simulated crash, every whole record before a torn
+ * one, logged clears, and the same keys when a checkpoint is cut off
+ * before its log is truncated. Closing it while its flusher may be forcing
+ * the log must neither fail nor lose a key.
+ */
 public class Tester {
-	public static void main(String[] args){
-		
-		BSTreeSetTester<Integer> bst = new BSTreeSetTester<Integer>(5);
-		
-		//int[] arr = new int[]{9, 8, 7, 6, 5, 4, 3, 2, 1};
-		//for (int i=0; i<arr.length; i++){
-		//	bst.add(arr[i]);
-		//}
-//		bst.rebalance();
-//		bst.displayTree(50);
-//		System.exit(0);
-		
-		for (int i=1; i<=1024; i++){
-			bst.add(i);
-		}
-		
-		//bst.rebalance();
-		//System.out.println("---------------------------AFTER REBALANCE");
-		bst.displayTree(10000);
-		//bst.displayTree(50);
-		
-//		bst.rebalance();
-//		bst.displayTree(50);
-
-	}	
+
+	/** Data files checked when no arguments are given */
+	private static final String[] BUNDLED_FILES = { "random_100.txt",
+			"random_1000.txt", "random_10000.txt", "random_40000.txt" };
+
+	/** Threads searching while ConcurrentBSTreeSetTester adds the data */
+	private static final int READER_THREADS = 3;
+
+	/** Threads adding to ConcurrentSkipListSetTester at once */
+	private static final int WRITER_THREADS = 4;
+
+	/** Times WalSetTester is opened and closed under a running flusher */
+	private static final int WAL_CLOSE_ROUNDS = 200;
+
+	public static void main(String[] args) throws FileNotFoundException {
+		String[] files = args.length > 0 ? args : BUNDLED_FILES;
+		int failures = checkDataGenerator();
+		failures += checkLatencyHistogram();
+		failures += checkNonBlockingReads();
+		failures += checkWalCloseWhileFlushing();
+		for (String file : files) {
+			List<Integer> data = readData(file);
+			failures += checkLoader(file, data);
+			failures += checkWarmupTrials(file, data);
+			failures += checkRangeSearch(file, data);
+			failures += checkConcurrentRangeSearch(file, data);
+			failures += checkConcurrentContains(file, data);
+			failures += checkConcurrentAdd(file, data);
+			failures += checkParallelRebuild(file, data);
+			failures += checkEytzinger(file, data);
+			failures += checkBPlusTree(file, data);
+			failures += checkOffHeap(file, data);
+			failures += checkBloomFilter(file, data);
+			failures += checkSplayTree(file, data);
+			failures += checkAvlRotation(file, data);
+			failures += checkOrderStatistics(file, data);
+			failures += checkContainsBatch(file, data);
+			failures += checkSnapshot(file, data);
+			failures += checkWal(file, data);
+		}
+		if (failures > 0) {
+			System.out.println(failures + " check(s) FAILED");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	/**
+	 * Reads the integers in a data file, in file order.
+	 *
+	 * @param file the data file name
+	 * @return the integers in the file
+	 * @throws FileNotFoundException if the file does not exist
+	 */
+	static List<Integer> readData(String file) throws FileNotFoundException {
+		List<Integer> data = new ArrayList<Integer>();
+		Scanner fileScnr = new Scanner(new File(file));
+		while (fileScnr.hasNextInt()) {
+			data.add(fileScnr.nextInt());
+		}
+		fileScnr.close();
+		return data;
+	}
+
+	/**
+	 * Compares subSet, forEachInRange and subSetInto of each
+	 * BSTreeSetTester configuration with TreeSet.subSet, and the same for
+	 * RBTreeSetTester and ArrayListSetTester on the smaller files and for
+	 * IntBSTreeSet's primitive range searches. The unbalanced tree is only
+	 * built from the file order, since sorted input turns it into a chain
+	 * that makes every search O(n).
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkRangeSearch(String file, List<Integer> data) {
+		List<Integer> sorted = new ArrayList<Integer>(data);
+		Collections.sort(sorted);
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+
+		int failures = 0;
+		failures += checkRangeSearch(file + " BSTreeSet",
+				new BSTreeSetTester<Integer>(0), data, expected);
+		failures += checkRangeSearch(file + " BSTreeBSet",
+				new BSTreeSetTester<Integer>(2), data, expected);
+		failures += checkRangeSearch(file + " BSTreeBSet sorted",
+				new BSTreeSetTester<Integer>(2), sorted, expected);
+		failures += checkRangeSearch(file + " BSTreeBSet partial sorted",
+				new BSTreeSetTester<Integer>(2,
+						BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD),
+				sorted, expected);
+		failures += checkRangeSearch(file + " BSTreeBSet avl sorted",
+				new BSTreeSetTester<Integer>(1,
+						BSTreeSetTester.RebalanceMode.AVL_ROTATION),
+				sorted, expected);
+		if (data.size() <= 10000) {
+			failures += checkRangeSearch(file + " RBTreeSet",
+					new RBTreeSetTester<Integer>(), data, expected);
+			failures += checkRangeSearch(file + " ArrayListSet",
+					new ArrayListSetTester<Integer>(), data, expected);
+		}
+		failures += checkIntRangeSearch(file + " IntBSTreeBSet", data,
+				expected);
+		return failures;
+	}
+
+	/**
+	 * Adds data to set in order, then compares every range search around
+	 * a data item with TreeSet.subSet: subSet, and for a RangeSearchADT
+	 * also forEachInRange and subSetInto. subSetInto reuses one list that
+	 * starts out holding stale keys. The forEachInRange action searches the
+	 * set again for each key it is passed. ArrayListSetTester returns keys
+	 * in insertion order, so its results are sorted before comparing.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param set the empty set to check
+	 * @param data the keys to add, in insertion order
+	 * @param expected the same keys in a TreeSet
+	 * @return 1 if a range search differed, 0 otherwise
+	 */
+	private static int checkRangeSearch(String name,
+			SetTesterADT<Integer> set, List<Integer> data,
+			TreeSet<Integer> expected) {
+		for (Integer elem : data) {
+			set.add(elem);
+		}
+		boolean unordered = set instanceof ArrayListSetTester;
+		@SuppressWarnings("unchecked")
+		RangeSearchADT<Integer> range = set instanceof RangeSearchADT ?
+				(RangeSearchADT<Integer>) set : null;
+		List<Integer> reused = new ArrayList<Integer>(
+				Arrays.asList(-1, -2, -3));
+		for (Integer elem : data) {
+			int min = elem - 10;
+			int max = elem + 10;
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(min, max));
+			String method = "subSet";
+			List<Integer> actual = set.subSet(min, max);
+			if (range != null && sameKeys(actual, wanted, unordered)) {
+				method = "forEachInRange";
+				List<Integer> visited = new ArrayList<Integer>();
+				List<Integer> nested = new ArrayList<Integer>();
+				range.forEachInRange(min, max, key -> {
+					visited.add(key);
+					range.forEachInRange(key, key + 1, nested::add);
+				});
+				actual = nested.equals(visited) ? visited :
+						Arrays.asList(-1);
+			}
+			if (range != null && sameKeys(actual, wanted, unordered)) {
+				method = "subSetInto";
+				actual = range.subSetInto(min, max, reused);
+				if (actual != reused) actual = Arrays.asList(-1);
+			}
+			if (!sameKeys(actual, wanted, unordered)) {
+				System.out.println(name + ": " + method + "(" + min + ", " +
+						max + ") returned " + actual + ", expected " +
+						wanted);
+				return 1;
+			}
+		}
+		System.out.println(name + ": " + (range == null ? "subSet" :
+				"subSet, forEachInRange, subSetInto") + " OK");
+		return 0;
+	}
+
+	/**
+	 * Returns true iff actual equals the sorted list wanted, after sorting
+	 * a copy of actual if it is unordered.
+	 *
+	 * @param actual the keys returned
+	 * @param wanted the sorted keys expected
+	 * @param unordered whether actual may be in any order
+	 * @return true iff the keys match
+	 */
+	private static boolean sameKeys(List<Integer> actual,
+			List<Integer> wanted, boolean unordered) {
+		if (unordered) {
+			actual = new ArrayList<Integer>(actual);
+			Collections.sort(actual);
+		}
+		return actual.equals(wanted);
+	}
+
+	/**
+	 * Adds data to an IntBSTreeSet and compares rangeSearch and the
+	 * primitive forEachInRange around every data item with TreeSet.subSet.
+	 * As in checkRangeSearch, the forEachInRange action searches the tree
+	 * again for each key.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param data the keys to add, in insertion order
+	 * @param expected the same keys in a TreeSet
+	 * @return 1 if a range search differed, 0 otherwise
+	 */
+	private static int checkIntRangeSearch(String name, List<Integer> data,
+			TreeSet<Integer> expected) {
+		IntBSTreeSet tree = new IntBSTreeSet(2);
+		for (Integer elem : data) {
+			tree.add(elem.intValue());
+		}
+		for (Integer elem : data) {
+			int min = elem - 10;
+			int max = elem + 10;
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(min, max));
+			List<Integer> searched = new ArrayList<Integer>();
+			for (int key : tree.rangeSearch(min, max)) {
+				searched.add(key);
+			}
+			List<Integer> visited = new ArrayList<Integer>();
+			List<Integer> nested = new ArrayList<Integer>();
+			tree.forEachInRange(min, max, key -> {
+				visited.add(key);
+				tree.forEachInRange(key, key + 1, nested::add);
+			});
+			String method = !searched.equals(wanted) ? "rangeSearch" :
+					!visited.equals(wanted) || !nested.equals(wanted) ?
+					"forEachInRange" : null;
+			if (method != null) {
+				System.out.println(name + ": " + method + "(" + min + ", " +
+						max + ") returned " + (method.equals("rangeSearch") ?
+						searched : visited) + ", expected " + wanted);
+				return 1;
+			}
+		}
+		System.out.println(name + ": rangeSearch, forEachInRange OK");
+		return 0;
+	}
+
+	/**
+	 * Builds a BSTreeSetTester, an IntBSTreeSet and an OffHeapIntBSTreeSet
+	 * on this thread, then has READER_THREADS other threads and this one
+	 * run every range search of checkRangeSearch on them at the same time, each from a different
+	 * starting item, comparing each result with TreeSet.subSet.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkConcurrentRangeSearch(String file,
+			final List<Integer> data) {
+		String name = file + " concurrent range searches";
+		final TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		final BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(
+				2, BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD);
+		final IntBSTreeSet intTree = new IntBSTreeSet(2);
+		final OffHeapIntBSTreeSet offHeap = new OffHeapIntBSTreeSet(2);
+		for (Integer elem : data) {
+			tree.add(elem);
+			intTree.add(elem.intValue());
+			offHeap.add(elem.intValue());
+		}
+		final AtomicInteger errors = new AtomicInteger();
+		final String[] firstError = new String[1];
+
+		Thread[] readers = new Thread[READER_THREADS + 1];
+		for (int t = 0; t < readers.length; t++) {
+			final int offset = t * data.size() / readers.length;
+			readers[t] = new Thread(() -> {
+				List<Integer> found = new ArrayList<Integer>();
+				for (int i = 0; i < data.size() && errors.get() == 0; i++) {
+					int elem = data.get((offset + i) % data.size());
+					List<Integer> wanted = new ArrayList<Integer>(
+							expected.subSet(elem - 10, elem + 10));
+					tree.subSetInto(elem - 10, elem + 10, found);
+					if (!found.equals(wanted)) {
+						report(errors, firstError, "BSTreeSet range " +
+								(elem - 10) + " returned " + found);
+					}
+					found.clear();
+					intTree.forEachInRange(elem - 10, elem + 10, found::add);
+					if (!found.equals(wanted)) {
+						report(errors, firstError, "IntBSTreeSet range " +
+								(elem - 10) + " returned " + found);
+					}
+					found.clear();
+					offHeap.forEachInRange(elem - 10, elem + 10, found::add);
+					if (!found.equals(wanted)) {
+						report(errors, firstError, "OffHeapIntBSTreeSet " +
+								"range " + (elem - 10) + " returned " + found);
+					}
+				}
+			});
+		}
+		// The last reader runs on this thread, which built the trees
+		for (int t = 0; t < READER_THREADS; t++) {
+			readers[t].start();
+		}
+		readers[READER_THREADS].run();
+		for (int t = 0; t < READER_THREADS; t++) {
+			try {
+				readers[t].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+		}
+		offHeap.clear();
+		if (errors.get() > 0) {
+			System.out.println(name + ": " + firstError[0]);
+			return 1;
+		}
+		System.out.println(name + ": OK (" + readers.length + " threads)");
+		return 0;
+	}
+
+	/**
+	 * A key whose compareTo, on the one key made with a gate, stops until
+	 * the gate opens, so that a test can hold a write in the middle.
+	 */
+	private static class StallingKey implements Comparable<StallingKey> {
+
+		/** The key's value */
+		final int value;
+
+		/** Counted down when compareTo starts waiting, or null */
+		final CountDownLatch entered;
+
+		/** The gate compareTo waits for, or null not to wait */
+		final CountDownLatch gate;
+
+		StallingKey(int value, CountDownLatch entered, CountDownLatch gate) {
+			this.value = value;
+			this.entered = entered;
+			this.gate = gate;
+		}
+
+		@Override
+		public int compareTo(StallingKey other) {
+			if (gate != null) {
+				entered.countDown();
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return Integer.compare(value, other.value);
+		}
+	}
+
+	/**
+	 * Checks that ConcurrentBSTreeSetTester readers do not wait for
+	 * writers. A writer thread adds a StallingKey that stops inside the
+	 * add, holding the write in progress; contains, subSet and size must
+	 * then still return, on another thread within 10 seconds, the set as
+	 * it was before the add. In every rebalance mode.
+	 *
+	 * @return the number of failed checks
+	 */
+	static int checkNonBlockingReads() {
+		for (BSTreeSetTester.RebalanceMode mode :
+				BSTreeSetTester.RebalanceMode.values()) {
+			String name = "Concurrent " + mode + " reads during a write";
+			final ConcurrentBSTreeSetTester<StallingKey> set =
+					new ConcurrentBSTreeSetTester<StallingKey>(1, mode);
+			for (int i = 0; i < 100; i += 2) {
+				set.add(new StallingKey(i, null, null));
+			}
+			CountDownLatch entered = new CountDownLatch(1);
+			CountDownLatch gate = new CountDownLatch(1);
+			Thread writer = new Thread(() ->
+					set.add(new StallingKey(51, entered, gate)));
+			final String[] error = new String[1];
+			Thread reader = new Thread(() -> {
+				for (int i = 0; i < 100; i++) {
+					if (set.contains(new StallingKey(i, null, null)) !=
+							(i % 2 == 0)) {
+						error[0] = "contains(" + i + ") wrong";
+					}
+				}
+				if (set.size() != 50 || set.subSet(new StallingKey(50, null,
+						null), new StallingKey(53, null, null)).size() != 2) {
+					error[0] = "size or subSet saw the stalled add";
+				}
+			});
+			try {
+				writer.start();
+				entered.await();
+				reader.start();
+				reader.join(10000);
+				boolean blocked = reader.isAlive();
+				gate.countDown();
+				writer.join();
+				reader.join();
+				if (blocked) {
+					error[0] = "reads blocked behind the stalled add";
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+			if (error[0] == null &&
+					!set.contains(new StallingKey(51, null, null))) {
+				error[0] = "the stalled add was lost";
+			}
+			if (error[0] != null) {
+				System.out.println(name + ": " + error[0]);
+				return 1;
+			}
+			System.out.println(name + ": readers did not wait OK");
+		}
+		return 0;
+	}
+
+	/**
+	 * Checks that ConcurrentBSTreeSetTester.contains is linearizable while
+	 * one thread adds data (in file order) and READER_THREADS threads search.
+	 * Once add(k) has returned, every contains(k) that starts afterwards must
+	 * be true; a key that is never added must always be false. Both the full
+	 * and the partial rebuild are checked, so readers also race rebalancing.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkConcurrentContains(String file, List<Integer> data) {
+		int failures = 0;
+		for (BSTreeSetTester.RebalanceMode mode :
+				BSTreeSetTester.RebalanceMode.values()) {
+			failures += checkConcurrentContains(file + " Concurrent " + mode,
+					new ConcurrentBSTreeSetTester<Integer>(2, mode), data);
+		}
+		return failures;
+	}
+
+	/**
+	 * Runs the concurrent contains check on one empty tree.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param tree the empty tree to check
+	 * @param data the keys to add, in insertion order
+	 * @return 1 if a search was wrong, 0 otherwise
+	 */
+	private static int checkConcurrentContains(String name,
+			final ConcurrentBSTreeSetTester<Integer> tree,
+			final List<Integer> data) {
+		final TreeSet<Integer> keys = new TreeSet<Integer>(data);
+		final AtomicInteger added = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicLong searches = new AtomicLong();
+		final String[] firstError = new String[1];
+		final int span = keys.last() - keys.first() + 1;
+
+		Thread[] readers = new Thread[READER_THREADS];
+		for (int t = 0; t < READER_THREADS; t++) {
+			final Random rng = new Random(t);
+			readers[t] = new Thread(() -> {
+				long count = 0;
+				while (added.get() < data.size() && errors.get() == 0) {
+					// Every key added before this search started must be found
+					int done = added.get();
+					if (done > 0) {
+						Integer key = data.get(rng.nextInt(done));
+						if (!tree.contains(key)) {
+							report(errors, firstError, "contains(" + key +
+									") false after its add returned");
+						}
+					}
+					// Keys that are never added must never be found
+					int miss = keys.first() + rng.nextInt(span);
+					if (!keys.contains(miss) && tree.contains(miss)) {
+						report(errors, firstError, "contains(" + miss +
+								") true but it was never added");
+					}
+					count += 2;
+				}
+				searches.addAndGet(count);
+			});
+			readers[t].start();
+		}
+
+		for (Integer elem : data) {
+			tree.add(elem);
+			added.incrementAndGet();
+		}
+		for (Thread reader : readers) {
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+		}
+
+		List<Integer> contents = new ArrayList<Integer>();
+		for (Integer key : tree) {
+			contents.add(key);
+		}
+		if (errors.get() == 0 && (tree.size() != keys.size() ||
+				!contents.equals(new ArrayList<Integer>(keys)))) {
+			report(errors, firstError, "final contents differ from the data");
+		}
+		if (errors.get() > 0) {
+			System.out.println(name + ": " + firstError[0]);
+			return 1;
+		}
+		System.out.println(name + ": contains OK (" + searches.get() +
+				" concurrent searches)");
+		return 0;
+	}
+
+	/**
+	 * Counts a failed check, keeping the first message.
+	 *
+	 * @param errors the error count
+	 * @param firstError holds the first message
+	 * @param message the message
+	 */
+	private static void report(AtomicInteger errors, String[] firstError,
+			String message) {
+		synchronized (firstError) {
+			if (firstError[0] == null) firstError[0] = message;
+		}
+		errors.incrementAndGet();
+	}
+
+	/**
+	 * Has WRITER_THREADS threads add every data item to one
+	 * ConcurrentSkipListSetTester at the same time, each in its own random
+	 * order. Every key must be added by exactly one thread, with the others
+	 * getting a DuplicateKeyException, and the result must then pass the
+	 * same subSet checks as the sequential trees.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkConcurrentAdd(String file, final List<Integer> data) {
+		String name = file + " ConcurrentSkipList";
+		final ConcurrentSkipListSetTester<Integer> set =
+				new ConcurrentSkipListSetTester<Integer>();
+		final AtomicInteger successes = new AtomicInteger();
+		final AtomicInteger duplicates = new AtomicInteger();
+
+		Thread[] writers = new Thread[WRITER_THREADS];
+		for (int t = 0; t < WRITER_THREADS; t++) {
+			final List<Integer> order = new ArrayList<Integer>(data);
+			Collections.shuffle(order, new Random(t));
+			writers[t] = new Thread(() -> {
+				for (Integer elem : order) {
+					try {
+						set.add(elem);
+						successes.incrementAndGet();
+					} catch (DuplicateKeyException e) {
+						duplicates.incrementAndGet();
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			try {
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+		}
+
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		List<Integer> contents = new ArrayList<Integer>();
+		for (Integer key : set) {
+			contents.add(key);
+		}
+		if (successes.get() != expected.size() || set.size() != expected.size()
+				|| duplicates.get() != (WRITER_THREADS - 1) * data.size()
+				|| !contents.equals(new ArrayList<Integer>(expected))) {
+			System.out.println(name + ": " + successes.get() + " adds and " +
+					duplicates.get() + " duplicates left " + set.size() +
+					" keys, expected " + expected.size());
+			return 1;
+		}
+		System.out.println(name + ": add OK");
+		for (Integer elem : data) {
+			List<Integer> actual = set.subSet(elem - 10, elem + 10);
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(elem - 10, elem + 10));
+			if (!actual.equals(wanted)) {
+				System.out.println(name + ": subSet(" + (elem - 10) + ", " +
+						(elem + 10) + ") returned " + actual + ", expected " +
+						wanted);
+				return 1;
+			}
+		}
+		System.out.println(name + ": subSet OK");
+		return 0;
+	}
+
+	/**
+	 * Checks that ParallelRebuilder flattens the unbalanced tree built from
+	 * data in file order into the sorted keys, and that building from them
+	 * gives exactly the tree the sequential rebalance() builds: same keys,
+	 * shape, heights and balance factors. A small cutoff makes even the
+	 * smallest file fork.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkParallelRebuild(String file, List<Integer> data) {
+		String name = file + " ParallelRebuilder";
+		BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(0);
+		for (Integer elem : data) {
+			tree.add(elem);
+		}
+		List<Integer> sorted = new ArrayList<Integer>(new TreeSet<Integer>(data));
+		BSTNode<Integer> parallel = forkedRebuild(tree, sorted);
+		if (parallel == null) {
+			System.out.println(name + ": flatten did not return the sorted keys");
+			return 1;
+		}
+		tree.rebalance();
+		if (!sameTree(tree.root, parallel)) {
+			System.out.println(name + ": build differs from rebalance()");
+			return 1;
+		}
+
+		// The same through rebalance() itself
+		BSTreeSetTester<Integer> forked = new BSTreeSetTester<Integer>(0);
+		forked.parallelRebuildThreshold = 1;
+		for (Integer elem : data) {
+			forked.add(elem);
+		}
+		forked.rebalance();
+		if (!sameTree(tree.root, forked.root)) {
+			System.out.println(name + ": parallel rebalance() differs");
+			return 1;
+		}
+		System.out.println(name + ": rebuild OK");
+		return 0;
+	}
+
+	/**
+	 * Flattens and rebuilds tree with ParallelRebuilder, forking down to
+	 * ranges of 4 keys, without changing tree.
+	 *
+	 * @param tree the tree to rebuild
+	 * @param sorted the keys tree should hold, in ascending order
+	 * @return the rebuilt root, or null if flatten returned other keys
+	 */
+	private static <K extends Comparable<K>> BSTNode<K> forkedRebuild(
+			BSTreeSetTester<K> tree, List<K> sorted) {
+		K[] keys = ParallelRebuilder.flatten(tree.root, tree.size(), 4);
+		if (!Arrays.asList(keys).equals(sorted)) {
+			return null;
+		}
+		return ParallelRebuilder.build(tree, keys, 0, keys.length - 1, 4);
+	}
+
+	/**
+	 * Returns true iff the two trees have the same shape and every pair of
+	 * matching nodes has the same key, height and balance factor.
+	 *
+	 * @param a the root of one tree
+	 * @param b the root of the other tree
+	 * @return true iff the trees are identical
+	 */
+	private static boolean sameTree(BSTNode<Integer> a, BSTNode<Integer> b) {
+		ArrayDeque<BSTNode<Integer>> stack = new ArrayDeque<BSTNode<Integer>>();
+		if (a != null) stack.push(a);
+		if (b != null) stack.push(b);
+		while (!stack.isEmpty()) {
+			if (stack.size() % 2 != 0) return false;
+			BSTNode<Integer> y = stack.pop();
+			BSTNode<Integer> x = stack.pop();
+			if (!x.getKey().equals(y.getKey()) ||
+					x.getHeight() != y.getHeight() ||
+					x.getBalanceFactor() != y.getBalanceFactor() ||
+					(x.getLeftChild() == null) != (y.getLeftChild() == null) ||
+					(x.getRightChild() == null) != (y.getRightChild() == null)) {
+				return false;
+			}
+			if (x.getLeftChild() != null) {
+				stack.push(x.getLeftChild());
+				stack.push(y.getLeftChild());
+			}
+			if (x.getRightChild() != null) {
+				stack.push(x.getRightChild());
+				stack.push(y.getRightChild());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that IntDataLoader reads the file exactly as Scanner does, and
+	 * that writing the data in the binary format and loading it back gives
+	 * the same values.
+	 *
+	 * @param file the data file name
+	 * @param data the data Scanner read from the file
+	 * @return the number of failed checks
+	 */
+	static int checkLoader(String file, List<Integer> data) {
+		String name = file + " IntDataLoader";
+		File binary = null;
+		try {
+			int[] loaded = IntDataLoader.load(file);
+			if (!toList(loaded).equals(data)) {
+				System.out.println(name + ": text load differs from Scanner");
+				return 1;
+			}
+			binary = File.createTempFile("tester", ".bin");
+			IntDataLoader.writeBinary(binary.getPath(), loaded);
+			if (!Arrays.equals(IntDataLoader.load(binary.getPath()), loaded)) {
+				System.out.println(name + ": binary load differs from Scanner");
+				return 1;
+			}
+		} catch (IOException e) {
+			System.out.println(name + ": " + e);
+			return 1;
+		} finally {
+			if (binary != null) binary.delete();
+		}
+		System.out.println(name + ": load OK");
+		return 0;
+	}
+
+	/**
+	 * Returns the values as a list.
+	 *
+	 * @param values the values
+	 * @return a new list of the values
+	 */
+	private static List<Integer> toList(int[] values) {
+		List<Integer> list = new ArrayList<Integer>(values.length);
+		for (int value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	/**
+	 * Records known samples into LatencyHistogram: every value from 1 to
+	 * 100000, and then 100000 seeded random values spread over nine orders
+	 * of magnitude. The count, min, max and mean must be exact and the
+	 * standard deviation must match the exact one to 1e-9. Each of p50,
+	 * p99, p99.9 and p100 must lie between the exact percentile, the
+	 * sample at that rank of the sorted samples, and 1/64 above it, the
+	 * width of a bucket. The random samples are also recorded alternately
+	 * into two histograms, which after add must report the same as the
+	 * single one. An empty histogram must report 0.
+	 *
+	 * @return the number of failed checks
+	 */
+	static int checkLatencyHistogram() {
+		String name = "LatencyHistogram";
+		int n = 100000;
+		long[] uniform = new long[n];
+		for (int i = 0; i < n; i++) {
+			uniform[i] = i + 1;
+		}
+		long[] spread = new long[n];
+		Random rng = new Random(367);
+		for (int i = 0; i < n; i++) {
+			spread[i] = (long) Math.pow(10, rng.nextDouble() * 9);
+		}
+
+		for (long[] samples : new long[][] { uniform, spread }) {
+			LatencyHistogram hist = new LatencyHistogram();
+			LatencyHistogram even = new LatencyHistogram();
+			LatencyHistogram odd = new LatencyHistogram();
+			for (int i = 0; i < samples.length; i++) {
+				hist.record(samples[i]);
+				(i % 2 == 0 ? even : odd).record(samples[i]);
+			}
+			even.add(odd);
+			String what = samples == uniform ? "1.." + n : "random";
+			String error = checkHistogram(hist, samples);
+			if (error == null) {
+				error = checkHistogram(even, samples);
+				if (error != null) error = "merged: " + error;
+			}
+			if (error != null) {
+				System.out.println(name + " " + what + ": " + error);
+				return 1;
+			}
+		}
+
+		LatencyHistogram empty = new LatencyHistogram();
+		if (empty.getTotalCount() != 0 || empty.getMin() != 0 ||
+				empty.getMax() != 0 || empty.getValueAtPercentile(99) != 0) {
+			System.out.println(name + ": empty histogram not all 0");
+			return 1;
+		}
+		System.out.println(name + ": exact stats, percentiles within a " +
+				"bucket, merge OK");
+		return 0;
+	}
+
+	/**
+	 * Returns null if hist reports the statistics of samples as
+	 * checkLatencyHistogram requires, or else what is wrong.
+	 *
+	 * @param hist the histogram
+	 * @param samples the samples recorded into it
+	 * @return null or an error message
+	 */
+	private static String checkHistogram(LatencyHistogram hist,
+			long[] samples) {
+		long[] sorted = samples.clone();
+		Arrays.sort(sorted);
+		int n = sorted.length;
+		double sum = 0;
+		for (long x : sorted) {
+			sum += x;
+		}
+		double mean = sum / n;
+		double squares = 0;
+		for (long x : sorted) {
+			squares += (x - mean) * (x - mean);
+		}
+		double sd = Math.sqrt(squares / n);
+		if (hist.getTotalCount() != n) {
+			return "count " + hist.getTotalCount() + ", expected " + n;
+		}
+		if (hist.getMin() != sorted[0] || hist.getMax() != sorted[n - 1]) {
+			return "min/max " + hist.getMin() + "/" + hist.getMax() +
+					", expected " + sorted[0] + "/" + sorted[n - 1];
+		}
+		if (Math.abs(hist.getMean() - mean) > 1e-9 * mean) {
+			return "mean " + hist.getMean() + ", expected " + mean;
+		}
+		if (Math.abs(hist.getStdDeviation() - sd) > 1e-9 * sd) {
+			return "stddev " + hist.getStdDeviation() + ", expected " + sd;
+		}
+		for (double p : new double[] { 50, 99, 99.9, 100 }) {
+			long exact = sorted[(int) Math.ceil(p / 100 * n) - 1];
+			long value = hist.getValueAtPercentile(p);
+			if (value < exact || value > exact + exact / 64) {
+				return "p" + p + " " + value + ", expected " + exact +
+						" to " + (exact + exact / 64);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs SetTesterMain.evaluateAll on the file with 2 measured and 3
+	 * warmup trials, for a BSTreeSetTester. Stats must hold exactly 2 times
+	 * of each kind and the latencies of exactly 2 trials' operations, so
+	 * none from the warmups.
+	 *
+	 * @param file the data file name
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkWarmupTrials(String file, List<Integer> data) {
+		String name = file + " SetTesterMain warmup";
+		int trials = 2;
+		SetTesterMain evaluator = new SetTesterMain(file, trials, 2, 0);
+		evaluator.setNumOfWarmupTrials(3);
+		Stats stats = evaluator.evaluateAll(new BSTreeSetTester<Integer>(0));
+		long ops = (long) trials * data.size();
+		if (stats.buildStats.size() != trials ||
+				stats.containsSearchStats.size() != trials ||
+				stats.rangeSearchStats.size() != trials ||
+				stats.bulkBuildStats.size() != trials) {
+			System.out.println(name + ": trial times include warmups");
+			return 1;
+		}
+		if (stats.getBuildLatency().getTotalCount() != ops ||
+				stats.getContainsSearchLatency().getTotalCount() != ops ||
+				stats.getRangeSearchLatency().getTotalCount() != ops) {
+			System.out.println(name + ": latencies include warmups");
+			return 1;
+		}
+		System.out.println(name + ": only measured trials recorded OK");
+		return 0;
+	}
+
+	/**
+	 * Checks each DataGenerator distribution: the same seed gives the same
+	 * keys, the keys are distinct and even, sorted and reverse are in order,
+	 * and queries() gives exactly the requested hits, checked with a
+	 * BSTreeSetTester built by bulk load.
+	 *
+	 * @return the number of failed checks
+	 */
+	static int checkDataGenerator() {
+		int failures = 0;
+		int size = 20000;
+		for (String dist : DataGenerator.DISTRIBUTIONS) {
+			String name = "DataGenerator " + dist;
+			int[] keys = DataGenerator.generate(dist, size, -1, 42);
+			String problem = null;
+			int[] again = DataGenerator.generate(dist, size, -1, 42);
+			if (!Arrays.equals(keys, again)) {
+				problem = "same seed gave different keys";
+			}
+			TreeSet<Integer> distinct = new TreeSet<Integer>();
+			for (int i = 0; i < keys.length && problem == null; i++) {
+				if (keys[i] % 2 != 0 || !distinct.add(keys[i])) {
+					problem = "key " + keys[i] + " is odd or repeated";
+				} else if (i > 0 && (dist.equals("sorted") &&
+						keys[i - 1] > keys[i] || dist.equals("reverse") &&
+						keys[i - 1] < keys[i])) {
+					problem = "keys out of order at " + i;
+				}
+			}
+			if (problem == null && keys.length != size) {
+				problem = keys.length + " keys, expected " + size;
+			}
+			if (problem == null) {
+				BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(2);
+				tree.addAll(toList(keys));
+				int[] queries = DataGenerator.queries(keys, 5000, 0.3, 1.1, 7);
+				int found = 0;
+				for (int q : queries) {
+					if (tree.contains(q)) found++;
+				}
+				if (found != DataGenerator.hitCount(5000, 0.3)) {
+					problem = found + " of 5000 queries found, expected " +
+							DataGenerator.hitCount(5000, 0.3);
+				}
+			}
+			if (problem != null) {
+				System.out.println(name + ": " + problem);
+				failures++;
+			} else {
+				System.out.println(name + ": keys OK");
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Checks EytzingerIntSet.contains for every data item and the numbers
+	 * either side of it, and subSet for the usual ranges, against TreeSet.
+	 * Sets of every size from 0 to 64 are also searched for every key and
+	 * every gap, since the descent depends on the size of the last level.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkEytzinger(String file, List<Integer> data) {
+		String name = file + " EytzingerIntSet";
+		for (int size = 0; size <= 64; size++) {
+			int[] keys = new int[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = 2 * (size - i);
+			}
+			EytzingerIntSet small = new EytzingerIntSet(keys);
+			for (int k = -1; k <= 2 * size + 2; k++) {
+				boolean expected = k >= 2 && k <= 2 * size && k % 2 == 0;
+				if (small.contains(k) != expected) {
+					System.out.println(name + ": contains(" + k + ") of " +
+							size + " keys returned " + !expected);
+					return 1;
+				}
+			}
+		}
+
+		int[] keys = new int[data.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = data.get(i);
+		}
+		EytzingerIntSet set = new EytzingerIntSet(keys);
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		for (Integer elem : data) {
+			for (int k = elem - 1; k <= elem + 1; k++) {
+				if (set.contains(k) != expected.contains(k)) {
+					System.out.println(name + ": contains(" + k + ") wrong");
+					return 1;
+				}
+			}
+			List<Integer> actual = set.subSet(elem - 10, elem + 10);
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(elem - 10, elem + 10));
+			if (!actual.equals(wanted)) {
+				System.out.println(name + ": subSet(" + (elem - 10) + ", " +
+						(elem + 10) + ") returned " + actual + ", expected " +
+						wanted);
+				return 1;
+			}
+		}
+		System.out.println(name + ": contains and subSet OK");
+		return 0;
+	}
+
+	/**
+	 * Checks BPlusTreeSetTester at fanouts from the smallest allowed up to
+	 * one that fits a large file in two levels, each built from the file
+	 * order and from sorted order, which splits only the rightmost nodes.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkBPlusTree(String file, List<Integer> data) {
+		List<Integer> sorted = new ArrayList<Integer>(data);
+		Collections.sort(sorted);
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+
+		int failures = 0;
+		for (int fanout : new int[] { BPlusTreeSetTester.MIN_FANOUT, 4, 16,
+				256 }) {
+			failures += checkBPlusTree(file + " BPlusTree(f=" + fanout + ")",
+					new BPlusTreeSetTester<Integer>(fanout), data, expected);
+			failures += checkBPlusTree(file + " BPlusTree(f=" + fanout +
+					") sorted", new BPlusTreeSetTester<Integer>(fanout),
+					sorted, expected);
+		}
+		return failures;
+	}
+
+	/**
+	 * Adds data to tree in order, then compares size, iteration, contains
+	 * of every data item and its neighbours, and the usual range searches
+	 * with TreeSet, and checks that re-adding a key is rejected.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param tree the empty tree to check
+	 * @param data the keys to add, in insertion order
+	 * @param expected the same keys in a TreeSet
+	 * @return 1 if anything differed, 0 otherwise
+	 */
+	private static int checkBPlusTree(String name,
+			BPlusTreeSetTester<Integer> tree, List<Integer> data,
+			TreeSet<Integer> expected) {
+		for (Integer elem : data) {
+			tree.add(elem);
+		}
+		List<Integer> iterated = new ArrayList<Integer>();
+		for (Integer k : tree) {
+			iterated.add(k);
+		}
+		if (tree.size() != expected.size() ||
+				!iterated.equals(new ArrayList<Integer>(expected))) {
+			System.out.println(name + ": size " + tree.size() +
+					" or iteration order wrong");
+			return 1;
+		}
+		for (Integer elem : data) {
+			for (int k = elem - 1; k <= elem + 1; k++) {
+				if (tree.contains(k) != expected.contains(k)) {
+					System.out.println(name + ": contains(" + k + ") wrong");
+					return 1;
+				}
+			}
+			List<Integer> actual = tree.subSet(elem - 10, elem + 10);
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(elem - 10, elem + 10));
+			if (!actual.equals(wanted)) {
+				System.out.println(name + ": subSet(" + (elem - 10) + ", " +
+						(elem + 10) + ") returned " + actual + ", expected " +
+						wanted);
+				return 1;
+			}
+		}
+		try {
+			tree.add(data.get(data.size() / 2));
+			System.out.println(name + ": duplicate add was accepted");
+			return 1;
+		} catch (DuplicateKeyException e) {
+			// Expected
+		}
+		if (tree.size() != expected.size()) {
+			System.out.println(name + ": duplicate add changed the size");
+			return 1;
+		}
+		System.out.println(name + ": height " + tree.getHeight() +
+				", contains, subSet and iterator OK");
+		return 0;
+	}
+
+	/**
+	 * Builds OffHeapIntBSTreeSet and IntBSTreeSet side by side, by add with
+	 * and without rebalancing and by bulkLoad, and compares their sorted
+	 * keys, contains of every data item and its neighbours, and the usual
+	 * range searches, by rangeSearch and by forEachInRange with an action
+	 * that searches again for the smallest key, whose path down the left
+	 * spine differs from the outer search's. Chunks of four records put nearly every parent and
+	 * child in different buffers. clear() must free every chunk and leave a
+	 * tree that can be reused.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkOffHeap(String file, List<Integer> data) {
+		String name = file + " OffHeapIntBSTreeSet";
+		int[] keys = new int[data.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = data.get(i);
+		}
+		OffHeapIntBSTreeSet offHeap = null;
+		for (int rbt : new int[] { 0, 2, -1 }) {
+			if (offHeap != null) {
+				offHeap.clear();
+			}
+			IntBSTreeSet expected = new IntBSTreeSet(rbt < 0 ? 2 : rbt);
+			offHeap = new OffHeapIntBSTreeSet(rbt < 0 ? 2 : rbt, 2);
+			String config = rbt < 0 ? " bulkLoad" : " t=" + rbt;
+			if (rbt < 0) {
+				expected.bulkLoad(keys);
+				offHeap.bulkLoad(keys);
+			} else {
+				for (int k : keys) {
+					expected.add(k);
+					offHeap.add(k);
+				}
+			}
+			int[] sorted = expected.toSortedArray();
+			if (!Arrays.equals(offHeap.toSortedArray(), sorted)) {
+				System.out.println(name + config + ": keys differ");
+				return 1;
+			}
+			final int smallest = sorted[0];
+			for (int k : keys) {
+				for (int j = k - 1; j <= k + 1; j++) {
+					if (offHeap.contains(j) != expected.contains(j)) {
+						System.out.println(name + config + ": contains(" +
+								j + ") wrong");
+						return 1;
+					}
+				}
+				int[] wanted = expected.rangeSearch(k - 10, k + 10);
+				if (!Arrays.equals(offHeap.rangeSearch(k - 10, k + 10),
+						wanted)) {
+					System.out.println(name + config + ": rangeSearch(" +
+							(k - 10) + ", " + (k + 10) + ") wrong");
+					return 1;
+				}
+				List<Integer> visited = new ArrayList<Integer>();
+				List<Integer> nested = new ArrayList<Integer>();
+				final OffHeapIntBSTreeSet tree = offHeap;
+				try {
+					tree.forEachInRange(k - 10, k + 10, key -> {
+						visited.add(key);
+						// A traversal whose stack was overwritten may not end
+						if (visited.size() > wanted.length) {
+							throw new IllegalStateException();
+						}
+						for (int found : tree.rangeSearch(Integer.MIN_VALUE,
+								smallest + 1)) {
+							nested.add(found);
+						}
+					});
+				} catch (IllegalStateException e) {
+					// Too many keys, reported below
+				}
+				List<Integer> wantedList = new ArrayList<Integer>();
+				for (int key : wanted) {
+					wantedList.add(key);
+				}
+				if (!visited.equals(wantedList) || !nested.equals(
+						Collections.nCopies(wanted.length, smallest))) {
+					System.out.println(name + config + ": forEachInRange(" +
+							(k - 10) + ", " + (k + 10) + ") returned " +
+							visited + ", expected " + wantedList);
+					return 1;
+				}
+			}
+		}
+
+		double bytesPerKey = offHeap.getBytesPerKey();
+		offHeap.clear();
+		if (offHeap.getOffHeapBytes() != 0 || offHeap.size() != 0 ||
+				offHeap.contains(keys[0])) {
+			System.out.println(name + ": clear did not free the tree");
+			return 1;
+		}
+		offHeap.add(keys[0]);
+		if (!offHeap.contains(keys[0]) || offHeap.size() != 1) {
+			System.out.println(name + ": add after clear failed");
+			return 1;
+		}
+		System.out.printf("%s: matches IntBSTreeSet, %.1f bytes/key, clear "
+				+ "OK%n", name, bytesPerKey);
+		return 0;
+	}
+
+	/**
+	 * Wraps an unbalanced BSTreeSetTester in a BloomFilterSetTester sized
+	 * for 16 keys, so the filter is rebuilt several times as data is added,
+	 * and compares contains of every data item and its neighbours with
+	 * TreeSet. The filter must pass every key in the set, and fewer than
+	 * three times the target rate of as many keys above the data. A
+	 * duplicate add must be rejected, and after clear no key may pass.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkBloomFilter(String file, List<Integer> data) {
+		String name = file + " BloomFilterSetTester";
+		final double rate = 0.01;
+		BloomFilterSetTester<Integer> bloom =
+				new BloomFilterSetTester<Integer>(
+						new BSTreeSetTester<Integer>(0), 16, rate);
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		for (Integer elem : data) {
+			bloom.add(elem);
+		}
+		for (Integer elem : data) {
+			for (int k = elem - 1; k <= elem + 1; k++) {
+				if (bloom.contains(k) != expected.contains(k)) {
+					System.out.println(name + ": contains(" + k + ") wrong");
+					return 1;
+				}
+			}
+		}
+		// The data files are dense, so the misses come from above the data
+		int misses = data.size();
+		int passed = 0;
+		for (int i = 1; i <= misses; i++) {
+			int k = expected.last() + i;
+			if (bloom.mightContain(k)) passed++;
+			if (bloom.contains(k)) {
+				System.out.println(name + ": contains(" + k + ") wrong");
+				return 1;
+			}
+		}
+		if (passed > 3 * rate * misses + 3) {
+			System.out.println(name + ": " + passed + " of " + misses +
+					" misses passed the filter");
+			return 1;
+		}
+		try {
+			bloom.add(data.get(0));
+			System.out.println(name + ": duplicate add was accepted");
+			return 1;
+		} catch (DuplicateKeyException e) {
+			// Expected
+		}
+		bloom.clear();
+		for (Integer elem : data) {
+			if (bloom.mightContain(elem) || bloom.size() != 0) {
+				System.out.println(name + ": clear left " + elem);
+				return 1;
+			}
+		}
+		System.out.printf("%s: contains OK, %d of %d misses passed, %d "
+				+ "filter bytes%n", name, passed, misses,
+				bloom.getFilterBytes());
+		return 0;
+	}
+
+	/**
+	 * Checks SplayTreeSetTester built from the file order and from sorted
+	 * order, which leaves it a chain until the searches splay it. Every
+	 * search splays, so the checks interleave with reshaping the tree.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkSplayTree(String file, List<Integer> data) {
+		List<Integer> sorted = new ArrayList<Integer>(data);
+		Collections.sort(sorted);
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		return checkSplayTree(file + " SplayTreeSet", data, expected) +
+				checkSplayTree(file + " SplayTreeSet sorted", sorted,
+						expected);
+	}
+
+	/**
+	 * Adds data to a new splay tree in order, then compares size,
+	 * iteration, contains of every data item and its neighbours, and the
+	 * usual range searches with TreeSet, and checks that re-adding a key is
+	 * rejected.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param data the keys to add, in insertion order
+	 * @param expected the same keys in a TreeSet
+	 * @return 1 if anything differed, 0 otherwise
+	 */
+	private static int checkSplayTree(String name, List<Integer> data,
+			TreeSet<Integer> expected) {
+		SplayTreeSetTester<Integer> tree = new SplayTreeSetTester<Integer>();
+		for (Integer elem : data) {
+			tree.add(elem);
+		}
+		List<Integer> iterated = new ArrayList<Integer>();
+		for (Integer k : tree) {
+			iterated.add(k);
+		}
+		if (tree.size() != expected.size() ||
+				!iterated.equals(new ArrayList<Integer>(expected))) {
+			System.out.println(name + ": size " + tree.size() +
+					" or iteration order wrong");
+			return 1;
+		}
+		for (Integer elem : data) {
+			for (int k = elem - 1; k <= elem + 1; k++) {
+				if (tree.contains(k) != expected.contains(k)) {
+					System.out.println(name + ": contains(" + k + ") wrong");
+					return 1;
+				}
+			}
+			List<Integer> actual = tree.subSet(elem - 10, elem + 10);
+			List<Integer> wanted = new ArrayList<Integer>(
+					expected.subSet(elem - 10, elem + 10));
+			if (!actual.equals(wanted)) {
+				System.out.println(name + ": subSet(" + (elem - 10) + ", " +
+						(elem + 10) + ") returned " + actual + ", expected " +
+						wanted);
+				return 1;
+			}
+		}
+		try {
+			tree.add(data.get(data.size() / 2));
+			System.out.println(name + ": duplicate add was accepted");
+			return 1;
+		} catch (DuplicateKeyException e) {
+			// Expected
+		}
+		if (tree.size() != expected.size()) {
+			System.out.println(name + ": duplicate add changed the size");
+			return 1;
+		}
+		System.out.println(name + ": contains, subSet and iterator OK");
+		return 0;
+	}
+
+	/**
+	 * Builds BSTreeSetTester in AVL_ROTATION mode at thresholds 0 (exact
+	 * heights, no rotations), 1 (a true AVL tree) and 3, from the file
+	 * order and from sorted order, and checks every node's stored height
+	 * and balance factor against its subtrees. The heights are checked
+	 * after each of the first 1000 adds and then at the end; at threshold 1
+	 * the height must also be within the AVL bound of 1.44 log2(n + 2).
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkAvlRotation(String file, List<Integer> data) {
+		List<Integer> sorted = new ArrayList<Integer>(data);
+		Collections.sort(sorted);
+		int failures = 0;
+		for (int t : new int[] { 0, 1, 3 }) {
+			for (int order = 0; order < 2; order++) {
+				// Sorted adds would make the t = 0 tree a chain
+				if (t == 0 && order == 1) continue;
+				String name = file + " BSTreeSet avl t=" + t +
+						(order == 1 ? " sorted" : "");
+				failures += checkAvlRotation(name, t,
+						order == 1 ? sorted : data);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Adds data to an AVL_ROTATION tree with threshold t, checking its
+	 * heights and balance factors as it grows.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param t the rebalance threshold
+	 * @param data the keys to add, in insertion order
+	 * @return 1 if a stored value was wrong, 0 otherwise
+	 */
+	private static int checkAvlRotation(String name, int t,
+			List<Integer> data) {
+		BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(t,
+				BSTreeSetTester.RebalanceMode.AVL_ROTATION);
+		for (int i = 0; i < data.size(); i++) {
+			tree.add(data.get(i));
+			if (i < 1000 || i == data.size() - 1) {
+				String error = checkHeights(tree.root, t);
+				if (error != null) {
+					System.out.println(name + ": after adding " +
+							data.get(i) + ", " + error);
+					return 1;
+				}
+			}
+		}
+		int height = tree.root.getHeight();
+		double bound = 1.4405 * Math.log(data.size() + 2) / Math.log(2);
+		if (t == 1 && height > bound) {
+			System.out.println(name + ": height " + height +
+					" exceeds the AVL bound " + bound);
+			return 1;
+		}
+		if (tree.size() != new TreeSet<Integer>(data).size()) {
+			System.out.println(name + ": size " + tree.size() + " wrong");
+			return 1;
+		}
+		System.out.println(name + ": heights exact, height " + height);
+		return 0;
+	}
+
+	/**
+	 * Recomputes the height and balance factor of every node under n and
+	 * compares them with the stored ones. Uses an explicit stack, since an
+	 * unrotated tree may be deep.
+	 *
+	 * @param n the subtree root, may be null
+	 * @param t the largest balance factor allowed, none if non-positive
+	 * @return a description of the first wrong node, or null if none
+	 */
+	private static String checkHeights(BSTNode<Integer> n, int t) {
+		if (n == null) return null;
+		// Visits the nodes in post-order, so children come before parents
+		ArrayDeque<BSTNode<Integer>> stack =
+				new ArrayDeque<BSTNode<Integer>>();
+		List<BSTNode<Integer>> postOrder = new ArrayList<BSTNode<Integer>>();
+		stack.push(n);
+		while (!stack.isEmpty()) {
+			BSTNode<Integer> node = stack.pop();
+			postOrder.add(node);
+			if (node.getLeftChild() != null) stack.push(node.getLeftChild());
+			if (node.getRightChild() != null) {
+				stack.push(node.getRightChild());
+			}
+		}
+		for (int i = postOrder.size() - 1; i >= 0; i--) {
+			BSTNode<Integer> node = postOrder.get(i);
+			BSTNode<Integer> l = node.getLeftChild();
+			BSTNode<Integer> r = node.getRightChild();
+			int lh = l == null ? 0 : l.getHeight();
+			int rh = r == null ? 0 : r.getHeight();
+			if (node.getHeight() != 1 + Math.max(lh, rh) ||
+					node.getBalanceFactor() != lh - rh) {
+				return "node " + node.getKey() + " stores " +
+						node.getHeight() + "{" + node.getBalanceFactor() +
+						"}, real " + (1 + Math.max(lh, rh)) + "{" +
+						(lh - rh) + "}";
+			}
+			if (t > 0 && Math.abs(lh - rh) > t) {
+				return "node " + node.getKey() + " has balance factor " +
+						(lh - rh);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks rank, select and countInRange on BSTreeSetTester with subtree
+	 * sizes, built by adds with full rebuilds, partial rebuilds and AVL
+	 * rotations, by bulkLoad, and by adds whose rebuilds are forked, and on
+	 * the baselines and on a BSTreeSetTester without sizes for files of up
+	 * to 10000 items, whose queries take linear time.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkOrderStatistics(String file, List<Integer> data) {
+		List<Integer> sorted = new ArrayList<Integer>(new TreeSet<Integer>(
+				data));
+		int failures = 0;
+
+		BSTreeSetTester<Integer> full = new BSTreeSetTester<Integer>(2,
+				BSTreeSetTester.RebalanceMode.FULL_REBUILD, true);
+		BSTreeSetTester<Integer> partial = new BSTreeSetTester<Integer>(2,
+				BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD, true);
+		BSTreeSetTester<Integer> avl = new BSTreeSetTester<Integer>(1,
+				BSTreeSetTester.RebalanceMode.AVL_ROTATION, true);
+		BSTreeSetTester<Integer> forked = new BSTreeSetTester<Integer>(2,
+				BSTreeSetTester.RebalanceMode.FULL_REBUILD, true);
+		forked.parallelRebuildThreshold = 1;
+		for (Integer elem : data) {
+			full.add(elem);
+			partial.add(elem);
+			avl.add(elem);
+			forked.add(elem);
+		}
+		BSTreeSetTester<Integer> loaded = new BSTreeSetTester<Integer>(0,
+				BSTreeSetTester.RebalanceMode.FULL_REBUILD, true);
+		loaded.bulkLoad(data.toArray(new Integer[0]));
+
+		String prefix = file + " BSTreeSet sized ";
+		failures += checkOrderStatistics(prefix + "full", full, full.root,
+				sorted);
+		failures += checkOrderStatistics(prefix + "partial", partial,
+				partial.root, sorted);
+		failures += checkOrderStatistics(prefix + "avl", avl, avl.root,
+				sorted);
+		failures += checkOrderStatistics(prefix + "forked", forked,
+				forked.root, sorted);
+		failures += checkOrderStatistics(prefix + "bulkLoad", loaded,
+				loaded.root, sorted);
+
+		if (sorted.size() <= 10000) {
+			RBTreeSetTester<Integer> rb = new RBTreeSetTester<Integer>();
+			ArrayListSetTester<Integer> list =
+					new ArrayListSetTester<Integer>();
+			for (Integer elem : sorted) {
+				rb.add(elem);
+			}
+			for (Integer elem : data) {
+				if (!list.contains(elem)) list.add(elem);
+			}
+			failures += checkOrderStatistics(file + " RBTreeSet", rb, null,
+					sorted);
+			failures += checkOrderStatistics(file + " ArrayListSet", list,
+					null, sorted);
+
+			BSTreeSetTester<Integer> unsized =
+					new BSTreeSetTester<Integer>(2);
+			for (Integer elem : data) {
+				unsized.add(elem);
+			}
+			failures += checkOrderStatistics(file + " BSTreeSet unsized",
+					unsized, null, sorted);
+		}
+		return failures;
+	}
+
+	/**
+	 * Checks the stored subtree sizes under root, if root is not null, and
+	 * then every rank, every select and the count of every data item's
+	 * range [item - 10, item + 10) against the sorted keys.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param stats the set to query
+	 * @param root the root of a sized BSTreeSetTester, or null
+	 * @param sorted the distinct keys in ascending order
+	 * @return 1 if any answer was wrong, 0 otherwise
+	 */
+	private static int checkOrderStatistics(String name,
+			OrderStatisticADT<Integer> stats, BSTNode<Integer> root,
+			List<Integer> sorted) {
+		if (root != null) {
+			String error = checkSizes(root);
+			if (error != null) {
+				System.out.println(name + ": " + error);
+				return 1;
+			}
+		}
+		for (int i = 0; i < sorted.size(); i++) {
+			int key = sorted.get(i);
+			// Exactly sorted[0..i] is below key + 1, whether or not it is a
+			// key
+			if (stats.rank(key) != i || stats.rank(key + 1) != i + 1) {
+				System.out.println(name + ": rank of " + key + " is " +
+						stats.rank(key) + ", expected " + i);
+				return 1;
+			}
+			if (stats.select(i) != key) {
+				System.out.println(name + ": select(" + i + ") is " +
+						stats.select(i) + ", expected " + key);
+				return 1;
+			}
+			int lo = lowerBound(sorted, key - 10);
+			int hi = lowerBound(sorted, key + 10);
+			if (stats.countInRange(key - 10, key + 10) != hi - lo) {
+				System.out.println(name + ": countInRange(" + (key - 10) +
+						", " + (key + 10) + ") is " +
+						stats.countInRange(key - 10, key + 10) +
+						", expected " + (hi - lo));
+				return 1;
+			}
+		}
+		if (stats.rank(Integer.MIN_VALUE) != 0 ||
+				stats.rank(Integer.MAX_VALUE) != sorted.size()) {
+			System.out.println(name + ": rank of the extremes wrong");
+			return 1;
+		}
+		for (int rank : new int[] { -1, sorted.size() }) {
+			try {
+				stats.select(rank);
+				System.out.println(name + ": select(" + rank +
+						") did not throw");
+				return 1;
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+		System.out.println(name + ": rank, select and countInRange OK");
+		return 0;
+	}
+
+	/**
+	 * Returns the index in sorted of the first key &gt;= key.
+	 *
+	 * @param sorted keys in ascending order
+	 * @param key the key
+	 * @return the index, sorted.size() if every key is smaller
+	 */
+	private static int lowerBound(List<Integer> sorted, int key) {
+		int pos = Collections.binarySearch(sorted, key);
+		return pos >= 0 ? pos : -pos - 1;
+	}
+
+	/**
+	 * Recomputes the subtree size of every node under n, which must all be
+	 * SizedBSTNodes, and compares it with the stored one.
+	 *
+	 * @param n the subtree root
+	 * @return a description of the first wrong node, or null if none
+	 */
+	private static String checkSizes(BSTNode<Integer> n) {
+		// Visits the nodes in post-order, so children come before parents
+		ArrayDeque<BSTNode<Integer>> stack =
+				new ArrayDeque<BSTNode<Integer>>();
+		List<BSTNode<Integer>> postOrder = new ArrayList<BSTNode<Integer>>();
+		stack.push(n);
+		while (!stack.isEmpty()) {
+			BSTNode<Integer> node = stack.pop();
+			if (!(node instanceof SizedBSTNode)) {
+				return "node " + node.getKey() + " has no size";
+			}
+			postOrder.add(node);
+			if (node.getLeftChild() != null) stack.push(node.getLeftChild());
+			if (node.getRightChild() != null) {
+				stack.push(node.getRightChild());
+			}
+		}
+		for (int i = postOrder.size() - 1; i >= 0; i--) {
+			SizedBSTNode<Integer> node = (SizedBSTNode<Integer>)
+					postOrder.get(i);
+			int size = 1;
+			if (node.getLeftChild() != null) {
+				size += ((SizedBSTNode<Integer>) node.getLeftChild())
+						.getSize();
+			}
+			if (node.getRightChild() != null) {
+				size += ((SizedBSTNode<Integer>) node.getRightChild())
+						.getSize();
+			}
+			if (node.getSize() != size) {
+				return "node " + node.getKey() + " stores size " +
+						node.getSize() + ", real " + size;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks BSTreeSetTester.containsBatch in each rebalance mode against
+	 * TreeSet.contains. The probes are every data item, its neighbours and
+	 * a few repeats, sorted and cut into consecutive batches of sizes from
+	 * 1 up to all of them at once. An unsorted batch must be refused.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkContainsBatch(String file, List<Integer> data) {
+		TreeSet<Integer> expected = new TreeSet<Integer>(data);
+		List<Integer> probeList = new ArrayList<Integer>();
+		for (Integer elem : data) {
+			probeList.add(elem - 1);
+			probeList.add(elem);
+			probeList.add(elem + 1);
+		}
+		Collections.sort(probeList);
+		Integer[] probes = probeList.toArray(new Integer[0]);
+		int failures = 0;
+		for (BSTreeSetTester.RebalanceMode mode :
+				BSTreeSetTester.RebalanceMode.values()) {
+			String name = file + " BSTreeSet " + mode + " containsBatch";
+			// Threshold 0 leaves the file order unbalanced, as a deep tree
+			BSTreeSetTester<Integer> tree = new BSTreeSetTester<Integer>(
+					mode == BSTreeSetTester.RebalanceMode.FULL_REBUILD ? 0 : 2,
+					mode);
+			for (Integer elem : data) {
+				if (!tree.contains(elem)) tree.add(elem);
+			}
+			failures += checkContainsBatch(name, tree, expected, probes);
+		}
+		return failures;
+	}
+
+	/**
+	 * Runs containsBatch on consecutive batches of the probes for each of
+	 * several batch sizes and compares each answer with expected.
+	 *
+	 * @param name the configuration name, for messages
+	 * @param tree the tree to search
+	 * @param expected the keys that are in the tree
+	 * @param probes the probes in ascending order
+	 * @return 1 if any answer was wrong, 0 otherwise
+	 */
+	private static int checkContainsBatch(String name,
+			BSTreeSetTester<Integer> tree, TreeSet<Integer> expected,
+			Integer[] probes) {
+		boolean[] out = new boolean[probes.length];
+		for (int b : new int[] { 1, 2, 3, 7, 64, 1000, probes.length }) {
+			for (int start = 0; start < probes.length; start += b) {
+				Integer[] batch = Arrays.copyOfRange(probes, start,
+						Math.min(probes.length, start + b));
+				tree.containsBatch(batch, out);
+				for (int i = 0; i < batch.length; i++) {
+					if (out[i] != expected.contains(batch[i])) {
+						System.out.println(name + ": batch size " + b +
+								", probe " + batch[i] + " answered " +
+								out[i]);
+						return 1;
+					}
+				}
+			}
+		}
+		tree.containsBatch(new Integer[0], out);
+		try {
+			tree.containsBatch(new Integer[] { 2, 1 }, out);
+			System.out.println(name + ": unsorted probes not refused");
+			return 1;
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		System.out.println(name + ": every batch size OK");
+		return 0;
+	}
+
+	/**
+	 * Saves trees of the data with several settings, and an empty tree, to
+	 * a temporary snapshot and loads each back, checking the keys, the
+	 * threshold, the mode, size tracking and the heights. Then flips one
+	 * byte of the header and one of the keys, and cuts the file short,
+	 * each of which must make load throw.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkSnapshot(String file, List<Integer> data) {
+		String name = file + " BSTreeSnapshot";
+		Integer[] keys = new TreeSet<Integer>(data).toArray(new Integer[0]);
+		File snap = null;
+		try {
+			snap = File.createTempFile("tester", ".snap");
+			List<BSTreeSetTester<Integer>> trees =
+					new ArrayList<BSTreeSetTester<Integer>>();
+			trees.add(new BSTreeSetTester<Integer>(2));
+			trees.add(new BSTreeSetTester<Integer>(3,
+					BSTreeSetTester.RebalanceMode.PARTIAL_REBUILD, true));
+			trees.add(new BSTreeSetTester<Integer>(1,
+					BSTreeSetTester.RebalanceMode.AVL_ROTATION));
+			for (int i = 0; i < trees.size(); i++) {
+				trees.get(i).bulkLoad(keys);
+			}
+			trees.add(new BSTreeSetTester<Integer>(0));
+			for (BSTreeSetTester<Integer> tree : trees) {
+				BSTreeSnapshot.save(tree, snap.getPath());
+				BSTreeSetTester<Integer> loaded =
+						BSTreeSnapshot.load(snap.getPath());
+				String config = "t=" + tree.rebalanceThreshold + " " +
+						tree.rebalanceMode + (tree.trackSizes ? " sized" : "");
+				List<Integer> expected = new ArrayList<Integer>();
+				for (Integer key : tree) {
+					expected.add(key);
+				}
+				List<Integer> actual = new ArrayList<Integer>();
+				for (Integer key : loaded) {
+					actual.add(key);
+				}
+				String error = !actual.equals(expected) ? "keys differ" :
+						loaded.size() != tree.size() ? "size differs" :
+						loaded.rebalanceThreshold != tree.rebalanceThreshold ||
+						loaded.rebalanceMode != tree.rebalanceMode ||
+						loaded.trackSizes != tree.trackSizes ?
+						"settings differ" : checkHeights(loaded.root, 0);
+				if (error == null && loaded.trackSizes) {
+					error = checkSizes(loaded.root);
+				}
+				if (error != null) {
+					System.out.println(name + " " + config + ": " + error);
+					return 1;
+				}
+			}
+
+			// Damages a copy of the first tree's snapshot three ways
+			BSTreeSnapshot.save(trees.get(0), snap.getPath());
+			long length = snap.length();
+			long[] flips = { 16, BSTreeSnapshot.HEADER_SIZE + length / 2 };
+			for (long offset : flips) {
+				if (offset >= length) continue;
+				try (RandomAccessFile raf = new RandomAccessFile(snap, "rw")) {
+					raf.seek(offset);
+					int b = raf.read();
+					raf.seek(offset);
+					raf.write(b ^ 0x10);
+				}
+				if (!refused(snap)) {
+					System.out.println(name + ": byte " + offset +
+							" changed, but the snapshot loaded");
+					return 1;
+				}
+				BSTreeSnapshot.save(trees.get(0), snap.getPath());
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(snap, "rw")) {
+				raf.setLength(length - 1);
+			}
+			if (!refused(snap)) {
+				System.out.println(name + ": truncated, but loaded");
+				return 1;
+			}
+		} catch (IOException e) {
+			System.out.println(name + ": " + e);
+			return 1;
+		} finally {
+			if (snap != null) snap.delete();
+		}
+		System.out.println(name + ": round trips OK, damage detected");
+		return 0;
+	}
+
+	/**
+	 * Checks WalSetTester in a temporary directory. Adds the data under
+	 * GROUP with a small group, closes and reopens, which must give back
+	 * exactly the data. Then adds the data again after a clear, syncs
+	 * halfway and abandons the log as a crash would; the set reopened must
+	 * hold a prefix of the adds at least as long as the synced half. Then
+	 * appends part of a record to the log, which recovery must cut off
+	 * while keeping every whole record, and the set must take more adds.
+	 * Last, checkpoints with a copy of the log put back afterwards, as if
+	 * the checkpoint died before truncating it, which must change nothing.
+	 *
+	 * @param file the data file name, for messages
+	 * @param data the data in file order
+	 * @return the number of failed checks
+	 */
+	static int checkWal(String file, List<Integer> data) {
+		String name = file + " WalSetTester";
+		List<Integer> distinct = new ArrayList<Integer>(
+				new LinkedHashSet<Integer>(data));
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("tester");
+			String d = dir.toString();
+			Path logFile = dir.resolve(WalSetTester.LOG_FILE);
+
+			WalSetTester wal = new WalSetTester(d, 2,
+					WalSetTester.SyncPolicy.GROUP, 7, 1);
+			for (Integer key : distinct) {
+				wal.add(key);
+			}
+			wal.close();
+			wal = new WalSetTester(d, 2, WalSetTester.SyncPolicy.NONE, 0,
+					0);
+			String error = checkWalKeys(wal, distinct);
+			if (error == null &&
+					wal.getReplayedRecords() != distinct.size()) {
+				error = wal.getReplayedRecords() + " records replayed";
+			}
+			if (error != null) {
+				System.out.println(name + " reopened: " + error);
+				wal.abandon();
+				return 1;
+			}
+
+			// Crashes halfway through adding the data after a clear
+			wal.clear();
+			int half = distinct.size() / 2;
+			for (int i = 0; i < distinct.size(); i++) {
+				if (i == half) wal.sync();
+				wal.add(distinct.get(i));
+			}
+			wal.abandon();
+			wal = new WalSetTester(d, 2, WalSetTester.SyncPolicy.NONE, 0,
+					0);
+			int kept = wal.size();
+			error = kept < half ? "only " + kept + " of " + half +
+					" synced adds recovered" :
+					checkWalKeys(wal, distinct.subList(0, kept));
+			if (error != null) {
+				System.out.println(name + " crashed: " + error);
+				wal.abandon();
+				return 1;
+			}
+
+			// Tears the last record, then adds the rest of the data
+			wal.close();
+			long whole = Files.size(logFile);
+			try (RandomAccessFile raf =
+					new RandomAccessFile(logFile.toFile(), "rw")) {
+				raf.seek(whole);
+				raf.write(new byte[] { WalSetTester.PAYLOAD_SIZE, 0, 0, 0 });
+			}
+			wal = new WalSetTester(d, 2, WalSetTester.SyncPolicy.EVERY, 0,
+					0);
+			error = wal.getDiscardedBytes() != 4 ? wal.getDiscardedBytes() +
+					" bytes discarded, not 4" :
+					Files.size(logFile) != whole ? "torn record left" :
+					checkWalKeys(wal, distinct.subList(0, kept));
+			if (error != null) {
+				System.out.println(name + " torn: " + error);
+				wal.abandon();
+				return 1;
+			}
+			for (int i = kept; i < distinct.size(); i++) {
+				wal.add(distinct.get(i));
+			}
+
+			// Checkpoints, then puts the old log back
+			Path copy = dir.resolve("copy.wal");
+			wal.sync();
+			Files.copy(logFile, copy);
+			wal.checkpoint();
+			wal.close();
+			Files.move(copy, logFile, StandardCopyOption.REPLACE_EXISTING);
+			wal = new WalSetTester(d, 2, WalSetTester.SyncPolicy.NONE, 0,
+					0);
+			error = checkWalKeys(wal, distinct);
+			wal.close();
+			if (error != null) {
+				System.out.println(name + " checkpoint: " + error);
+				return 1;
+			}
+		} catch (IOException e) {
+			System.out.println(name + ": " + e);
+			return 1;
+		} finally {
+			if (dir != null) {
+				for (File f : dir.toFile().listFiles()) {
+					f.delete();
+				}
+				dir.toFile().delete();
+			}
+		}
+		System.out.println(name + ": recovered after close, crash, tear " +
+				"and checkpoint OK");
+		return 0;
+	}
+
+	/**
+	 * Opens WalSetTester under GROUP with a 1 ms flusher, adds a few keys,
+	 * not a whole group, and closes it, WAL_CLOSE_ROUNDS times, waiting 0
+	 * to 2 ms before the close so that it often lands on a force by the
+	 * flusher. Every close must succeed, and the set reopened each round
+	 * must hold every key added so far.
+	 *
+	 * @return 1 if a close failed or a key was lost, 0 otherwise
+	 */
+	static int checkWalCloseWhileFlushing() {
+		String name = "WalSetTester GROUP close";
+		Path dir = null;
+		try {
+			dir = Files.createTempDirectory("tester");
+			String d = dir.toString();
+			List<Integer> keys = new ArrayList<Integer>();
+			for (int round = 0; round < WAL_CLOSE_ROUNDS; round++) {
+				WalSetTester wal = new WalSetTester(d, 2,
+						WalSetTester.SyncPolicy.GROUP, 7, 1);
+				String error = checkWalKeys(wal, keys);
+				if (error != null) {
+					System.out.println(name + ": round " + round + ": " +
+							error);
+					wal.abandon();
+					return 1;
+				}
+				for (int i = 0; i < 3; i++) {
+					keys.add(keys.size());
+					wal.add(keys.get(keys.size() - 1));
+				}
+				Thread.sleep(round % 3);
+				wal.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			System.out.println(name + ": " + e);
+			return 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println(name + ": interrupted");
+			return 1;
+		} finally {
+			if (dir != null) {
+				for (File f : dir.toFile().listFiles()) {
+					f.delete();
+				}
+				dir.toFile().delete();
+			}
+		}
+		System.out.println(name + ": " + WAL_CLOSE_ROUNDS +
+				" closes during flushes OK");
+		return 0;
+	}
+
+	/**
+	 * Returns null if wal holds exactly the given keys, or else what is
+	 * wrong.
+	 *
+	 * @param wal the set
+	 * @param keys the keys it should hold
+	 * @return null or an error message
+	 */
+	private static String checkWalKeys(WalSetTester wal, List<Integer> keys) {
+		List<Integer> expected = new ArrayList<Integer>(keys);
+		Collections.sort(expected);
+		List<Integer> actual = new ArrayList<Integer>();
+		for (Integer key : wal) {
+			actual.add(key);
+		}
+		if (wal.size() != expected.size()) {
+			return "size " + wal.size() + ", expected " + expected.size();
+		}
+		return actual.equals(expected) ? null : "keys differ";
+	}
+
+	/**
+	 * Returns true iff loading the snapshot throws IOException.
+	 *
+	 * @param snap the snapshot file
+	 * @return true iff load refused the file
+	 */
+	private static boolean refused(File snap) {
+		try {
+			BSTreeSnapshot.load(snap.getPath());
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
 }
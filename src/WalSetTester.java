@@ -0,0 +1,668 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+///////////////////////////////////////////////////////////////////////////////
+//
+//Main Class File:  SetTesterMain.java
+//File:             WalSetTester.java
+//Semester:         CS 367 Spring 2016
+//
+//Author:           Nathan Petersen
+//Email:            npetersen2@wisc.edu
+//CS Login:         npetersen
+//Lecturer's Name:  Deppeler
+//
+////////////////////PAIR PROGRAMMERS COMPLETE THIS SECTION ////////////////////
+//
+//Pair Partner:     Evan Degler
+//Email:            edegler@wisc.edu
+//CS Login:         degler
+//Lecturer's Name:  Skrentny
+//
+////////////////////////////80 columns wide //////////////////////////////////
+
+/**
+ * Durable set of Integers: a BSTreeSetTester whose adds and clears are
+ * first appended to a write-ahead log, so they survive a crash without a
+ * snapshot being written for each one.
+ *
+ * <p>The set lives in a directory holding the latest snapshot (see
+ * BSTreeSnapshot), if any, and the log of changes since. Opening the set
+ * loads the snapshot and replays the log on top of it. checkpoint saves a
+ * new snapshot and empties the log, which bounds the recovery time.</p>
+ *
+ * <p>The log is a 16-byte header (the magic bytes "BWAL", the format
+ * version and two reserved 0s, each a little-endian int32) followed by
+ * records. A record is the payload length (an int32, always 5), the
+ * payload (an operation byte and an int32 key), and a CRC-32C of the
+ * length and payload. Recovery stops at the first record that is cut
+ * short or fails its checksum, which is what a crash in the middle of a
+ * write leaves behind, and truncates the log there so later records follow
+ * valid ones.</p>
+ *
+ * <p>Records are gathered in a buffer and written to the log through a
+ * FileChannel. When they are forced to the disk depends on the
+ * SyncPolicy:</p>
+ * <ul>
+ * <li>NONE: only on sync, checkpoint and close. A crash of the process
+ * loses at most the buffer; a crash of the machine can lose anything the
+ * operating system has not yet written.</li>
+ * <li>GROUP: once groupSize records are waiting, and every flushMillis
+ * while any are. An add returns before its record is durable, so a crash
+ * loses at most groupSize records or flushMillis of adds.</li>
+ * <li>EVERY: before each add returns.</li>
+ * </ul>
+ *
+ * <p>sync is a group commit: threads that call it while another thread's
+ * force is in progress wait for it and then share a single force for
+ * everything appended meanwhile. Under EVERY, concurrent adders therefore
+ * pay for one force per group rather than one each.</p>
+ *
+ * <p>Every method is synchronized except iterator, whose iteration must
+ * not overlap an add or clear.</p>
+ */
+public class WalSetTester implements SetTesterADT<Integer>, AutoCloseable {
+
+    /**
+     * When appended records are forced to the disk.
+     */
+    public enum SyncPolicy {
+        /** Only on sync, checkpoint and close */
+        NONE,
+        /** Every groupSize records or flushMillis */
+        GROUP,
+        /** Before every add returns */
+        EVERY
+    }
+
+    /** Name of the snapshot file in the directory */
+    static final String SNAPSHOT_FILE = "set.snap";
+
+    /** Name of the log file in the directory */
+    static final String LOG_FILE = "set.wal";
+
+    /** The first four bytes of a log, "BWAL" read little-endian */
+    static final int MAGIC = 0x4C415742;
+
+    /** The log format version this class writes */
+    static final int VERSION = 1;
+
+    /** Size of the log header in bytes */
+    static final int HEADER_SIZE = 16;
+
+    /** Size of a record's payload: the operation and the key */
+    static final int PAYLOAD_SIZE = 5;
+
+    /** Size of a record: length, payload and checksum */
+    static final int RECORD_SIZE = 4 + PAYLOAD_SIZE + 4;
+
+    /** Operation of a record that adds its key */
+    private static final byte OP_ADD = 1;
+
+    /** Operation of a record that clears the set; its key is 0 */
+    private static final byte OP_CLEAR = 2;
+
+    /** The set */
+    private final BSTreeSetTester<Integer> tree;
+
+    /** The snapshot file */
+    private final Path snapshot;
+
+    /** The log, positioned at its end */
+    private final FileChannel log;
+
+    /** When records are forced */
+    private final SyncPolicy policy;
+
+    /** Records that make a group under GROUP */
+    private final int groupSize;
+
+    /** Records not yet written to the log */
+    private final ByteBuffer buffer;
+
+    /** Checksum of the record being appended */
+    private final CRC32C crc;
+
+    /** Held by the thread forcing the log; taken before this, never after */
+    private final Object syncLock;
+
+    /** Forces the log every flushMillis under GROUP, otherwise null */
+    private final ScheduledExecutorService flusher;
+
+    /** Records appended since the set was opened */
+    private long appended;
+
+    /** Records appended since opening that are known to be on the disk */
+    private volatile long durable;
+
+    /** Number of forces of the log since opening */
+    private long syncCount;
+
+    /** Records replayed when the set was opened */
+    private final long replayedRecords;
+
+    /** Bytes of a damaged log tail dropped when the set was opened */
+    private final long discardedBytes;
+
+    /** Time taken to open the set, in nanoseconds */
+    private final long recoveryNanos;
+
+    /** True once closed */
+    private boolean closed;
+
+    /**
+     * Opens the set in directory, creating the directory and an empty set
+     * if there is none, or else loading the snapshot and replaying the log.
+     *
+     * @param directory the directory that holds the set
+     * @param rbt the rebalance threshold of a new set; a set loaded from a
+     * snapshot keeps the saved one
+     * @param policy when records are forced to the disk
+     * @param groupSize under GROUP, the records that trigger a force
+     * @param flushMillis under GROUP, the longest a record waits to be
+     * forced, or 0 to force only when a group fills
+     * @throws IllegalArgumentException if directory or policy is null, or
+     * under GROUP groupSize is not positive or flushMillis is negative
+     * @throws IOException if the snapshot or the log cannot be read or the
+     * log cannot be written
+     */
+    public WalSetTester(String directory, int rbt, SyncPolicy policy,
+            int groupSize, long flushMillis) throws IOException {
+        if (directory == null || policy == null ||
+                (policy == SyncPolicy.GROUP &&
+                        (groupSize < 1 || flushMillis < 0))) {
+            throw new IllegalArgumentException();
+        }
+        long start = System.nanoTime();
+        this.policy = policy;
+        this.groupSize = groupSize;
+        buffer = ByteBuffer.allocateDirect(1 << 16)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        crc = new CRC32C();
+        syncLock = new Object();
+
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        snapshot = dir.resolve(SNAPSHOT_FILE);
+        tree = Files.exists(snapshot) ?
+                BSTreeSnapshot.load(snapshot.toString()) :
+                new BSTreeSetTester<Integer>(rbt);
+        log = FileChannel.open(dir.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long[] replay;
+        try {
+            replay = replay();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        replayedRecords = replay[0];
+        discardedBytes = replay[1];
+
+        if (policy == SyncPolicy.GROUP && flushMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "wal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis,
+                    flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+        recoveryNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Applies the log to the tree and leaves the log positioned after its
+     * last valid record, truncating anything after it. A log too short for
+     * its header, left by a crash while it was created, is started afresh.
+     *
+     * <p>The adds are gathered and bulk loaded at the end instead of added
+     * one at a time; a clear drops those gathered so far. Replay skips keys
+     * already in the tree, so a whole log that a crash during checkpoint
+     * left behind can be replayed over the snapshot made from it: without
+     * a clear, every key it adds is already there, and otherwise its last
+     * clear empties the tree and the adds after it are exactly what the
+     * snapshot holds.</p>
+     *
+     * @return { records replayed, bytes discarded }
+     * @throws IOException if the log cannot be read or written or is not a
+     * log
+     */
+    private long[] replay() throws IOException {
+        long size = log.size();
+        if (size < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(0).flip();
+            log.truncate(0);
+            while (header.hasRemaining()) {
+                log.write(header, header.position());
+            }
+            log.force(true);
+            log.position(HEADER_SIZE);
+            return new long[] { 0, size };
+        }
+        ByteBuffer in = ByteBuffer.allocate(1 << 20)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, 0, HEADER_SIZE);
+        if (in.getInt(0) != MAGIC) {
+            throw new IOException("Not a write-ahead log");
+        }
+        if (in.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version " + in.getInt(4));
+        }
+
+        int[] adds = new int[1024];
+        int numAdds = 0;
+        long records = 0;
+        long valid = HEADER_SIZE;
+        CRC32C check = new CRC32C();
+        in.clear();
+        scan:
+        while (valid < size) {
+            // Reads whole records only
+            int len = (int) Math.min(in.capacity() / RECORD_SIZE *
+                    RECORD_SIZE, size - valid);
+            in.clear();
+            readFully(in, valid, len);
+            for (int p = 0; p + RECORD_SIZE <= len; p += RECORD_SIZE) {
+                if (in.getInt(p) != PAYLOAD_SIZE) break scan;
+                check.reset();
+                check.update(in.duplicate().position(p)
+                        .limit(p + 4 + PAYLOAD_SIZE));
+                if ((int) check.getValue() !=
+                        in.getInt(p + 4 + PAYLOAD_SIZE)) {
+                    break scan;
+                }
+                byte op = in.get(p + 4);
+                if (op == OP_ADD) {
+                    if (numAdds == adds.length) {
+                        adds = Arrays.copyOf(adds, numAdds * 2);
+                    }
+                    adds[numAdds++] = in.getInt(p + 5);
+                } else if (op == OP_CLEAR) {
+                    tree.clear();
+                    numAdds = 0;
+                } else {
+                    break scan;
+                }
+                records++;
+                valid += RECORD_SIZE;
+            }
+            if (len % RECORD_SIZE != 0) break;
+        }
+
+        // Sorted, without repeats or keys the snapshot already has
+        Arrays.sort(adds, 0, numAdds);
+        Integer[] keys = new Integer[numAdds];
+        int n = 0;
+        for (int i = 0; i < numAdds; i++) {
+            if ((i > 0 && adds[i] == adds[i - 1]) || tree.contains(adds[i])) {
+                continue;
+            }
+            keys[n++] = adds[i];
+        }
+        tree.bulkLoad(Arrays.copyOf(keys, n));
+
+        if (valid < size) {
+            log.truncate(valid);
+            log.force(true);
+        }
+        log.position(valid);
+        return new long[] { records, size - valid };
+    }
+
+    /**
+     * Reads len bytes of the log at position into in.
+     *
+     * @param in the buffer, with room for len bytes
+     * @param position the log position
+     * @param len the number of bytes
+     * @throws IOException if the log cannot be read or ends first
+     */
+    private void readFully(ByteBuffer in, long position, int len)
+            throws IOException {
+        in.clear().limit(len);
+        while (in.hasRemaining()) {
+            if (log.read(in, position + in.position()) < 0) {
+                throw new IOException("Log ended early");
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the buffer, writing the buffer out first if it is
+     * full.
+     *
+     * @param op the operation
+     * @param key the key
+     * @throws IOException if the buffer cannot be written
+     */
+    private void append(byte op, int key) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            writeBuffer();
+        }
+        int start = buffer.position();
+        buffer.putInt(PAYLOAD_SIZE).put(op).putInt(key);
+        crc.reset();
+        crc.update(buffer.duplicate().position(start)
+                .limit(start + 4 + PAYLOAD_SIZE));
+        buffer.putInt((int) crc.getValue());
+        appended++;
+    }
+
+    /**
+     * Writes the buffered records to the log and empties the buffer.
+     *
+     * @throws IOException if the write fails
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Throws unless the set is open.
+     *
+     * @throws IllegalStateException if the set has been closed
+     */
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("Closed");
+    }
+
+    /**
+     * Logs key and then adds it to the set. Under EVERY the record is on
+     * the disk when this returns; under GROUP this forces the log if a
+     * group has filled.
+     *
+     * @param key the key to add
+     * @throws IllegalArgumentException if key is null
+     * @throws DuplicateKeyException if the key is a duplicate, in which case
+     * nothing is logged
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void add(Integer key) {
+        if (key == null) throw new IllegalArgumentException();
+        synchronized (this) {
+            ensureOpen();
+            if (tree.contains(key)) throw new DuplicateKeyException();
+            try {
+                append(OP_ADD, key);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tree.add(key);
+            if (!mustSync()) return;
+        }
+        sync();
+    }
+
+    /**
+     * Returns true iff the policy requires a force now.
+     *
+     * @return true iff the caller must sync
+     */
+    private synchronized boolean mustSync() {
+        return policy == SyncPolicy.EVERY || (policy == SyncPolicy.GROUP &&
+                appended - durable >= groupSize);
+    }
+
+    /**
+     * Forces every record appended so far to the disk. If another thread
+     * is forcing the log, this waits for it, and one of the waiting
+     * threads then forces everything appended meanwhile for all of them.
+     *
+     * @throws IllegalStateException if the set has been closed
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    public void sync() {
+        long target;
+        synchronized (this) {
+            ensureOpen();
+            target = appended;
+            if (durable >= target) return;
+        }
+        synchronized (syncLock) {
+            // A force that ran while this thread waited may have covered it
+            if (durable >= target) return;
+            try {
+                long covered;
+                synchronized (this) {
+                    ensureOpen();
+                    writeBuffer();
+                    covered = appended;
+                }
+                log.force(false);
+                synchronized (this) {
+                    syncCount++;
+                }
+                durable = covered;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs sync for the flusher, which stops quietly once the set closes.
+     */
+    private void flushQuietly() {
+        try {
+            sync();
+        } catch (IllegalStateException | UncheckedIOException e) {
+            // Closed, or the next add will report the failure
+        }
+    }
+
+    /**
+     * Saves a snapshot of the set and empties the log. The log is forced
+     * first, so until it is emptied it holds every change the snapshot
+     * does, and the snapshot replaces the previous one atomically: a crash
+     * at any point leaves either the old snapshot and its log, or the new
+     * snapshot and a log whose replay over it changes nothing.
+     *
+     * <p>The log is truncated only after save has forced the snapshot's
+     * directory, so the rename is on the disk first. Otherwise a power
+     * loss could keep the empty log but lose the rename, bringing back the
+     * old snapshot without the changes since.</p>
+     *
+     * @throws IllegalStateException if the set has been closed
+     * @throws IOException if the snapshot or the log cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                ensureOpen();
+                writeBuffer();
+                log.force(false);
+                // save returns once the rename is durable, so only then
+                // may the log that covers the old snapshot be emptied
+                BSTreeSnapshot.save(tree, snapshot.toString());
+                log.truncate(HEADER_SIZE);
+                log.force(true);
+                log.position(HEADER_SIZE);
+                syncCount++;
+                durable = appended;
+            }
+        }
+    }
+
+    /**
+     * Forces every record to the disk and closes the log. Closing twice
+     * has no effect.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        stopFlusher();
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                try {
+                    writeBuffer();
+                    log.force(false);
+                } finally {
+                    log.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the flusher, if any, and waits for a flush in progress to
+     * finish. The flusher is never interrupted: an interrupt during
+     * log.force closes the channel, and the close that follows would fail
+     * with a ClosedChannelException. An interrupt of the caller is kept
+     * for it once the flusher has stopped.
+     */
+    private void stopFlusher() {
+        if (flusher == null) return;
+        flusher.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (flusher.awaitTermination(1, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Closes the log without writing the buffer or forcing anything, as a
+     * crash of the process would leave it.
+     *
+     * @throws IOException if the log cannot be closed
+     */
+    void abandon() throws IOException {
+        stopFlusher();
+        synchronized (syncLock) {
+            synchronized (this) {
+                closed = true;
+                log.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(Integer key) {
+        return tree.contains(key);
+    }
+
+    @Override
+    public synchronized List<Integer> subSet(Integer minValue,
+            Integer maxValue) {
+        return tree.subSet(minValue, maxValue);
+    }
+
+    /**
+     * Logs a clear and then clears the set, forcing the log as add does.
+     *
+     * @throws UncheckedIOException if the log cannot be written
+     */
+    @Override
+    public void clear() {
+        synchronized (this) {
+            ensureOpen();
+            try {
+                append(OP_CLEAR, 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tree.clear();
+            if (!mustSync()) return;
+        }
+        sync();
+    }
+
+    @Override
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    @Override
+    public synchronized void displayTree(int maxDisplayLevels) {
+        tree.displayTree(maxDisplayLevels);
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return tree.iterator();
+    }
+
+    /**
+     * Returns the number of log records replayed when the set was opened.
+     *
+     * @return the records replayed
+     */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /**
+     * Returns the number of bytes of a damaged log tail that were dropped
+     * when the set was opened.
+     *
+     * @return the bytes discarded
+     */
+    public long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    /**
+     * Returns the time taken to open the set, including loading the
+     * snapshot and replaying the log.
+     *
+     * @return the recovery time in milliseconds
+     */
+    public double getRecoveryMillis() {
+        return recoveryNanos / 1e6;
+    }
+
+    /**
+     * Returns the number of times the log has been forced since opening.
+     *
+     * @return the force count
+     */
+    public synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Returns the size of the log, counting records not yet written.
+     *
+     * @return the log size in bytes
+     * @throws UncheckedIOException if the size cannot be read
+     */
+    public synchronized long getLogBytes() {
+        try {
+            return (closed ? 0 : log.size()) + buffer.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}